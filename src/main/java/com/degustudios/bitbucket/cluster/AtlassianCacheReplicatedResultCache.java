@@ -0,0 +1,103 @@
+package com.degustudios.bitbucket.cluster;
+
+import com.atlassian.cache.Cache;
+import com.degustudios.executors.ReplicatedResultCache;
+import com.degustudios.executors.ResultSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Replicated cache backed by cluster-wide atlassian-cache caches. Results are kept serialized and claims as
+ * "nodeId:expiresAt" strings, so that only JDK types travel between nodes and no plugin class has to be loaded
+ * to read them, which would break once the plugin is reloaded. Claims expire based on the wall clock of the
+ * claiming node, so the lease should be much longer than the expected clock skew between nodes.
+ */
+public class AtlassianCacheReplicatedResultCache<R> implements ReplicatedResultCache<R> {
+    private static final Logger logger = LoggerFactory.getLogger(AtlassianCacheReplicatedResultCache.class);
+
+    private final Cache<String, byte[]> results;
+    private final Cache<String, String> claims;
+    private final ResultSerializer<R> serializer;
+    private final String nodeId;
+    private final long leaseInMillis;
+
+    public AtlassianCacheReplicatedResultCache(
+            Cache<String, byte[]> results,
+            Cache<String, String> claims,
+            ResultSerializer<R> serializer,
+            String nodeId,
+            long leaseInMillis) {
+        this.results = results;
+        this.claims = claims;
+        this.serializer = serializer;
+        this.nodeId = nodeId;
+        this.leaseInMillis = leaseInMillis;
+    }
+
+    @Override
+    public R get(String key) {
+        byte[] bytes = results.get(key);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return serializer.deserialize(bytes);
+        } catch (IOException e) {
+            logger.warn("Failed to read replicated result for {}", key, e);
+            results.remove(key);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, R result) {
+        try {
+            results.put(key, serializer.serialize(result));
+        } catch (IOException e) {
+            logger.warn("Failed to replicate result for {}", key, e);
+        }
+    }
+
+    @Override
+    public boolean tryClaim(String key) {
+        long now = System.currentTimeMillis();
+        String claim = nodeId + ":" + (now + leaseInMillis);
+        String existing = claims.putIfAbsent(key, claim);
+        if (existing == null) {
+            return true;
+        }
+        if (isOwnedBy(existing, nodeId) || hasExpired(existing, now)) {
+            return claims.replace(key, existing, claim);
+        }
+        return false;
+    }
+
+    @Override
+    public void release(String key) {
+        String existing = claims.get(key);
+        if (existing != null && isOwnedBy(existing, nodeId)) {
+            claims.remove(key, existing);
+        }
+    }
+
+    /**
+     * Node IDs may contain colons, the expiry time never does.
+     */
+    private static boolean isOwnedBy(String claim, String nodeId) {
+        int separator = claim.lastIndexOf(':');
+        return separator >= 0 && claim.substring(0, separator).equals(nodeId);
+    }
+
+    /**
+     * Malformed claims count as expired, so that they can be taken over.
+     */
+    private static boolean hasExpired(String claim, long now) {
+        try {
+            return Long.parseLong(claim.substring(claim.lastIndexOf(':') + 1)) <= now;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.degustudios.bitbucket.cluster;
+
+import com.atlassian.bitbucket.cluster.ClusterService;
+import com.atlassian.cache.Cache;
+import com.atlassian.cache.CacheManager;
+import com.atlassian.cache.CacheSettings;
+import com.atlassian.cache.CacheSettingsBuilder;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.executors.ReplicatedResultCache;
+import com.degustudios.executors.ResultSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares results between the nodes of a Data Center cluster. A standalone node keeps using only its local caches.
+ */
+@Service
+public class ReplicatedResultCacheFactory {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicatedResultCacheFactory.class);
+    private static final String CACHE_NAME_PREFIX = "com.degustudios.dotnet-format-for-bitbucket.";
+
+    private final CacheManager cacheManager;
+    private final ClusterService clusterService;
+    private final PluginProperties pluginProperties;
+
+    @Autowired
+    public ReplicatedResultCacheFactory(
+            @ComponentImport CacheManager cacheManager,
+            @ComponentImport ClusterService clusterService,
+            PluginProperties pluginProperties) {
+        this.cacheManager = cacheManager;
+        this.clusterService = clusterService;
+        this.pluginProperties = pluginProperties;
+    }
+
+    public <R> ReplicatedResultCache<R> create(String name, ResultSerializer<R> serializer) {
+        if (!clusterService.isClustered()) {
+            return ReplicatedResultCache.none();
+        }
+
+        long leaseInMillis = TimeUnit.SECONDS.toMillis(pluginProperties.getClusterClaimLeaseInSeconds());
+        CacheSettings resultSettings = new CacheSettingsBuilder()
+                .remote()
+                .replicateViaCopy()
+                .maxEntries(Math.max(1, pluginProperties.getCacheMaximumEntries()))
+                .expireAfterWrite(Math.max(1, pluginProperties.getCacheExpireAfterWriteInMinutes()), TimeUnit.MINUTES)
+                .build();
+        CacheSettings claimSettings = new CacheSettingsBuilder()
+                .remote()
+                .replicateViaCopy()
+                .expireAfterWrite(2 * leaseInMillis, TimeUnit.MILLISECONDS)
+                .build();
+        Cache<String, byte[]> results = cacheManager.getCache(CACHE_NAME_PREFIX + name + ".results", null, resultSettings);
+        Cache<String, String> claims = cacheManager.getCache(CACHE_NAME_PREFIX + name + ".claims", null, claimSettings);
+
+        String nodeId = clusterService.getLocalNode().getId();
+        logger.info("Sharing {} between cluster nodes as {}", name, nodeId);
+        return new AtlassianCacheReplicatedResultCache<>(results, claims, serializer, nodeId, leaseInMillis);
+    }
+}
@@ -0,0 +1,78 @@
+package com.degustudios.bitbucket.content;
+
+import com.atlassian.bitbucket.io.LineReader;
+import com.atlassian.bitbucket.io.LineReaderOutputHandler;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scm.CommandOutputHandler;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lists the files of a commit with the IDs of their content.
+ */
+@Service
+public class BlobIdLister {
+    private final ScmService scmService;
+    private final SecurityService securityService;
+
+    @Autowired
+    public BlobIdLister(@ComponentImport ScmService scmService, @ComponentImport SecurityService securityService) {
+        this.scmService = scmService;
+        this.securityService = securityService;
+    }
+
+    /**
+     * @return blob IDs by path, relative to the repository root
+     */
+    public Map<String, String> listBlobIds(Repository repository, String commitId) {
+        return securityService.withPermission(Permission.REPO_READ, "list blobs").call(() -> scmService
+                .createBuilder(repository)
+                .command("ls-tree")
+                .argument("-r")
+                .argument("--full-tree")
+                .argument(commitId)
+                .build(new BlobListOutputHandler())
+                .call());
+    }
+
+    /**
+     * Reads lines such as "100644 blob 8ab686eafeb1f44702738c8b0f24f2567c36da6d	src/Program.cs".
+     * Submodules are listed as commits and skipped.
+     */
+    private static class BlobListOutputHandler extends LineReaderOutputHandler implements CommandOutputHandler<Map<String, String>> {
+        private final Map<String, String> blobIds = new LinkedHashMap<>();
+
+        private BlobListOutputHandler() {
+            super(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Map<String, String> getOutput() {
+            return blobIds;
+        }
+
+        @Override
+        protected void processReader(LineReader reader) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                String[] fields = line.substring(0, tab).split(" ");
+                if (fields.length == 3 && fields[1].equals("blob")) {
+                    blobIds.put(SparseCheckoutPathCalculator.unquote(line.substring(tab + 1)), fields[2]);
+                }
+            }
+        }
+    }
+}
@@ -1,37 +1,72 @@
 package com.degustudios.bitbucket.content;
 
+import com.atlassian.bitbucket.content.ArchiveFormat;
 import com.atlassian.bitbucket.content.ArchiveRequest;
 import com.atlassian.bitbucket.content.ContentService;
 import com.atlassian.bitbucket.permission.Permission;
 import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.user.SecurityService;
 import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.*;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
-public class CodeService {
+public class CodeService implements DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(CodeService.class);
     private final ContentService contentService;
     private final SecurityService securityService;
+    private final PluginProperties pluginProperties;
+    private final ExecutorService extractionExecutor;
+    private final ZipArchiveExtractor zipArchiveExtractor;
 
     @Autowired
-    public CodeService(@ComponentImport ContentService contentService, @ComponentImport SecurityService securityService) {
+    public CodeService(
+            @ComponentImport ContentService contentService,
+            @ComponentImport SecurityService securityService,
+            PluginProperties pluginProperties) {
         this.contentService = contentService;
         this.securityService = securityService;
+        this.pluginProperties = pluginProperties;
+        this.extractionExecutor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())),
+                createThreadFactory());
+        this.zipArchiveExtractor = new ZipArchiveExtractor(extractionExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        extractionExecutor.shutdownNow();
     }
 
     public boolean tryDownloadRepositoryCode(Path extractedArchiveDirectoryPath, Repository repository, String commitId) {
+        return tryDownloadRepositoryCode(extractedArchiveDirectoryPath, repository, commitId, Collections.emptySet());
+    }
+
+    /**
+     * Downloads only the given paths, or the whole repository when no path is given.
+     * Files already in the directory are overwritten.
+     */
+    public boolean tryDownloadRepositoryCode(Path extractedArchiveDirectoryPath, Repository repository, String commitId, Collection<String> paths) {
+        if (pluginProperties.isArchiveStreamingEnabled()) {
+            return tryStreamRepositoryCode(extractedArchiveDirectoryPath, repository, commitId, paths);
+        }
+
         Path archiveFilePath = null;
         try {
             archiveFilePath = Files.createTempFile("archive", ".zip");
@@ -39,7 +74,8 @@ public class CodeService {
                     extractedArchiveDirectoryPath,
                     archiveFilePath,
                     repository,
-                    commitId);
+                    commitId,
+                    paths);
             return true;
         } catch (IOException e) {
             logger.error("Failed to download repository code for: {}", commitId, e);
@@ -49,6 +85,37 @@ public class CodeService {
         }
     }
 
+    /**
+     * Extracts a tar archive while it is being downloaded. Entries are checked one by one as they arrive,
+     * so whatever was extracted before an invalid entry is removed again. Files are written in parallel, like
+     * the entries of a zip archive.
+     */
+    private boolean tryStreamRepositoryCode(Path extractedArchiveDirectoryPath, Repository repository, String commitId, Collection<String> paths) {
+        try {
+            try (TarExtractingOutputStream extractingOutputStream = new TarExtractingOutputStream(extractedArchiveDirectoryPath, extractionExecutor)) {
+                securityService.withPermission(Permission.REPO_READ, "download repository").call(() -> {
+                    contentService.streamArchive(
+                            createArchiveRequest(repository, commitId, paths).format(ArchiveFormat.TAR).build(),
+                            fileType -> extractingOutputStream);
+                    return null;
+                });
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to download repository code for: {}", commitId, e);
+            cleanUpExtractedFiles(extractedArchiveDirectoryPath);
+            return false;
+        }
+    }
+
+    private void cleanUpExtractedFiles(Path extractedArchiveDirectoryPath) {
+        try {
+            FileUtils.cleanDirectory(extractedArchiveDirectoryPath.toFile());
+        } catch (IOException e) {
+            logger.error("Failed to clean up extracted files in {}", extractedArchiveDirectoryPath, e);
+        }
+    }
+
     private void cleanUp(Path archiveFilePath) {
         if (archiveFilePath != null && Files.exists(archiveFilePath)) {
             try {
@@ -59,61 +126,38 @@ public class CodeService {
         }
     }
 
-    private void downloadRepositoryCode(Path extractedArchiveDirectoryPath, Path archiveFilePath, Repository repository, String commitId) throws IOException {
+    private void downloadRepositoryCode(Path extractedArchiveDirectoryPath, Path archiveFilePath, Repository repository, String commitId, Collection<String> paths) throws IOException {
         securityService.withPermission(Permission.REPO_READ, "download repository").call(() -> {
-            downloadRepository(repository, commitId, archiveFilePath);
+            downloadRepository(repository, commitId, paths, archiveFilePath);
             return null;
         });
-        extractArchive(archiveFilePath, extractedArchiveDirectoryPath);
-    }
-
-    private void extractArchive(Path archiveFilePath, Path extractedArchiveDirectoryPath) throws IOException {
-        try (ZipFile zipFile = new ZipFile(archiveFilePath.toFile())) {
-            ArrayList<? extends ZipEntry> entries = Collections.list(zipFile.entries());
-
-            for (ZipEntry x : entries) {
-                if (!canBeExtracted(extractedArchiveDirectoryPath, x)) {
-                    throw new IOException("ZipEntry is outside of the target directory");
-                }
-            }
-
-            for (ZipEntry zipEntry : entries) {
-                extractZipFile(extractedArchiveDirectoryPath, zipFile, zipEntry);
-            }
-        }
+        zipArchiveExtractor.extract(archiveFilePath, extractedArchiveDirectoryPath);
     }
 
-    private boolean canBeExtracted(Path extractedArchiveDirectoryPath, ZipEntry zipEntry) throws IOException {
-        File newFile = new File(extractedArchiveDirectoryPath.toString(), zipEntry.getName());
-        return newFile.getCanonicalPath().startsWith(extractedArchiveDirectoryPath.toString());
-    }
-
-    private void extractZipFile(Path extractedArchiveDirectoryPath, ZipFile zipFile, ZipEntry zipEntry) throws IOException {
-        File newFile = new File(extractedArchiveDirectoryPath.toString(), zipEntry.getName());
-        if (zipEntry.isDirectory()) {
-            newFile.mkdirs();
-        } else {
-            try (InputStream zipFileInputStream = zipFile.getInputStream(zipEntry)) {
-                try (OutputStream newFileOutputStream = new FileOutputStream(newFile)) {
-                    copy(zipFileInputStream, newFileOutputStream);
-                }
-            }
-        }
-    }
-
-    private void downloadRepository(Repository repository, String commitId, Path filePath) throws IOException {
+    private void downloadRepository(Repository repository, String commitId, Collection<String> paths, Path filePath) throws IOException {
         try (FileOutputStream fileOutputStream = new FileOutputStream(filePath.toFile())) {
             contentService.streamArchive(
-                    new ArchiveRequest.Builder(repository, commitId).build(),
+                    createArchiveRequest(repository, commitId, paths).build(),
                     fileType -> fileOutputStream);
         }
     }
 
-    private void copy(InputStream source, OutputStream target) throws IOException {
-        byte[] buf = new byte[8192];
-        int length;
-        while ((length = source.read(buf)) > 0) {
-            target.write(buf, 0, length);
+    private static ArchiveRequest.Builder createArchiveRequest(Repository repository, String commitId, Collection<String> paths) {
+        ArchiveRequest.Builder builder = new ArchiveRequest.Builder(repository, commitId);
+        if (!paths.isEmpty()) {
+            builder.paths(paths);
         }
+        return builder;
+    }
+
+    private static ThreadFactory createThreadFactory() {
+        ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = defaultThreadFactory.newThread(runnable);
+            thread.setName("dotnet-format-extractor-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,188 @@
+package com.degustudios.bitbucket.content;
+
+import com.atlassian.bitbucket.io.LineReader;
+import com.atlassian.bitbucket.io.LineReaderOutputHandler;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scm.CommandOutputHandler;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Calculates which paths of a commit dotnet-format needs to check a set of changed files: the directories of the
+ * projects containing them, every project and solution file (so that solutions still load), and the files that
+ * configure the build and the formatting. Projects may import .props and .targets files from anywhere in the
+ * repository and analyzer configuration may live outside of their directories too, so all such files are included.
+ */
+@Service
+public class SparseCheckoutPathCalculator {
+    private static final String[] PROJECT_FILE_EXTENSIONS = new String[] {".csproj", ".vbproj", ".fsproj"};
+    private static final String[] ALWAYS_INCLUDED_FILE_EXTENSIONS = new String[] {
+            ".sln", ".csproj", ".vbproj", ".fsproj", ".props", ".targets", ".globalconfig", ".ruleset"};
+    private static final String[] ALWAYS_INCLUDED_FILE_NAMES = new String[] {".editorconfig", "global.json", "nuget.config"};
+    private static final String DIRECTORY_BUILD_FILE_PREFIX = "directory.build.";
+
+    private final ScmService scmService;
+    private final SecurityService securityService;
+
+    @Autowired
+    public SparseCheckoutPathCalculator(@ComponentImport ScmService scmService, @ComponentImport SecurityService securityService) {
+        this.scmService = scmService;
+        this.securityService = securityService;
+    }
+
+    public Set<String> calculatePaths(Repository repository, String commitId, Collection<String> changedPaths) {
+        List<String> files = securityService.withPermission(Permission.REPO_READ, "list files").call(() -> scmService
+                .createBuilder(repository)
+                .command("ls-tree")
+                .argument("-r")
+                .argument("--name-only")
+                .argument("--full-tree")
+                .argument(commitId)
+                .build(new FileListOutputHandler())
+                .call());
+        return calculatePaths(files, changedPaths);
+    }
+
+    public static Set<String> calculatePaths(Collection<String> files, Collection<String> changedPaths) {
+        Set<String> projectDirectories = new HashSet<>();
+        Set<String> paths = new TreeSet<>();
+        for (String file : files) {
+            String name = getName(file).toLowerCase(Locale.ROOT);
+            if (endsWithAny(name, PROJECT_FILE_EXTENSIONS)) {
+                projectDirectories.add(getParent(file));
+            }
+            if (endsWithAny(name, ALWAYS_INCLUDED_FILE_EXTENSIONS)
+                    || name.startsWith(DIRECTORY_BUILD_FILE_PREFIX)
+                    || contains(ALWAYS_INCLUDED_FILE_NAMES, name)) {
+                paths.add(file);
+            }
+        }
+
+        Set<String> existingFiles = new HashSet<>(files);
+        for (String changedPath : changedPaths) {
+            String projectDirectory = findProjectDirectory(changedPath, projectDirectories);
+            if (projectDirectory != null) {
+                paths.add(projectDirectory);
+            } else if (existingFiles.contains(changedPath)) {
+                paths.add(changedPath);
+            }
+        }
+        return paths;
+    }
+
+    private static String findProjectDirectory(String path, Set<String> projectDirectories) {
+        String directory = getParent(path);
+        while (directory != null) {
+            if (projectDirectories.contains(directory)) {
+                // A project at the root would pull in the whole repository, so only the changed file is taken
+                return directory.isEmpty() ? null : directory;
+            }
+            directory = directory.isEmpty() ? null : getParent(directory);
+        }
+        return null;
+    }
+
+    private static String getParent(String path) {
+        int separator = path.lastIndexOf('/');
+        return separator < 0 ? "" : path.substring(0, separator);
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static boolean endsWithAny(String value, String[] suffixes) {
+        for (String suffix : suffixes) {
+            if (value.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String x : values) {
+            if (x.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Git quotes paths with special or non-ASCII characters in C style, e.g. "src/\303\251.cs".
+     */
+    static String unquote(String path) {
+        if (path.length() < 2 || path.charAt(0) != '"' || path.charAt(path.length() - 1) != '"') {
+            return path;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 1; i < path.length() - 1; i++) {
+            char c = path.charAt(i);
+            if (c != '\\' || i + 1 >= path.length() - 1) {
+                byte[] encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                continue;
+            }
+            char escaped = path.charAt(++i);
+            if (escaped >= '0' && escaped <= '7' && i + 2 < path.length() - 1) {
+                bytes.write(Integer.parseInt(path.substring(i, i + 3), 8));
+                i += 2;
+            } else {
+                bytes.write(unescape(escaped));
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case 'a': return 7;
+            case 'b': return '\b';
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'v': return 11;
+            case 'f': return '\f';
+            case 'r': return '\r';
+            default: return c;
+        }
+    }
+
+    private static class FileListOutputHandler extends LineReaderOutputHandler implements CommandOutputHandler<List<String>> {
+        private final List<String> files = new ArrayList<>();
+
+        private FileListOutputHandler() {
+            super(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public List<String> getOutput() {
+            return files;
+        }
+
+        @Override
+        protected void processReader(LineReader reader) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    files.add(unquote(line));
+                }
+            }
+        }
+    }
+}
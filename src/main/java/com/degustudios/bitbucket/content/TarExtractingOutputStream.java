@@ -0,0 +1,407 @@
+package com.degustudios.bitbucket.content;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Extracts a tar archive into a directory while it is being written, so the archive itself never touches the disk.
+ * Understands ustar headers, pax extended headers (as written by git archive) and GNU long names.
+ * Every entry is checked to stay inside the target directory before anything is written for it.
+ * Links are not extracted, so no entry can escape the target directory through them.
+ * <p>
+ * Given an executor, small files are read into memory and written by its threads, while the next entries are
+ * parsed. Large files are written by the calling thread, so at most a few megabytes of the archive are held.
+ * Pending writes are awaited when the stream is closed.
+ */
+public class TarExtractingOutputStream extends OutputStream {
+    private static final Logger logger = LoggerFactory.getLogger(TarExtractingOutputStream.class);
+    private static final int BLOCK_SIZE = 512;
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAXIMUM_METADATA_SIZE = 1024 * 1024;
+    private static final int MAXIMUM_BUFFERED_FILE_SIZE = 1024 * 1024;
+    private static final long MAXIMUM_PENDING_SIZE = 16L * 1024 * 1024;
+    private static final int MAXIMUM_PENDING_FILES = 1024;
+
+    private final Path targetDirectory;
+    private final ExecutorService executor;
+    private final Deque<PendingWrite> pendingWrites = new ArrayDeque<>();
+    private final AtomicBoolean isStopped = new AtomicBoolean(false);
+    private long pendingSize;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private int headerLength;
+    private long remainingEntryBytes;
+    private long remainingPaddingBytes;
+    private OutputStream currentFile;
+    private Path currentBufferedFilePath;
+    private byte[] currentBufferedFile;
+    private int currentBufferedFileLength;
+    private ByteArrayOutputStream currentMetadata;
+    private byte currentMetadataType;
+    private String nextEntryPath;
+    private boolean hasReachedEnd;
+    private boolean isClosed;
+
+    public TarExtractingOutputStream(Path targetDirectory) {
+        this(targetDirectory, null);
+    }
+
+    /**
+     * @param executor writes small files, or null to write every file on the calling thread
+     */
+    public TarExtractingOutputStream(Path targetDirectory, ExecutorService executor) {
+        this.targetDirectory = targetDirectory.toAbsolutePath().normalize();
+        this.executor = executor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0 && !hasReachedEnd) {
+            int consumed;
+            if (remainingEntryBytes > 0) {
+                consumed = (int) Math.min(length, remainingEntryBytes);
+                writeEntryData(buffer, offset, consumed);
+                remainingEntryBytes -= consumed;
+                if (remainingEntryBytes == 0) {
+                    finishEntry();
+                }
+            } else if (remainingPaddingBytes > 0) {
+                consumed = (int) Math.min(length, remainingPaddingBytes);
+                remainingPaddingBytes -= consumed;
+            } else {
+                consumed = Math.min(length, BLOCK_SIZE - headerLength);
+                System.arraycopy(buffer, offset, header, headerLength, consumed);
+                headerLength += consumed;
+                if (headerLength == BLOCK_SIZE) {
+                    headerLength = 0;
+                    processHeader();
+                }
+            }
+            offset += consumed;
+            length -= consumed;
+        }
+    }
+
+    /**
+     * Waits for pending writes, also after a failure, so that nothing is written once the stream is closed.
+     *
+     * @throws IOException when the archive ended before its end-of-archive marker, or a file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        currentBufferedFile = null;
+        IOException failure = null;
+        if (currentFile != null) {
+            try {
+                currentFile.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+            currentFile = null;
+        }
+        if (failure != null || !hasReachedEnd) {
+            isStopped.set(true);
+        }
+        while (!pendingWrites.isEmpty()) {
+            try {
+                awaitOldestWrite();
+            } catch (IOException e) {
+                isStopped.set(true);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (!hasReachedEnd) {
+            throw new IOException("Archive is truncated");
+        }
+    }
+
+    private void processHeader() throws IOException {
+        if (isZeroBlock()) {
+            // The archive ends with two zero blocks, but the first one is enough to know no entry follows
+            hasReachedEnd = true;
+            return;
+        }
+        verifyChecksum();
+
+        byte type = header[156];
+        long size = parseNumber(124, 12);
+        remainingEntryBytes = size;
+        remainingPaddingBytes = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+
+        switch (type) {
+            case 'x':
+            case 'L':
+                startMetadata(type, size);
+                break;
+            case 'g':
+                // Global pax header, e.g. the commit id written by git archive
+                break;
+            case '5':
+                Files.createDirectories(resolveEntryPath(takeEntryPath()));
+                break;
+            case '0':
+            case '7':
+            case 0:
+                startFile(resolveEntryPath(takeEntryPath()), size);
+                break;
+            default:
+                logger.debug("Skipping tar entry {} of type {}", takeEntryPath(), (char) type);
+                break;
+        }
+        if (remainingEntryBytes == 0) {
+            finishEntry();
+        }
+    }
+
+    private void startMetadata(byte type, long size) throws IOException {
+        if (size > MAXIMUM_METADATA_SIZE) {
+            throw new IOException("Tar extended header is too large: " + size);
+        }
+        currentMetadataType = type;
+        currentMetadata = new ByteArrayOutputStream((int) size);
+    }
+
+    private void startFile(Path path, long size) throws IOException {
+        Files.createDirectories(path.getParent());
+        if (executor != null && size <= MAXIMUM_BUFFERED_FILE_SIZE) {
+            currentBufferedFilePath = path;
+            currentBufferedFile = new byte[(int) size];
+            currentBufferedFileLength = 0;
+        } else {
+            currentFile = new BufferedOutputStream(Files.newOutputStream(path), FILE_BUFFER_SIZE);
+        }
+    }
+
+    private void writeEntryData(byte[] buffer, int offset, int length) throws IOException {
+        if (currentBufferedFile != null) {
+            System.arraycopy(buffer, offset, currentBufferedFile, currentBufferedFileLength, length);
+            currentBufferedFileLength += length;
+        } else if (currentFile != null) {
+            currentFile.write(buffer, offset, length);
+        } else if (currentMetadata != null) {
+            currentMetadata.write(buffer, offset, length);
+        }
+    }
+
+    private void finishEntry() throws IOException {
+        if (currentBufferedFile != null) {
+            byte[] content = currentBufferedFile;
+            currentBufferedFile = null;
+            submitWrite(currentBufferedFilePath, content);
+        } else if (currentFile != null) {
+            currentFile.close();
+            currentFile = null;
+        } else if (currentMetadata != null) {
+            byte[] metadata = currentMetadata.toByteArray();
+            currentMetadata = null;
+            if (currentMetadataType == 'x') {
+                parsePaxPath(metadata);
+            } else {
+                nextEntryPath = readString(metadata, 0, metadata.length);
+            }
+        }
+    }
+
+    private void submitWrite(Path path, byte[] content) throws IOException {
+        while (!pendingWrites.isEmpty()
+                && (pendingSize + content.length > MAXIMUM_PENDING_SIZE || pendingWrites.size() >= MAXIMUM_PENDING_FILES)) {
+            awaitOldestWrite();
+        }
+        Future<?> write;
+        try {
+            write = executor.submit(() -> {
+                if (!isStopped.get()) {
+                    writeFile(path, content);
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            throw new IOException("Failed to write " + path, e);
+        }
+        pendingWrites.add(new PendingWrite(write, content.length));
+        pendingSize += content.length;
+    }
+
+    private void awaitOldestWrite() throws IOException {
+        PendingWrite pendingWrite = pendingWrites.poll();
+        pendingSize -= pendingWrite.size;
+        try {
+            pendingWrite.write.get();
+        } catch (InterruptedException e) {
+            isStopped.set(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting archive");
+        } catch (ExecutionException e) {
+            isStopped.set(true);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static void writeFile(Path path, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(content);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }
+    }
+
+    /**
+     * Pax records have the form "length key=value\n", where the length includes the whole record.
+     */
+    private void parsePaxPath(byte[] metadata) throws IOException {
+        int position = 0;
+        while (position < metadata.length) {
+            int space = indexOf(metadata, (byte) ' ', position);
+            if (space < 0) {
+                throw new IOException("Malformed pax header");
+            }
+            int recordLength;
+            try {
+                recordLength = Integer.parseInt(new String(metadata, position, space - position, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed pax header", e);
+            }
+            int recordEnd = position + recordLength;
+            int equals = indexOf(metadata, (byte) '=', space);
+            if (recordLength <= 0 || recordEnd > metadata.length || equals < 0 || equals >= recordEnd) {
+                throw new IOException("Malformed pax header");
+            }
+            String key = new String(metadata, space + 1, equals - space - 1, StandardCharsets.UTF_8);
+            if ("path".equals(key)) {
+                // The value is followed by a newline that is not part of it
+                nextEntryPath = new String(metadata, equals + 1, recordEnd - equals - 2, StandardCharsets.UTF_8);
+            }
+            position = recordEnd;
+        }
+    }
+
+    private String takeEntryPath() {
+        String path = nextEntryPath;
+        nextEntryPath = null;
+        if (path != null) {
+            return path;
+        }
+        String name = readString(header, 0, 100);
+        boolean isUstar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r';
+        String prefix = isUstar ? readString(header, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private Path resolveEntryPath(String name) throws IOException {
+        Path path = targetDirectory.resolve(name).normalize();
+        if (!path.startsWith(targetDirectory)) {
+            throw new IOException("Archive entry is outside of the target directory: " + name);
+        }
+        return path;
+    }
+
+    private void verifyChecksum() throws IOException {
+        long expectedChecksum = parseNumber(148, 8);
+        long checksum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            // The checksum field itself is summed as if it were filled with spaces
+            checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+        }
+        if (checksum != expectedChecksum) {
+            throw new IOException("Invalid tar header checksum");
+        }
+    }
+
+    private long parseNumber(int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            // Base-256 encoding used for values that do not fit in octal
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0) {
+                break;
+            }
+            if (b == ' ') {
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Invalid number in tar header");
+            }
+            value = value * 8 + (b - '0');
+        }
+        return value;
+    }
+
+    private boolean isZeroBlock() {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readString(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class PendingWrite {
+        private final Future<?> write;
+        private final int size;
+
+        private PendingWrite(Future<?> write, int size) {
+            this.write = write;
+            this.size = size;
+        }
+    }
+}
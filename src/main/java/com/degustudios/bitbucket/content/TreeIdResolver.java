@@ -0,0 +1,97 @@
+package com.degustudios.bitbucket.content;
+
+import com.atlassian.bitbucket.io.LineReader;
+import com.atlassian.bitbucket.io.LineReaderOutputHandler;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scm.CommandOutputHandler;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resolves the root tree of commits. Rebased, amended or cherry-picked commits get new IDs but keep the tree of
+ * the original when the content did not change, so the tree identifies what dotnet-format actually checks.
+ */
+@Service
+public class TreeIdResolver {
+    private static final Logger logger = LoggerFactory.getLogger(TreeIdResolver.class);
+    // Commits never change their tree, so resolved IDs are kept until evicted
+    private static final int MAXIMUM_CACHED_TREE_IDS = 10000;
+
+    private final ScmService scmService;
+    private final SecurityService securityService;
+    private final Map<String, String> treeIdsByCommit = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAXIMUM_CACHED_TREE_IDS;
+        }
+    };
+
+    @Autowired
+    public TreeIdResolver(@ComponentImport ScmService scmService, @ComponentImport SecurityService securityService) {
+        this.scmService = scmService;
+        this.securityService = securityService;
+    }
+
+    /**
+     * @return the ID of the commit's root tree, or null when it could not be resolved
+     */
+    public String resolve(Repository repository, String commitId) {
+        String cacheKey = repository.getId() + "/" + commitId;
+        synchronized (treeIdsByCommit) {
+            String treeId = treeIdsByCommit.get(cacheKey);
+            if (treeId != null) {
+                return treeId;
+            }
+        }
+        String treeId;
+        try {
+            treeId = securityService.withPermission(Permission.REPO_READ, "resolve tree").call(() -> scmService
+                    .createBuilder(repository)
+                    .command("rev-parse")
+                    .argument("--verify")
+                    .argument(commitId + "^{tree}")
+                    .build(new TreeIdOutputHandler())
+                    .call());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to resolve tree of commit {} in repository {}", commitId, repository.getId(), e);
+            return null;
+        }
+        if (treeId == null || treeId.isEmpty()) {
+            return null;
+        }
+        synchronized (treeIdsByCommit) {
+            treeIdsByCommit.put(cacheKey, treeId);
+        }
+        return treeId;
+    }
+
+    private static class TreeIdOutputHandler extends LineReaderOutputHandler implements CommandOutputHandler<String> {
+        private String treeId;
+
+        private TreeIdOutputHandler() {
+            super(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String getOutput() {
+            return treeId;
+        }
+
+        @Override
+        protected void processReader(LineReader reader) throws IOException {
+            String line = reader.readLine();
+            treeId = line == null ? null : line.trim();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.degustudios.bitbucket.content;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Directory holding the code of a single commit for as long as the workspace is open.
+ */
+public class Workspace implements Closeable {
+    private final Path path;
+    private final Consumer<Boolean> releaseFunc;
+    private boolean isDirty;
+    private boolean isClosed;
+
+    Workspace(Path path, Consumer<Boolean> releaseFunc) {
+        this.path = path;
+        this.releaseFunc = releaseFunc;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Marks the files as no longer matching the commit, e.g. after dotnet-format rewrote them.
+     */
+    public void markDirty() {
+        isDirty = true;
+    }
+
+    @Override
+    public void close() {
+        if (!isClosed) {
+            isClosed = true;
+            releaseFunc.accept(isDirty);
+        }
+    }
+}
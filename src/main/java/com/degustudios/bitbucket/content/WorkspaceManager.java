@@ -0,0 +1,374 @@
+package com.degustudios.bitbucket.content;
+
+import com.atlassian.bitbucket.content.Change;
+import com.atlassian.bitbucket.content.ChangeType;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scm.ChangesCommandParameters;
+import com.atlassian.bitbucket.scm.ScmCommandFactory;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.bitbucket.util.Page;
+import com.atlassian.bitbucket.util.PageRequest;
+import com.atlassian.bitbucket.util.PageRequestImpl;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps one working directory per repository between validations. A workspace is brought to the requested
+ * commit by downloading only the paths that changed since the commit it holds. Workspaces that were not used
+ * for the longest time are removed when all of them together grow over the disk budget. The size of a workspace is
+ * updated from the sizes of the paths that changed, and measured in full only after a full download and every few
+ * updates, to also count what dotnet-format left in it.
+ * When the workspace of a repository is busy, or workspaces are disabled, a throw-away checkout is used instead.
+ */
+@Service
+public class WorkspaceManager implements InitializingBean {
+    private static final Logger logger = LoggerFactory.getLogger(WorkspaceManager.class);
+    private static final String TREE_DIRECTORY_NAME = "tree";
+    private static final String COMMIT_FILE_NAME = "commit";
+    private static final int MAXIMUM_INCREMENTAL_CHANGES = 10000;
+    private static final int CHANGES_PAGE_SIZE = 1000;
+    private static final int UPDATES_BETWEEN_MEASUREMENTS = 20;
+
+    private final CodeService codeService;
+    private final SparseCheckoutPathCalculator sparseCheckoutPathCalculator;
+    private final ScmService scmService;
+    private final SecurityService securityService;
+    private final PluginProperties pluginProperties;
+    private final Map<Integer, WorkspaceState> workspaces = new HashMap<>();
+    private long accessCounter;
+
+    @Autowired
+    public WorkspaceManager(
+            CodeService codeService,
+            SparseCheckoutPathCalculator sparseCheckoutPathCalculator,
+            @ComponentImport ScmService scmService,
+            @ComponentImport SecurityService securityService,
+            PluginProperties pluginProperties) {
+        this.codeService = codeService;
+        this.sparseCheckoutPathCalculator = sparseCheckoutPathCalculator;
+        this.scmService = scmService;
+        this.securityService = securityService;
+        this.pluginProperties = pluginProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        File directory = getWorkspacesDirectory();
+        File[] repositoryDirectories = directory == null ? null : directory.listFiles(File::isDirectory);
+        if (repositoryDirectories == null) {
+            return;
+        }
+        synchronized (this) {
+            for (File repositoryDirectory : repositoryDirectories) {
+                try {
+                    WorkspaceState state = new WorkspaceState(repositoryDirectory.toPath());
+                    state.sizeInBytes = sizeOf(state.getTreePath());
+                    workspaces.put(Integer.parseInt(repositoryDirectory.getName()), state);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected directory {} among workspaces", repositoryDirectory);
+                }
+            }
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * @throws IOException when the code could not be downloaded
+     */
+    public Workspace acquire(Repository repository, String commitId) throws IOException {
+        WorkspaceState state = tryLockWorkspace(repository.getId());
+        if (state == null) {
+            return acquireTemporary(repository, commitId);
+        }
+
+        try {
+            materialize(state, repository, commitId);
+        } catch (IOException | RuntimeException e) {
+            release(state, true);
+            throw e;
+        }
+        return new Workspace(state.getTreePath(), isDirty -> release(state, isDirty));
+    }
+
+    /**
+     * When sparse downloads are enabled, only the paths needed to check the changed paths are downloaded
+     * into a temporary directory.
+     *
+     * @throws IOException when the code could not be downloaded
+     */
+    public Workspace acquire(Repository repository, String commitId, Collection<String> changedPaths) throws IOException {
+        if (!pluginProperties.isSparseDownloadEnabled() || changedPaths.isEmpty()) {
+            return acquire(repository, commitId);
+        }
+
+        Set<String> paths;
+        try {
+            paths = sparseCheckoutPathCalculator.calculatePaths(repository, commitId, changedPaths);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to calculate sparse checkout of {}, downloading whole repository", commitId, e);
+            return acquire(repository, commitId);
+        }
+        return acquireTemporary(repository, commitId, paths);
+    }
+
+    private Workspace acquireTemporary(Repository repository, String commitId) throws IOException {
+        return acquireTemporary(repository, commitId, Collections.emptySet());
+    }
+
+    private Workspace acquireTemporary(Repository repository, String commitId, Collection<String> paths) throws IOException {
+        Path directory = Files.createTempDirectory("bb");
+        Workspace workspace = new Workspace(directory, isDirty -> deleteDirectory(directory));
+        boolean isDownloaded = paths.isEmpty()
+                ? codeService.tryDownloadRepositoryCode(directory, repository, commitId)
+                : codeService.tryDownloadRepositoryCode(directory, repository, commitId, paths);
+        if (!isDownloaded) {
+            workspace.close();
+            throw new IOException("Downloading code failed");
+        }
+        return workspace;
+    }
+
+    private synchronized WorkspaceState tryLockWorkspace(int repositoryId) {
+        File directory = getWorkspacesDirectory();
+        if (pluginProperties.getWorkspacesMaximumSize() <= 0 || directory == null) {
+            return null;
+        }
+        WorkspaceState state = workspaces.computeIfAbsent(
+                repositoryId,
+                id -> new WorkspaceState(directory.toPath().resolve(Integer.toString(id))));
+        if (state.isInUse) {
+            return null;
+        }
+        state.isInUse = true;
+        state.lastAccess = ++accessCounter;
+        return state;
+    }
+
+    private synchronized void release(WorkspaceState state, boolean isDirty) {
+        state.isInUse = false;
+        if (isDirty) {
+            try {
+                Files.deleteIfExists(state.getCommitFilePath());
+            } catch (IOException e) {
+                logger.warn("Failed to mark workspace {} as dirty", state.directory, e);
+                deleteWorkspace(state);
+            }
+        }
+        evictOverBudget();
+    }
+
+    private void materialize(WorkspaceState state, Repository repository, String commitId) throws IOException {
+        Path treePath = state.getTreePath();
+        String currentCommitId = readCommitId(state);
+        if (commitId.equals(currentCommitId)) {
+            return;
+        }
+
+        // Until the new commit is recorded the workspace is considered dirty, also after a crash
+        Files.deleteIfExists(state.getCommitFilePath());
+        Files.createDirectories(treePath);
+        IncrementalUpdate update = currentCommitId == null ? null : tryApplyChanges(treePath, repository, currentCommitId, commitId);
+        if (update == null) {
+            FileUtils.cleanDirectory(treePath.toFile());
+            if (!codeService.tryDownloadRepositoryCode(treePath, repository, commitId)) {
+                throw new IOException("Downloading code failed");
+            }
+        } else if (!update.changedPaths.isEmpty() && !codeService.tryDownloadRepositoryCode(treePath, repository, commitId, update.changedPaths)) {
+            throw new IOException("Downloading changed code failed");
+        }
+
+        Files.write(state.getCommitFilePath(), commitId.getBytes(StandardCharsets.UTF_8));
+        boolean isMeasured = update == null || state.updatesSinceMeasured + 1 >= UPDATES_BETWEEN_MEASUREMENTS;
+        long sizeInBytes = isMeasured
+                ? sizeOf(treePath)
+                : state.sizeInBytes - update.replacedSizeInBytes + sizeOf(treePath, update.changedPaths);
+        synchronized (this) {
+            state.sizeInBytes = Math.max(0, sizeInBytes);
+            state.updatesSinceMeasured = isMeasured ? 0 : state.updatesSinceMeasured + 1;
+        }
+    }
+
+    /**
+     * Removes deleted paths from the workspace.
+     *
+     * @return paths to download, or null when there are too many changes to update the workspace incrementally
+     */
+    private IncrementalUpdate tryApplyChanges(Path treePath, Repository repository, String sinceId, String untilId) throws IOException {
+        Set<String> deletedPaths = new HashSet<>();
+        Set<String> changedPaths = new HashSet<>();
+        ScmCommandFactory commandFactory = scmService.getCommandFactory(repository);
+        Page<Change> page = null;
+
+        do {
+            PageRequest pageRequest = page == null
+                    ? new PageRequestImpl(0, CHANGES_PAGE_SIZE)
+                    : page.getNextPageRequest().buildRestrictedPageRequest(CHANGES_PAGE_SIZE);
+            page = securityService.withPermission(Permission.REPO_READ, "list changes").call(() -> commandFactory.changes(
+                    new ChangesCommandParameters.Builder()
+                            .sinceId(sinceId)
+                            .untilId(untilId)
+                            .build(),
+                    pageRequest).call());
+
+            for (Change change : page.getValues()) {
+                if (change.getType() == ChangeType.DELETE) {
+                    deletedPaths.add(change.getPath().toString());
+                } else {
+                    if (change.getType() == ChangeType.MOVE) {
+                        deletedPaths.add(change.getSrcPath().toString());
+                    }
+                    changedPaths.add(change.getPath().toString());
+                }
+            }
+            if (deletedPaths.size() + changedPaths.size() > MAXIMUM_INCREMENTAL_CHANGES) {
+                return null;
+            }
+        }
+        while (!page.getIsLastPage());
+
+        deletedPaths.removeAll(changedPaths);
+        long replacedSizeInBytes = sizeOf(treePath, deletedPaths) + sizeOf(treePath, changedPaths);
+        for (String deletedPath : deletedPaths) {
+            delete(treePath, deletedPath);
+        }
+        return new IncrementalUpdate(changedPaths, replacedSizeInBytes);
+    }
+
+    private static void delete(Path treePath, String relativePath) throws IOException {
+        Path path = treePath.resolve(relativePath).normalize();
+        if (!path.startsWith(treePath) || path.equals(treePath)) {
+            throw new IOException("Changed path is outside of the workspace: " + relativePath);
+        }
+        if (Files.isDirectory(path)) {
+            FileUtils.deleteDirectory(path.toFile());
+        } else {
+            Files.deleteIfExists(path);
+        }
+
+        Path parent = path.getParent();
+        while (!parent.equals(treePath) && isEmptyDirectory(parent)) {
+            Files.delete(parent);
+            parent = parent.getParent();
+        }
+    }
+
+    private void evictOverBudget() {
+        long maximumSize = pluginProperties.getWorkspacesMaximumSize();
+        long totalSize = workspaces.values().stream().mapToLong(x -> x.sizeInBytes).sum();
+        while (totalSize > maximumSize) {
+            WorkspaceState leastRecentlyUsed = workspaces.values().stream()
+                    .filter(x -> !x.isInUse)
+                    .min((x, y) -> Long.compare(x.lastAccess, y.lastAccess))
+                    .orElse(null);
+            if (leastRecentlyUsed == null) {
+                return;
+            }
+            totalSize -= leastRecentlyUsed.sizeInBytes;
+            deleteWorkspace(leastRecentlyUsed);
+        }
+    }
+
+    private void deleteWorkspace(WorkspaceState state) {
+        workspaces.values().remove(state);
+        deleteDirectory(state.directory);
+    }
+
+    private File getWorkspacesDirectory() {
+        File directory = pluginProperties.getWorkspacesDirectory();
+        return directory == null ? null : directory.toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    private static String readCommitId(WorkspaceState state) throws IOException {
+        Path commitFilePath = state.getCommitFilePath();
+        if (!Files.isRegularFile(commitFilePath) || !Files.isDirectory(state.getTreePath())) {
+            return null;
+        }
+        return new String(Files.readAllBytes(commitFilePath), StandardCharsets.UTF_8).trim();
+    }
+
+    private static boolean isEmptyDirectory(Path path) throws IOException {
+        String[] children = path.toFile().list();
+        return children != null && children.length == 0;
+    }
+
+    private static long sizeOf(Path path) {
+        return Files.isDirectory(path) ? FileUtils.sizeOfDirectory(path.toFile()) : 0;
+    }
+
+    private static long sizeOf(Path treePath, Collection<String> relativePaths) throws IOException {
+        long sizeInBytes = 0;
+        for (String relativePath : relativePaths) {
+            Path path = treePath.resolve(relativePath).normalize();
+            if (!path.startsWith(treePath) || path.equals(treePath)) {
+                continue;
+            }
+            if (Files.isDirectory(path)) {
+                sizeInBytes += FileUtils.sizeOfDirectory(path.toFile());
+            } else if (Files.isRegularFile(path)) {
+                sizeInBytes += Files.size(path);
+            }
+        }
+        return sizeInBytes;
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try {
+            FileUtils.deleteDirectory(directory.toFile());
+        } catch (IOException e) {
+            logger.error("Failed to delete workspace {}", directory, e);
+        }
+    }
+
+    private static class IncrementalUpdate {
+        private final Set<String> changedPaths;
+        /**
+         * Size of the changed and deleted paths before they were replaced
+         */
+        private final long replacedSizeInBytes;
+
+        private IncrementalUpdate(Set<String> changedPaths, long replacedSizeInBytes) {
+            this.changedPaths = changedPaths;
+            this.replacedSizeInBytes = replacedSizeInBytes;
+        }
+    }
+
+    private static class WorkspaceState {
+        private final Path directory;
+        private long sizeInBytes;
+        private int updatesSinceMeasured;
+        private long lastAccess;
+        private boolean isInUse;
+
+        private WorkspaceState(Path directory) {
+            this.directory = directory;
+        }
+
+        private Path getTreePath() {
+            return directory.resolve(TREE_DIRECTORY_NAME);
+        }
+
+        private Path getCommitFilePath() {
+            return directory.resolve(COMMIT_FILE_NAME);
+        }
+    }
+}
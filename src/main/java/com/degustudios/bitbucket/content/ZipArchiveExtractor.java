@@ -0,0 +1,148 @@
+package com.degustudios.bitbucket.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip archive on several threads. Every entry is checked to stay inside the target directory before
+ * anything is written, then all directories are created and finally files are written in parallel batches.
+ */
+public class ZipArchiveExtractor {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAXIMUM_BATCH_ENTRIES = 256;
+    private static final long MAXIMUM_BATCH_SIZE = 16L * 1024 * 1024;
+
+    private final ExecutorService executor;
+
+    public ZipArchiveExtractor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void extract(Path archiveFilePath, Path targetDirectory) throws IOException {
+        Path normalizedTargetDirectory = targetDirectory.toAbsolutePath().normalize();
+        try (ZipFile zipFile = new ZipFile(archiveFilePath.toFile())) {
+            Set<Path> directories = new LinkedHashSet<>();
+            List<FileEntry> files = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                Path path = normalizedTargetDirectory.resolve(entry.getName()).normalize();
+                if (!path.startsWith(normalizedTargetDirectory)) {
+                    throw new IOException("ZipEntry is outside of the target directory");
+                }
+                if (entry.isDirectory()) {
+                    directories.add(path);
+                } else {
+                    directories.add(path.getParent());
+                    files.add(new FileEntry(entry, path));
+                }
+            }
+
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            writeFiles(zipFile, files);
+        }
+    }
+
+    private void writeFiles(ZipFile zipFile, List<FileEntry> files) throws IOException {
+        AtomicBoolean isStopped = new AtomicBoolean(false);
+        List<Future<?>> batches = new ArrayList<>();
+        int batchStart = 0;
+        long batchSize = 0;
+        for (int i = 0; i < files.size(); i++) {
+            batchSize += Math.max(0, files.get(i).entry.getSize());
+            boolean isLast = i == files.size() - 1;
+            if (isLast || i + 1 - batchStart >= MAXIMUM_BATCH_ENTRIES || batchSize >= MAXIMUM_BATCH_SIZE) {
+                List<FileEntry> batch = files.subList(batchStart, i + 1);
+                batches.add(executor.submit(() -> {
+                    writeBatch(zipFile, batch, isStopped);
+                    return null;
+                }));
+                batchStart = i + 1;
+                batchSize = 0;
+            }
+        }
+        awaitAll(batches, isStopped);
+    }
+
+    private static void writeBatch(ZipFile zipFile, List<FileEntry> batch, AtomicBoolean isStopped) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (FileEntry file : batch) {
+            if (isStopped.get()) {
+                return;
+            }
+            try (InputStream inputStream = zipFile.getInputStream(file.entry);
+                 FileChannel channel = FileChannel.open(file.path,
+                         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                int length;
+                while ((length = inputStream.read(buffer)) >= 0) {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+                    while (byteBuffer.hasRemaining()) {
+                        channel.write(byteBuffer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for every batch, also after a failure, so that nothing is written once extraction has returned.
+     */
+    private static void awaitAll(List<Future<?>> batches, AtomicBoolean isStopped) throws IOException {
+        IOException failure = null;
+        boolean isInterrupted = false;
+        for (Future<?> batch : batches) {
+            while (true) {
+                try {
+                    batch.get();
+                    break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                    isStopped.set(true);
+                    if (failure == null) {
+                        failure = new InterruptedIOException("Interrupted while extracting archive");
+                    }
+                } catch (ExecutionException e) {
+                    isStopped.set(true);
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                    break;
+                }
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static class FileEntry {
+        private final ZipEntry entry;
+        private final Path path;
+
+        private FileEntry(ZipEntry entry, Path path) {
+            this.entry = entry;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.degustudios.bitbucket.events;
+
+import com.atlassian.bitbucket.event.pull.PullRequestDeclinedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestDeletedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestMergedEvent;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.mergechecks.comment.PullRequestCommentIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the comment index entry of a pull request once it is merged, declined or deleted, so that plugin settings
+ * only hold entries of open pull requests. A declined pull request that is reopened finds its comment by searching
+ * its activities again.
+ */
+@Component
+public class PullRequestCommentIndexCleaner implements InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(PullRequestCommentIndexCleaner.class);
+
+    private final EventPublisher eventPublisher;
+    private final PullRequestCommentIndex commentIndex;
+
+    @Autowired
+    public PullRequestCommentIndexCleaner(
+            @ComponentImport EventPublisher eventPublisher,
+            PullRequestCommentIndex commentIndex) {
+        this.eventPublisher = eventPublisher;
+        this.commentIndex = commentIndex;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        eventPublisher.register(this);
+    }
+
+    @Override
+    public void destroy() {
+        eventPublisher.unregister(this);
+    }
+
+    @EventListener
+    public void onPullRequestMerged(PullRequestMergedEvent event) {
+        remove(event);
+    }
+
+    @EventListener
+    public void onPullRequestDeclined(PullRequestDeclinedEvent event) {
+        remove(event);
+    }
+
+    @EventListener
+    public void onPullRequestDeleted(PullRequestDeletedEvent event) {
+        remove(event);
+    }
+
+    private void remove(PullRequestEvent event) {
+        try {
+            commentIndex.remove(event.getPullRequest());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to remove comment index entry of pull request {}", event.getPullRequest().getId(), e);
+        }
+    }
+}
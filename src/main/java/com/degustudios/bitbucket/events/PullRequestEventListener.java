@@ -0,0 +1,117 @@
+package com.degustudios.bitbucket.events;
+
+import com.atlassian.bitbucket.event.pull.PullRequestOpenedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestRescopedEvent;
+import com.atlassian.bitbucket.hook.repository.GetRepositoryHookSettingsRequest;
+import com.atlassian.bitbucket.hook.repository.RepositoryHook;
+import com.atlassian.bitbucket.hook.repository.RepositoryHookService;
+import com.atlassian.bitbucket.hook.repository.RepositoryHookSettings;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestState;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scope.Scope;
+import com.atlassian.bitbucket.scope.Scopes;
+import com.atlassian.bitbucket.setting.Settings;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidatorParameterCalculator;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.bitbucket.repository.validators.IdempotentlyCachedDotnetFormatRefValidatorWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Starts validating pull requests as soon as they are opened or their source branch changes, so the merge check
+ * usually finds the result already cached instead of running dotnet-format while the pull request page loads.
+ */
+@Component
+public class PullRequestEventListener implements InitializingBean, DisposableBean {
+    public static final String MERGE_CHECK_KEY =
+            "com.degustudios.bitbucket.dotnet-format-for-bitbucket:isFormattedWithDotnetFormatMergeCheck";
+    private static final Logger logger = LoggerFactory.getLogger(PullRequestEventListener.class);
+
+    private final EventPublisher eventPublisher;
+    private final RepositoryHookService repositoryHookService;
+    private final SecurityService securityService;
+    private final DotnetFormatRefValidatorParameterCalculator parameterCalculator;
+    private final IdempotentlyCachedDotnetFormatRefValidatorWrapper validator;
+    private final PluginProperties pluginProperties;
+
+    @Autowired
+    public PullRequestEventListener(
+            @ComponentImport EventPublisher eventPublisher,
+            @ComponentImport RepositoryHookService repositoryHookService,
+            @ComponentImport SecurityService securityService,
+            DotnetFormatRefValidatorParameterCalculator parameterCalculator,
+            IdempotentlyCachedDotnetFormatRefValidatorWrapper validator,
+            PluginProperties pluginProperties) {
+        this.eventPublisher = eventPublisher;
+        this.repositoryHookService = repositoryHookService;
+        this.securityService = securityService;
+        this.parameterCalculator = parameterCalculator;
+        this.validator = validator;
+        this.pluginProperties = pluginProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (pluginProperties.isPrewarmEnabled()) {
+            eventPublisher.register(this);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        eventPublisher.unregister(this);
+    }
+
+    @EventListener
+    public void onPullRequestOpened(PullRequestOpenedEvent event) {
+        prewarm(event.getPullRequest());
+    }
+
+    @EventListener
+    public void onPullRequestRescoped(PullRequestRescopedEvent event) {
+        prewarm(event.getPullRequest());
+    }
+
+    private void prewarm(PullRequest pullRequest) {
+        if (pullRequest.getState() != PullRequestState.OPEN) {
+            return;
+        }
+        try {
+            securityService.withPermission(Permission.REPO_ADMIN, "Pre-warm dotnet-format merge check").call(() -> {
+                // The merge check runs in the repository the pull request is merged into
+                Settings settings = getSettingsIfEnabled(pullRequest.getToRef().getRepository());
+                List<String> params = settings == null ? null : parameterCalculator.calculateParameters(settings, pullRequest);
+                // No parameters when the pull request changes no file dotnet-format reads
+                if (params != null) {
+                    validator.prewarm(pullRequest.getFromRef(), params);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Failed to pre-warm dotnet-format for pull request {}", pullRequest.getId(), e);
+        }
+    }
+
+    private Settings getSettingsIfEnabled(Repository repository) {
+        Scope scope = Scopes.repository(repository);
+        RepositoryHook hook = repositoryHookService.getByKey(scope, MERGE_CHECK_KEY);
+        if (hook == null || !hook.isEnabled()) {
+            return null;
+        }
+        RepositoryHookSettings hookSettings = repositoryHookService.getSettings(
+                new GetRepositoryHookSettingsRequest.Builder(scope, MERGE_CHECK_KEY).build());
+        return hookSettings == null ? null : hookSettings.getSettings();
+    }
+}
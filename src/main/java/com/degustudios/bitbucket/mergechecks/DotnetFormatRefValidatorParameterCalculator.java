@@ -10,6 +10,8 @@ import com.atlassian.bitbucket.util.Page;
 import com.atlassian.bitbucket.util.PageRequest;
 import com.atlassian.bitbucket.util.PageRequestImpl;
 import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -24,19 +26,35 @@ public class DotnetFormatRefValidatorParameterCalculator {
     public static final String SHOULD_USE_INCLUDE_PARAMETER = "shouldUseIncludeParameter";
 
     private final ScmService scmService;
+    private final RelevantFileFilter relevantFileFilter;
 
-    public DotnetFormatRefValidatorParameterCalculator(@ComponentImport ScmService scmService){
+    @Autowired
+    public DotnetFormatRefValidatorParameterCalculator(@ComponentImport ScmService scmService, PluginProperties pluginProperties){
+        this(scmService, new RelevantFileFilter(pluginProperties.getRelevantFileGlobs()));
+    }
+
+    public DotnetFormatRefValidatorParameterCalculator(ScmService scmService, RelevantFileFilter relevantFileFilter){
         this.scmService = scmService;
+        this.relevantFileFilter = relevantFileFilter;
     }
 
+    /**
+     * @return the parameters, or null when the pull request only changes files dotnet-format does not read,
+     * so there is nothing to check
+     */
     public List<String> calculateParameters(Settings settings, PullRequest pullRequest) {
         Stream<String> dotNetFormatParametersStream = streamDotNetFormatParameters(settings);
-        if (!settings.getBoolean(SHOULD_USE_INCLUDE_PARAMETER, false)) {
+        boolean shouldUseIncludeParameter = settings.getBoolean(SHOULD_USE_INCLUDE_PARAMETER, false);
+        if (!shouldUseIncludeParameter && relevantFileFilter.matchesEverything()) {
             return dotNetFormatParametersStream.collect(Collectors.toList());
         }
 
-        Collection<String> includePaths = getChanges(pullRequest);
-        if (includePaths.isEmpty()){
+        // Without the include parameter, finding one relevant file is enough
+        Collection<String> includePaths = getChanges(pullRequest, !shouldUseIncludeParameter);
+        if (!includePaths.isEmpty() && includePaths.stream().noneMatch(relevantFileFilter::isRelevant)) {
+            return null;
+        }
+        if (!shouldUseIncludeParameter || includePaths.isEmpty()){
             return dotNetFormatParametersStream.collect(Collectors.toList());
         }
 
@@ -65,11 +83,13 @@ public class DotnetFormatRefValidatorParameterCalculator {
         return allMatches.stream().filter(s -> !s.isEmpty());
     }
 
-    private Collection<String> getChanges(PullRequest request) {
+    private Collection<String> getChanges(PullRequest request, boolean stopAtRelevantFile) {
         ScmCommandFactory commandFactory = scmService.getCommandFactory(request.getFromRef().getRepository());
         int pageSize = 100;
-        Set<String> changes = new HashSet<>();
+        // Sorted, so the same changes always give the same parameters
+        Set<String> changes = new TreeSet<>();
         Page<Change> query = null;
+        boolean hasRelevantFile = false;
 
         do {
             PageRequest pageRequest = query == null
@@ -82,12 +102,14 @@ public class DotnetFormatRefValidatorParameterCalculator {
                             .build(),
                     pageRequest).call();
 
-            changes.addAll(query
+            Set<String> pageChanges = query
                     .stream()
                     .map(change -> change.getPath().toString())
-                    .collect(Collectors.toSet()));
+                    .collect(Collectors.toSet());
+            changes.addAll(pageChanges);
+            hasRelevantFile = hasRelevantFile || pageChanges.stream().anyMatch(relevantFileFilter::isRelevant);
         }
-        while (!query.getIsLastPage());
+        while (!query.getIsLastPage() && !(stopAtRelevantFile && hasRelevantFile));
 
         return changes;
     }
@@ -4,6 +4,11 @@ import com.atlassian.bitbucket.hook.repository.PreRepositoryHookContext;
 import com.atlassian.bitbucket.hook.repository.PullRequestMergeHookRequest;
 import com.atlassian.bitbucket.hook.repository.RepositoryHookResult;
 import com.atlassian.bitbucket.hook.repository.RepositoryMergeCheck;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.setting.Settings;
+import com.degustudios.bitbucket.metrics.MergeCheckOutcome;
+import com.degustudios.bitbucket.metrics.MergeCheckOutcomeCounter;
+import com.degustudios.bitbucket.repository.validators.IdempotentlyCachedDotnetFormatRefValidatorWrapper;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -16,34 +21,70 @@ import java.util.List;
 public class IsFormattedWithDotnetFormatMergeCheck implements RepositoryMergeCheck {
     private static final String REJECTED_SUMMARY_MESSAGE_WHEN_RUN = "Dotnet format has found issues.";
     private static final String REJECTED_SUMMARY_MESSAGE_WHEN_COULD_NOT_RUN = "Dotnet format could not be run.";
+    private static final String REJECTED_SUMMARY_MESSAGE_WHEN_TIMED_OUT = "Dotnet format timed out.";
     private final DotnetFormatRefValidator dotnetFormatRefValidator;
     private final PullRequestCommenter pullRequestCommenter;
     private final DotnetFormatRefValidatorParameterCalculator parameterCalculator;
+    private final PullRequestDecisionCache decisionCache;
+    private final MergeCheckOutcomeCounter outcomeCounter;
 
     @Autowired
     public IsFormattedWithDotnetFormatMergeCheck(
             @Qualifier("IdempotentlyCachedDotnetFormatRefValidatorWrapper") DotnetFormatRefValidator validator,
-            PullRequestCommenter pullRequestCommenter,
-            DotnetFormatRefValidatorParameterCalculator parameterCalculator) {
+            @Qualifier("QueuedPullRequestCommenterWrapper") PullRequestCommenter pullRequestCommenter,
+            DotnetFormatRefValidatorParameterCalculator parameterCalculator,
+            PullRequestDecisionCache decisionCache,
+            MergeCheckOutcomeCounter outcomeCounter) {
         this.dotnetFormatRefValidator = validator;
         this.pullRequestCommenter = pullRequestCommenter;
         this.parameterCalculator = parameterCalculator;
+        this.decisionCache = decisionCache;
+        this.outcomeCounter = outcomeCounter;
     }
 
     @Nonnull
     @Override
     public RepositoryHookResult preUpdate(@Nonnull PreRepositoryHookContext context,
                                           @Nonnull PullRequestMergeHookRequest request) {
-        List<String> allParameters = parameterCalculator.calculateParameters(context.getSettings(), request.getPullRequest());
+        Settings settings = context.getSettings();
+        PullRequest pullRequest = request.getPullRequest();
+        RepositoryHookResult decision = decisionCache.get(settings, pullRequest);
+        if (decision != null) {
+            // The comment was added when the decision was made
+            return decision;
+        }
+
+        List<String> allParameters = parameterCalculator.calculateParameters(settings, pullRequest);
+        if (allParameters == null) {
+            // No file dotnet-format reads has changed
+            outcomeCounter.record(MergeCheckOutcome.SKIPPED);
+            decision = RepositoryHookResult.accepted();
+            decisionCache.put(settings, pullRequest, decision);
+            return decision;
+        }
         DotnetFormatCommandResult result = dotnetFormatRefValidator.validate(request.getFromRef(), allParameters);
+        decision = decide(pullRequest, result);
+        if (IdempotentlyCachedDotnetFormatRefValidatorWrapper.isCacheable(result)) {
+            // Failures and timeouts are not remembered, so the next check tries again
+            decisionCache.put(settings, pullRequest, decision);
+        }
+        return decision;
+    }
 
+    private RepositoryHookResult decide(PullRequest pullRequest, DotnetFormatCommandResult result) {
         if (result.getExitCode() == 0) {
+            outcomeCounter.record(MergeCheckOutcome.ACCEPTED);
             return RepositoryHookResult.accepted();
+        } else if (result.hasTimedOut()) {
+            outcomeCounter.record(MergeCheckOutcome.TIMED_OUT);
+            return RepositoryHookResult.rejected(REJECTED_SUMMARY_MESSAGE_WHEN_TIMED_OUT, result.getMessage());
         } else if (!result.hasExecutedCorrectly()) {
+            outcomeCounter.record(MergeCheckOutcome.FAILED);
             return RepositoryHookResult.rejected(REJECTED_SUMMARY_MESSAGE_WHEN_COULD_NOT_RUN, result.getMessage());
         } else {
+            outcomeCounter.record(MergeCheckOutcome.REJECTED);
             pullRequestCommenter.addComment(
-                    request.getPullRequest(),
+                    pullRequest,
                     "dotnet-format results:" + System.lineSeparator() + result.getMessage());
             return RepositoryHookResult.rejected(
                     REJECTED_SUMMARY_MESSAGE_WHEN_RUN,
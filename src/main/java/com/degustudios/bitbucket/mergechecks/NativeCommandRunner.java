@@ -3,7 +3,21 @@ package com.degustudios.bitbucket.mergechecks;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
 
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface NativeCommandRunner {
     DotnetFormatCommandResult runCommand(File directory, String... command);
+
+    /**
+     * @param environment variables added to the environment inherited from Bitbucket
+     */
+    DotnetFormatCommandResult runCommand(File directory, Map<String, String> environment, String... command);
+
+    /**
+     * Cancelling the returned future kills the process.
+     */
+    CompletableFuture<DotnetFormatCommandResult> runCommandAsync(File directory, String... command);
+
+    CompletableFuture<DotnetFormatCommandResult> runCommandAsync(File directory, Map<String, String> environment, String... command);
 }
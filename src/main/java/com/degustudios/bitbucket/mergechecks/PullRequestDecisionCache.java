@@ -0,0 +1,69 @@
+package com.degustudios.bitbucket.mergechecks;
+
+import com.atlassian.bitbucket.hook.repository.RepositoryHookResult;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.setting.Settings;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.executors.BoundedResultCache;
+import com.degustudios.executors.IdempotentExecutorSettings;
+import com.degustudios.util.Sha256;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers merge check decisions of pull requests. Bitbucket runs merge checks every time a pull request is
+ * shown, and a remembered decision spares listing its changes and looking up the validation result. A decision
+ * holds as long as neither side of the pull request nor the hook settings change, and is kept within the same
+ * limits as the results it was made from.
+ */
+@Service
+public class PullRequestDecisionCache {
+    private final BoundedResultCache<String, RepositoryHookResult> decisions;
+
+    @Autowired
+    public PullRequestDecisionCache(PluginProperties pluginProperties) {
+        this(new IdempotentExecutorSettings.Builder()
+                .maximumCachedResults(pluginProperties.getCacheMaximumEntries())
+                .expireAfterWrite(pluginProperties.getCacheExpireAfterWriteInMinutes(), TimeUnit.MINUTES)
+                .expireAfterAccess(pluginProperties.getCacheExpireAfterAccessInMinutes(), TimeUnit.MINUTES)
+                .build());
+    }
+
+    public PullRequestDecisionCache(IdempotentExecutorSettings settings) {
+        this.decisions = new BoundedResultCache<>(settings, decision -> 1);
+    }
+
+    /**
+     * @return the decision made for the same commits and settings, or null when there is none
+     */
+    public RepositoryHookResult get(Settings settings, PullRequest pullRequest) {
+        return decisions.get(calculateKey(settings, pullRequest));
+    }
+
+    public void put(Settings settings, PullRequest pullRequest, RepositoryHookResult decision) {
+        decisions.put(calculateKey(settings, pullRequest), decision);
+    }
+
+    /**
+     * Pull request IDs are only unique within the target repository.
+     */
+    private static String calculateKey(Settings settings, PullRequest pullRequest) {
+        return pullRequest.getToRef().getRepository().getId()
+                + "/" + pullRequest.getId()
+                + "/" + pullRequest.getFromRef().getLatestCommit()
+                + "/" + pullRequest.getToRef().getLatestCommit()
+                + "/" + calculateSettingsDigest(settings);
+    }
+
+    private static String calculateSettingsDigest(Settings settings) {
+        Sha256 digest = Sha256.create();
+        for (Map.Entry<String, Object> setting : new TreeMap<>(settings.asMap()).entrySet()) {
+            digest.updateField(setting.getKey()).updateField(String.valueOf(setting.getValue()));
+        }
+        return digest.digestToHex();
+    }
+}
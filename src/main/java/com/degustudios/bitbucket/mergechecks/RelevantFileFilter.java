@@ -0,0 +1,66 @@
+package com.degustudios.bitbucket.mergechecks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tells which changed files dotnet-format reads. Globs without a slash match file names anywhere in the
+ * repository, globs with one match paths from the repository root. "*" matches any character but "/", "**" any
+ * character including "/" (also no directory at all when followed by "/"), "?" one character but "/".
+ * Matching ignores case, as .NET projects are often edited on Windows.
+ */
+public class RelevantFileFilter {
+    private final List<Pattern> namePatterns = new ArrayList<>();
+    private final List<Pattern> pathPatterns = new ArrayList<>();
+    private final boolean matchesEverything;
+
+    public RelevantFileFilter(Collection<String> globs) {
+        boolean matchesEverything = false;
+        for (String glob : globs) {
+            String trimmedGlob = glob.startsWith("/") ? glob.substring(1) : glob;
+            if (trimmedGlob.equals("*") || trimmedGlob.equals("**")) {
+                matchesEverything = true;
+            }
+            (trimmedGlob.contains("/") ? pathPatterns : namePatterns).add(toPattern(trimmedGlob));
+        }
+        this.matchesEverything = matchesEverything;
+    }
+
+    /**
+     * @return true when every file is relevant, so changes do not need to be listed to find out
+     */
+    public boolean matchesEverything() {
+        return matchesEverything;
+    }
+
+    public boolean isRelevant(String path) {
+        String relativePath = path.startsWith("/") ? path.substring(1) : path;
+        String name = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+        return namePatterns.stream().anyMatch(pattern -> pattern.matcher(name).matches())
+                || pathPatterns.stream().anyMatch(pattern -> pattern.matcher(relativePath).matches());
+    }
+
+    private static Pattern toPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                // Zero or more directories
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
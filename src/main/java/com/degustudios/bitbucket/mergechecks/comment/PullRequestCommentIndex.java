@@ -0,0 +1,104 @@
+package com.degustudios.bitbucket.mergechecks.comment;
+
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Remembers the comment the plugin last wrote on each pull request, so that it can be updated without searching
+ * the activities of the pull request. Entries are kept in plugin settings, which outlive restarts and are shared
+ * by all nodes of a cluster.
+ */
+@Service
+public class PullRequestCommentIndex {
+    private static final String KEY_PREFIX = "com.degustudios.dotnet-format.comment.";
+
+    private final PluginSettingsFactory pluginSettingsFactory;
+
+    @Autowired
+    public PullRequestCommentIndex(@ComponentImport PluginSettingsFactory pluginSettingsFactory) {
+        this.pluginSettingsFactory = pluginSettingsFactory;
+    }
+
+    /**
+     * @return the comment last written on the pull request, or null when none is known
+     */
+    public IndexedComment get(PullRequest pullRequest) {
+        Object value = pluginSettingsFactory.createGlobalSettings().get(getKey(pullRequest));
+        return value instanceof String ? IndexedComment.parse((String) value) : null;
+    }
+
+    public void put(PullRequest pullRequest, IndexedComment comment) {
+        pluginSettingsFactory.createGlobalSettings().put(getKey(pullRequest), comment.toString());
+    }
+
+    public void remove(PullRequest pullRequest) {
+        pluginSettingsFactory.createGlobalSettings().remove(getKey(pullRequest));
+    }
+
+    /**
+     * Pull request IDs are only unique within the target repository.
+     */
+    private static String getKey(PullRequest pullRequest) {
+        return KEY_PREFIX + pullRequest.getToRef().getRepository().getId() + "." + pullRequest.getId();
+    }
+
+    public static class IndexedComment {
+        private final long commentId;
+        private final int version;
+        private final String commitId;
+        private final String contentHash;
+
+        public IndexedComment(long commentId, int version, String commitId, String contentHash) {
+            this.commentId = commentId;
+            this.version = version;
+            this.commitId = commitId;
+            this.contentHash = contentHash;
+        }
+
+        public long getCommentId() {
+            return commentId;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the latest commit of the pull request's source branch the comment was written for
+         */
+        public String getCommitId() {
+            return commitId;
+        }
+
+        /**
+         * @return digest of the text the comment was written with, or null for entries written before it was kept
+         */
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        @Override
+        public String toString() {
+            return commentId + ":" + version + ":" + commitId + (contentHash == null ? "" : ":" + contentHash);
+        }
+
+        private static IndexedComment parse(String value) {
+            String[] fields = value.split(":", 4);
+            if (fields.length < 3 || fields[2].isEmpty()) {
+                return null;
+            }
+            try {
+                return new IndexedComment(
+                        Long.parseLong(fields[0]),
+                        Integer.parseInt(fields[1]),
+                        fields[2],
+                        fields.length == 4 ? fields[3] : null);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
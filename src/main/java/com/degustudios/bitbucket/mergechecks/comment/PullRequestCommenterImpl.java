@@ -1,5 +1,6 @@
 package com.degustudios.bitbucket.mergechecks.comment;
 
+import com.atlassian.bitbucket.ServiceException;
 import com.atlassian.bitbucket.auth.AuthenticationContext;
 import com.atlassian.bitbucket.comment.*;
 import com.atlassian.bitbucket.pull.*;
@@ -9,10 +10,12 @@ import com.atlassian.bitbucket.util.PageRequest;
 import com.atlassian.bitbucket.util.PageRequestImpl;
 import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
 import com.degustudios.bitbucket.mergechecks.PullRequestCommenter;
+import com.degustudios.util.Sha256;
 import com.google.common.collect.Lists;
 import org.apache.commons.lang.StringUtils;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Optional;
@@ -21,7 +24,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-@Service
+@Service("PullRequestCommenterImpl")
 public class PullRequestCommenterImpl implements PullRequestCommenter {
     private static final int PAGE_SIZE = 25;
     private static final int CHARACTER_LIMIT_PER_COMMENT = 32768;
@@ -29,36 +32,84 @@ public class PullRequestCommenterImpl implements PullRequestCommenter {
     private final Pattern commentTextPattern = Pattern.compile("^For commit: \\[([a-f0-9]*)\\]\n?.*", Pattern.MULTILINE | Pattern.DOTALL);
     private final CommentService commentService;
     private final AuthenticationContext authenticationContext;
+    private final PullRequestCommentIndex commentIndex;
 
     public PullRequestCommenterImpl(@ComponentImport PullRequestService pullRequestService,
                                     @ComponentImport CommentService commentService,
-                                    @ComponentImport AuthenticationContext authenticationContext) {
+                                    @ComponentImport AuthenticationContext authenticationContext,
+                                    PullRequestCommentIndex commentIndex) {
         this.pullRequestService = pullRequestService;
         this.commentService = commentService;
         this.authenticationContext = authenticationContext;
+        this.commentIndex = commentIndex;
     }
 
+    /**
+     * Updates the comment written for the latest commit, found in the index, or adds one. Activities are only
+     * searched when the index knows no comment, e.g. for comments written before it existed, or when the indexed
+     * comment was deleted. Nothing is written when the indexed comment already has the same text.
+     */
     @Override
     public void addComment(PullRequest pullRequest, String textComment) {
-        addOrReplaceComment(pullRequest, textComment, getLatestCommentActivity(getAllServiceComments(pullRequest)));
+        String commitId = getLatestCommit(pullRequest);
+        String contentHash = calculateContentHash(formatComment(pullRequest, textComment));
+        PullRequestCommentIndex.IndexedComment indexedComment = commentIndex.get(pullRequest);
+        if (indexedComment != null
+                && indexedComment.getCommitId().equals(commitId)
+                && contentHash.equals(indexedComment.getContentHash())) {
+            return;
+        }
+        Comment comment = null;
+        if (indexedComment != null && indexedComment.getCommitId().equals(commitId)) {
+            comment = tryUpdateIndexedComment(pullRequest, textComment, indexedComment);
+        }
+        if (comment == null) {
+            // A comment indexed for an older commit means none was written for the latest one yet
+            Optional<PullRequestCommentActivity> optionalActivity = indexedComment == null || indexedComment.getCommitId().equals(commitId)
+                    ? getLatestCommentActivity(getAllServiceComments(pullRequest))
+                    : Optional.empty();
+            comment = addOrReplaceComment(pullRequest, textComment, optionalActivity);
+        }
+        if (comment != null) {
+            commentIndex.put(pullRequest, new PullRequestCommentIndex.IndexedComment(
+                    comment.getId(), comment.getVersion(), commitId, contentHash));
+        }
     }
 
-    private void addOrReplaceComment(PullRequest pullRequest, String textComment, Optional<PullRequestCommentActivity> optionalActivity) {
+    /**
+     * @return the updated comment, or null when it no longer exists
+     */
+    private Comment tryUpdateIndexedComment(PullRequest pullRequest, String textComment, PullRequestCommentIndex.IndexedComment indexedComment) {
+        try {
+            return updateComment(pullRequest, textComment, indexedComment.getCommentId(), indexedComment.getVersion());
+        } catch (ServiceException e) {
+            // Deleted, or edited since it was indexed
+            Optional<Comment> comment = commentService.getComment(indexedComment.getCommentId());
+            if (!comment.isPresent()) {
+                commentIndex.remove(pullRequest);
+                return null;
+            }
+            return updateComment(pullRequest, textComment, comment.get().getId(), comment.get().getVersion());
+        }
+    }
+
+    private Comment addOrReplaceComment(PullRequest pullRequest, String textComment, Optional<PullRequestCommentActivity> optionalActivity) {
         if (optionalActivity.isPresent()) {
-            updateComment(pullRequest, textComment, optionalActivity.get().getComment());
+            Comment comment = optionalActivity.get().getComment();
+            return updateComment(pullRequest, textComment, comment.getId(), comment.getVersion());
         } else {
-            addNewComment(pullRequest, textComment);
+            return addNewComment(pullRequest, textComment);
         }
     }
 
-    private void addNewComment(PullRequest pullRequest, String textComment) {
-        commentService.addComment(new AddCommentRequest.Builder(pullRequest, formatComment(pullRequest, textComment)).build());
+    private Comment addNewComment(PullRequest pullRequest, String textComment) {
+        return commentService.addComment(new AddCommentRequest.Builder(pullRequest, formatComment(pullRequest, textComment)).build());
     }
 
-    private void updateComment(PullRequest pullRequest, String textComment, Comment comment) {
-        commentService.updateComment(new CommentUpdateRequest.Builder(comment.getId())
+    private Comment updateComment(PullRequest pullRequest, String textComment, long commentId, int version) {
+        return commentService.updateComment(new CommentUpdateRequest.Builder(commentId)
                 .text(formatComment(pullRequest, textComment))
-                .version(comment.getVersion())
+                .version(version)
                 .build());
     }
 
@@ -101,6 +152,10 @@ public class PullRequestCommenterImpl implements PullRequestCommenter {
         return trimTo(formattedComment, CHARACTER_LIMIT_PER_COMMENT);
     }
 
+    private static String calculateContentHash(String text) {
+        return Sha256.create().update(text.getBytes(StandardCharsets.UTF_8)).digestToHex();
+    }
+
     private String trimTo(String text, int limt) {
         if (text.length() <= limt) {
             return text;
@@ -0,0 +1,124 @@
+package com.degustudios.bitbucket.mergechecks.comment;
+
+import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.degustudios.bitbucket.mergechecks.PullRequestCommenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Publishes comments in the background, so that merge checks do not wait for comments to be searched and written.
+ * Only the newest comment waiting for a pull request is published; older ones are dropped. Comments are written
+ * as the user whose merge check produced them, like they were when written right away.
+ */
+@Service("QueuedPullRequestCommenterWrapper")
+public class QueuedPullRequestCommenterWrapper implements PullRequestCommenter, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(QueuedPullRequestCommenterWrapper.class);
+
+    private final PullRequestCommenter commenter;
+    private final AuthenticationContext authenticationContext;
+    private final SecurityService securityService;
+    private final ExecutorService executor;
+    private final Map<String, PendingComment> pendingComments = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QueuedPullRequestCommenterWrapper(
+            @Qualifier("PullRequestCommenterImpl") PullRequestCommenter commenter,
+            @ComponentImport AuthenticationContext authenticationContext,
+            @ComponentImport SecurityService securityService) {
+        this(commenter, authenticationContext, securityService, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("dotnet-format-commenter");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param executor runs one comment at a time, so that comments of a pull request are published in order
+     */
+    public QueuedPullRequestCommenterWrapper(
+            PullRequestCommenter commenter,
+            AuthenticationContext authenticationContext,
+            SecurityService securityService,
+            ExecutorService executor) {
+        this.commenter = commenter;
+        this.authenticationContext = authenticationContext;
+        this.securityService = securityService;
+        this.executor = executor;
+    }
+
+    @Override
+    public void addComment(PullRequest pullRequest, String comment) {
+        String key = getKey(pullRequest);
+        PendingComment pendingComment = new PendingComment(pullRequest, comment, authenticationContext.getCurrentUser());
+        if (pendingComments.put(key, pendingComment) != null) {
+            // Replaced a comment that is already queued
+            return;
+        }
+        try {
+            executor.execute(() -> publish(key));
+        } catch (RejectedExecutionException e) {
+            pendingComments.remove(key, pendingComment);
+            logger.warn("Failed to queue comment for pull request {}", pullRequest.getId(), e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+        pendingComments.clear();
+    }
+
+    private void publish(String key) {
+        PendingComment pendingComment = pendingComments.remove(key);
+        if (pendingComment == null) {
+            return;
+        }
+        PullRequest pullRequest = pendingComment.pullRequest;
+        try {
+            if (pendingComment.user == null) {
+                commenter.addComment(pullRequest, pendingComment.comment);
+                return;
+            }
+            securityService.impersonating(pendingComment.user, "Publish dotnet-format results").call(() -> {
+                commenter.addComment(pullRequest, pendingComment.comment);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Failed to comment on pull request {}", pullRequest.getId(), e);
+        }
+    }
+
+    /**
+     * Pull request IDs are only unique within the target repository.
+     */
+    private static String getKey(PullRequest pullRequest) {
+        return pullRequest.getToRef().getRepository().getId() + "/" + pullRequest.getId();
+    }
+
+    private static class PendingComment {
+        private final PullRequest pullRequest;
+        private final String comment;
+        private final ApplicationUser user;
+
+        private PendingComment(PullRequest pullRequest, String comment, ApplicationUser user) {
+            this.pullRequest = pullRequest;
+            this.comment = comment;
+            this.user = user;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.degustudios.bitbucket.metrics;
+
+/**
+ * How a merge check decided.
+ */
+public enum MergeCheckOutcome {
+    ACCEPTED,
+    REJECTED,
+    FAILED,
+    TIMED_OUT,
+    /**
+     * Accepted without running dotnet-format, as the pull request changes no file it reads.
+     */
+    SKIPPED
+}
@@ -0,0 +1,37 @@
+package com.degustudios.bitbucket.metrics;
+
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the decisions merge checks made on this node since the plugin started. Remembered decisions that are
+ * returned again are not counted again.
+ */
+@Service
+public class MergeCheckOutcomeCounter {
+    private final Map<MergeCheckOutcome, AtomicLong> counts = new EnumMap<>(MergeCheckOutcome.class);
+
+    public MergeCheckOutcomeCounter() {
+        for (MergeCheckOutcome outcome : MergeCheckOutcome.values()) {
+            counts.put(outcome, new AtomicLong());
+        }
+    }
+
+    public void record(MergeCheckOutcome outcome) {
+        counts.get(outcome).incrementAndGet();
+    }
+
+    /**
+     * @return decisions by outcome, e.g. "skipped"
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> countsByName = new TreeMap<>();
+        counts.forEach((outcome, count) -> countsByName.put(outcome.name().toLowerCase(Locale.ROOT), count.get()));
+        return countsByName;
+    }
+}
@@ -0,0 +1,93 @@
+package com.degustudios.bitbucket.metrics;
+
+import com.degustudios.bitbucket.repository.validators.IdempotentlyCachedDotnetFormatRefValidatorWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Publishes the state of the node's dotnet-format runs over JMX.
+ */
+@Component
+public class ValidationMetrics implements ValidationMetricsMBean, InitializingBean, DisposableBean {
+    public static final String OBJECT_NAME = "com.degustudios.bitbucket:type=DotnetFormat,name=Validations";
+    private static final Logger logger = LoggerFactory.getLogger(ValidationMetrics.class);
+    private final IdempotentlyCachedDotnetFormatRefValidatorWrapper validator;
+    private final MergeCheckOutcomeCounter outcomeCounter;
+
+    @Autowired
+    public ValidationMetrics(IdempotentlyCachedDotnetFormatRefValidatorWrapper validator, MergeCheckOutcomeCounter outcomeCounter) {
+        this.validator = validator;
+        this.outcomeCounter = outcomeCounter;
+    }
+
+    @Override
+    public int getQueuedRuns() {
+        return validator.getQueuedCount();
+    }
+
+    @Override
+    public int getRunningRuns() {
+        return validator.getRunningCount();
+    }
+
+    @Override
+    public int getCachedResults() {
+        return validator.getCachedResultsCount();
+    }
+
+    @Override
+    public Map<String, Integer> getQueuedRunsByGroup() {
+        return validator.getQueuedCountByGroup();
+    }
+
+    @Override
+    public Map<String, Integer> getRunningRunsByGroup() {
+        return validator.getRunningCountByGroup();
+    }
+
+    @Override
+    public Map<String, Long> getMergeCheckOutcomes() {
+        return outcomeCounter.getCounts();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by a previous version of the plugin that was not disabled cleanly
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register {}", OBJECT_NAME, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to unregister {}", OBJECT_NAME, e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.degustudios.bitbucket.metrics;
+
+import java.util.Map;
+
+public interface ValidationMetricsMBean {
+    int getQueuedRuns();
+
+    int getRunningRuns();
+
+    int getCachedResults();
+
+    /**
+     * @return queued runs of each repository or project, depending on how runs take turns
+     */
+    Map<String, Integer> getQueuedRunsByGroup();
+
+    Map<String, Integer> getRunningRunsByGroup();
+
+    /**
+     * @return merge check decisions by outcome, including pull requests skipped as they change no relevant file
+     */
+    Map<String, Long> getMergeCheckOutcomes();
+}
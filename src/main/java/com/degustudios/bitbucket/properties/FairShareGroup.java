@@ -0,0 +1,13 @@
+package com.degustudios.bitbucket.properties;
+
+/**
+ * What takes turns when dotnet-format runs have to wait for a free slot.
+ */
+public enum FairShareGroup {
+    REPOSITORY,
+    PROJECT,
+    /**
+     * Runs start in order of arrival.
+     */
+    NONE
+}
@@ -0,0 +1,17 @@
+package com.degustudios.bitbucket.properties;
+
+/**
+ * Which checks reuse the verdicts of files that did not change since an earlier check.
+ */
+public enum FileVerdictScope {
+    /**
+     * Only "dotnet format whitespace", whose verdict on a file depends on nothing but the file and the configuration.
+     */
+    WHITESPACE,
+    /**
+     * Every check. Analyzer and style diagnostics that depend on other files may then be missed until the
+     * checked file itself changes.
+     */
+    ALL,
+    NONE
+}
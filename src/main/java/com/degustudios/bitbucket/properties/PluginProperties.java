@@ -0,0 +1,259 @@
+package com.degustudios.bitbucket.properties;
+
+import com.atlassian.bitbucket.server.ApplicationPropertiesService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Node-wide plugin configuration, read from bitbucket.properties with the "plugin.dotnet-format." prefix.
+ */
+@Service
+public class PluginProperties {
+    private static final Logger logger = LoggerFactory.getLogger(PluginProperties.class);
+    private static final String PREFIX = "plugin.dotnet-format.";
+    private static final long MINIMUM_CLUSTER_CLAIM_LEASE_SECONDS = 20;
+
+    public static final String CACHE_MAX_ENTRIES = "cache.max-entries";
+    public static final String CACHE_MAX_OUTPUT_SIZE = "cache.max-output-size";
+    public static final String CACHE_EXPIRE_AFTER_WRITE_MINUTES = "cache.expire-after-write.minutes";
+    public static final String CACHE_EXPIRE_AFTER_ACCESS_MINUTES = "cache.expire-after-access.minutes";
+    public static final String MAX_CONCURRENT_RUNS = "runs.max-concurrent";
+    public static final String MAX_QUEUED_RUNS = "runs.max-queued";
+    public static final String FAIR_SHARE = "runs.fair-share";
+    public static final String MAX_CONCURRENT_RUNS_PER_GROUP = "runs.max-concurrent-per-group";
+    public static final String STORE_MAX_SIZE = "store.max-size";
+    public static final String CLUSTER_CLAIM_LEASE_SECONDS = "cluster.claim-lease.seconds";
+    public static final String ARCHIVE_STREAMING = "archive.streaming";
+    public static final String WORKSPACES_MAX_SIZE = "workspaces.max-size";
+    public static final String SPARSE_DOWNLOAD = "download.sparse";
+    public static final String RUN_TIMEOUT_SECONDS = "runs.timeout.seconds";
+    public static final String HOOK_TIMEOUT_SECONDS = "hook.timeout.seconds";
+    public static final String OUTPUT_MAX_SIZE = "output.max-size";
+    public static final String NUGET_CACHE = "nuget.cache";
+    public static final String NUGET_RESTORE_CACHE_MAX_SIZE = "nuget.restore-cache.max-size";
+    public static final String BUILD_SERVERS_MAX = "build-servers.max";
+    public static final String BUILD_SERVERS_IDLE_SHUTDOWN_MINUTES = "build-servers.idle-shutdown.minutes";
+    public static final String INCLUDE_RESPONSE_FILE_THRESHOLD = "include.response-file.threshold";
+    public static final String INCLUDE_CHUNK_SIZE = "include.chunk-size";
+    public static final String INCLUDE_CHUNKS_MAX_PARALLEL = "include.chunks.max-parallel";
+    public static final String RELEVANT_FILES = "relevant-files";
+    public static final String PREWARM = "prewarm";
+    public static final String FILE_VERDICTS = "file-verdicts";
+    public static final String FILE_VERDICTS_MAX_ENTRIES = "file-verdicts.max-entries";
+
+    private final ApplicationPropertiesService applicationPropertiesService;
+
+    @Autowired
+    public PluginProperties(@ComponentImport ApplicationPropertiesService applicationPropertiesService) {
+        this.applicationPropertiesService = applicationPropertiesService;
+    }
+
+    public int getCacheMaximumEntries() {
+        return getInt(CACHE_MAX_ENTRIES, 1000);
+    }
+
+    public long getCacheMaximumOutputSize() {
+        return getLong(CACHE_MAX_OUTPUT_SIZE, 32L * 1024 * 1024);
+    }
+
+    public long getCacheExpireAfterWriteInMinutes() {
+        return getLong(CACHE_EXPIRE_AFTER_WRITE_MINUTES, 24L * 60);
+    }
+
+    public long getCacheExpireAfterAccessInMinutes() {
+        return getLong(CACHE_EXPIRE_AFTER_ACCESS_MINUTES, 6L * 60);
+    }
+
+    public int getMaximumConcurrentRuns() {
+        return getInt(MAX_CONCURRENT_RUNS, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public int getMaximumQueuedRuns() {
+        return getInt(MAX_QUEUED_RUNS, 100);
+    }
+
+    public FairShareGroup getFairShareGroup() {
+        return getEnum(FAIR_SHARE, FairShareGroup.class, FairShareGroup.REPOSITORY);
+    }
+
+    public int getMaximumConcurrentRunsPerGroup() {
+        return getInt(MAX_CONCURRENT_RUNS_PER_GROUP, 0);
+    }
+
+    public long getResultStoreMaximumSize() {
+        return getLong(STORE_MAX_SIZE, 256L * 1024 * 1024);
+    }
+
+    /**
+     * Claims are renewed every quarter of the lease, so shorter leases would hammer the cluster cache.
+     */
+    public long getClusterClaimLeaseInSeconds() {
+        long leaseInSeconds = getLong(CLUSTER_CLAIM_LEASE_SECONDS, 120);
+        if (leaseInSeconds < MINIMUM_CLUSTER_CLAIM_LEASE_SECONDS) {
+            logger.warn("Value of {}{} is below the minimum: {}, using {}",
+                    PREFIX, CLUSTER_CLAIM_LEASE_SECONDS, leaseInSeconds, MINIMUM_CLUSTER_CLAIM_LEASE_SECONDS);
+            return MINIMUM_CLUSTER_CLAIM_LEASE_SECONDS;
+        }
+        return leaseInSeconds;
+    }
+
+    public boolean isArchiveStreamingEnabled() {
+        return getBoolean(ARCHIVE_STREAMING, true);
+    }
+
+    public long getWorkspacesMaximumSize() {
+        return getLong(WORKSPACES_MAX_SIZE, 5L * 1024 * 1024 * 1024);
+    }
+
+    public boolean isSparseDownloadEnabled() {
+        return getBoolean(SPARSE_DOWNLOAD, false);
+    }
+
+    public long getRunTimeoutInSeconds() {
+        return getLong(RUN_TIMEOUT_SECONDS, 10L * 60);
+    }
+
+    public long getHookTimeoutInSeconds() {
+        return getLong(HOOK_TIMEOUT_SECONDS, 15L * 60);
+    }
+
+    public int getMaximumOutputSize() {
+        return getInt(OUTPUT_MAX_SIZE, 1024 * 1024);
+    }
+
+    public boolean isNuGetCacheEnabled() {
+        return getBoolean(NUGET_CACHE, true);
+    }
+
+    public long getNuGetRestoreCacheMaximumSize() {
+        return getLong(NUGET_RESTORE_CACHE_MAX_SIZE, 1024L * 1024 * 1024);
+    }
+
+    public int getMaximumBuildServers() {
+        return getInt(BUILD_SERVERS_MAX, 2);
+    }
+
+    public long getBuildServerIdleShutdownInMinutes() {
+        return getLong(BUILD_SERVERS_IDLE_SHUTDOWN_MINUTES, 15);
+    }
+
+    public int getIncludeResponseFileThreshold() {
+        return getInt(INCLUDE_RESPONSE_FILE_THRESHOLD, 100);
+    }
+
+    public int getIncludeChunkSize() {
+        return getInt(INCLUDE_CHUNK_SIZE, 1000);
+    }
+
+    public int getMaximumParallelIncludeChunks() {
+        return getInt(INCLUDE_CHUNKS_MAX_PARALLEL, 2);
+    }
+
+    public FileVerdictScope getFileVerdictScope() {
+        return getEnum(FILE_VERDICTS, FileVerdictScope.class, FileVerdictScope.WHITESPACE);
+    }
+
+    public int getFileVerdictCacheMaximumEntries() {
+        return getInt(FILE_VERDICTS_MAX_ENTRIES, 200000);
+    }
+
+    /**
+     * @return globs of the files dotnet-format reads, pull requests changing none of them are not checked
+     */
+    public List<String> getRelevantFileGlobs() {
+        return getList(RELEVANT_FILES, Arrays.asList(
+                "*.cs", "*.vb", "*.csproj", "*.vbproj", "*.sln", ".editorconfig", ".globalconfig",
+                "Directory.Build.*", "Directory.Packages.props", "global.json"));
+    }
+
+    public boolean isPrewarmEnabled() {
+        return getBoolean(PREWARM, true);
+    }
+
+    public File getResultStoreDirectory() {
+        return getCacheDirectory();
+    }
+
+    public File getWorkspacesDirectory() {
+        File cacheDirectory = getCacheDirectory();
+        return cacheDirectory == null ? null : new File(cacheDirectory, "workspaces");
+    }
+
+    public File getNuGetDirectory() {
+        File cacheDirectory = getCacheDirectory();
+        return cacheDirectory == null ? null : new File(cacheDirectory, "nuget");
+    }
+
+    private File getCacheDirectory() {
+        File homeDirectory = applicationPropertiesService.getHomeDir();
+        return homeDirectory == null ? null : new File(new File(homeDirectory, "caches"), "dotnet-format-for-bitbucket");
+    }
+
+    private boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private List<String> getList(String name, List<String> defaultValue) {
+        String value = getString(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        List<String> values = Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .collect(Collectors.toList());
+        return values.isEmpty() ? defaultValue : values;
+    }
+
+    private <E extends Enum<E>> E getEnum(String name, Class<E> type, E defaultValue) {
+        String value = getString(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Value of {}{} is not one of {}: {}, using {}",
+                    PREFIX, name, Arrays.toString(type.getEnumConstants()), value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private int getInt(String name, int defaultValue) {
+        long value = getLong(name, defaultValue);
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            logger.warn("Value of {}{} is out of range, using {}", PREFIX, name, defaultValue);
+            return defaultValue;
+        }
+        return (int) value;
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = getString(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Value of {}{} is not a number: {}, using {}", PREFIX, name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private String getString(String name) {
+        String value = applicationPropertiesService.getPluginProperty(PREFIX + name);
+        return StringUtils.isBlank(value) ? null : value.trim();
+    }
+}
@@ -1,66 +1,50 @@
 package com.degustudios.bitbucket.repository.validators;
 
 import com.atlassian.bitbucket.repository.RepositoryRef;
-import com.degustudios.bitbucket.content.CodeService;
+import com.degustudios.bitbucket.content.Workspace;
+import com.degustudios.bitbucket.content.WorkspaceManager;
 import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidator;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.dotnetformat.DotnetFormatParameters;
 import com.degustudios.dotnetformat.DotnetFormatRunner;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.List;
 
 @Service("DotnetFormatRefValidatorImpl")
 public class DotnetFormatRefValidatorImpl implements DotnetFormatRefValidator {
     private static final Logger logger = LoggerFactory.getLogger(DotnetFormatRefValidatorImpl.class);
-    private final CodeService codeService;
+    private final WorkspaceManager workspaceManager;
     private final DotnetFormatRunner dotnetFormatRunner;
 
     @Autowired
-    public DotnetFormatRefValidatorImpl(CodeService codeService, DotnetFormatRunner dotnetFormatRunner) {
-        this.codeService = codeService;
+    public DotnetFormatRefValidatorImpl(WorkspaceManager workspaceManager, DotnetFormatRunner dotnetFormatRunner) {
+        this.workspaceManager = workspaceManager;
         this.dotnetFormatRunner = dotnetFormatRunner;
     }
 
     @Override
     public DotnetFormatCommandResult validate(RepositoryRef ref, List<String> params) {
-        Path codebaseDirectoryPath = null;
+        Workspace workspace;
         try {
-            codebaseDirectoryPath = Files.createTempDirectory("bb");
-            return runDotnetFormat(ref, codebaseDirectoryPath, params);
+            workspace = workspaceManager.acquire(ref.getRepository(), ref.getLatestCommit(), DotnetFormatParameters.getIncludedPaths(params));
         } catch (IOException e) {
-            logger.error("Failed to create temporary file", e);
-            return DotnetFormatCommandResult.executedCorrectly(-1, e.getMessage());
-        } finally {
-            cleanUp(codebaseDirectoryPath);
+            logger.error("Failed to prepare code of Ref ID: {}", ref.getId(), e);
+            return DotnetFormatCommandResult.failed("Downloading code failed. Check log file for more information.");
         }
-    }
 
-    private void cleanUp(Path codebaseDirectoryPath) {
-        if (codebaseDirectoryPath != null && Files.exists(codebaseDirectoryPath)) {
-            try {
-                FileUtils.deleteDirectory(new File(codebaseDirectoryPath.toString()));
-            } catch (IOException e) {
-                logger.error("Exception for codebaseDirectoryPath: {}", codebaseDirectoryPath, e);
+        try {
+            return dotnetFormatRunner.runDotnetFormat(workspace.getPath(), params);
+        } finally {
+            if (!DotnetFormatParameters.isReadOnly(params)) {
+                // dotnet-format may have rewritten files, so they no longer match the commit
+                workspace.markDirty();
             }
+            workspace.close();
         }
     }
-
-    private DotnetFormatCommandResult runDotnetFormat(RepositoryRef ref, Path codebaseDirectoryPath, List<String> params) {
-        if (codeService.tryDownloadRepositoryCode(
-                codebaseDirectoryPath,
-                ref.getRepository(),
-                ref.getLatestCommit())) {
-            return dotnetFormatRunner.runDotnetFormat(codebaseDirectoryPath, params);
-        } else {
-            return DotnetFormatCommandResult.failed("Downloading code failed. Check log file for more information.");
-        }
-    }
-}
\ No newline at end of file
+}
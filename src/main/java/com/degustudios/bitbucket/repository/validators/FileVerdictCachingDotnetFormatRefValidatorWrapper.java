@@ -0,0 +1,210 @@
+package com.degustudios.bitbucket.repository.validators;
+
+import com.atlassian.bitbucket.repository.RepositoryRef;
+import com.degustudios.bitbucket.content.BlobIdLister;
+import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidator;
+import com.degustudios.bitbucket.properties.FileVerdictScope;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.dotnetformat.DotnetFormatParameters;
+import com.degustudios.dotnetformat.DotnetFormatReport;
+import com.degustudios.dotnetformat.DotnetFormatRunner;
+import com.degustudios.executors.BoundedResultCache;
+import com.degustudios.executors.IdempotentExecutorSettings;
+import com.degustudios.util.Sha256;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers what dotnet-format found in each file: nothing, or the changes it wants. A verdict is keyed by the
+ * content of the file and by everything else that affects it: the build and formatting configuration of the
+ * repository, the other parameters and the installed SDKs. Only files without a verdict are checked again and
+ * their result is merged with the remembered verdicts, so checking a push costs as much as the files it changed.
+ */
+@Service("FileVerdictCachingDotnetFormatRefValidatorWrapper")
+public class FileVerdictCachingDotnetFormatRefValidatorWrapper implements DotnetFormatRefValidator {
+    private static final Logger logger = LoggerFactory.getLogger(FileVerdictCachingDotnetFormatRefValidatorWrapper.class);
+    private static final List<String> SourceFileExtensions = Arrays.asList(".cs", ".vb");
+    private static final List<String> ConfigurationFileExtensions = Arrays.asList(
+            ".editorconfig", ".globalconfig", ".ruleset", ".sln", ".csproj", ".vbproj", ".fsproj", ".props", ".targets");
+    private static final List<String> ConfigurationFileNames = Arrays.asList("global.json", "nuget.config");
+
+    private final DotnetFormatRefValidator validator;
+    private final BlobIdLister blobIdLister;
+    private final DotnetFormatRunner dotnetFormatRunner;
+    private final FileVerdictScope scope;
+    private final BoundedResultCache<String, List<DotnetFormatReport.Change>> verdicts;
+
+    @Autowired
+    public FileVerdictCachingDotnetFormatRefValidatorWrapper(
+            @Qualifier("DotnetFormatRefValidatorImpl") DotnetFormatRefValidator validator,
+            BlobIdLister blobIdLister,
+            DotnetFormatRunner dotnetFormatRunner,
+            PluginProperties pluginProperties) {
+        this.validator = validator;
+        this.blobIdLister = blobIdLister;
+        this.dotnetFormatRunner = dotnetFormatRunner;
+        this.scope = pluginProperties.getFileVerdictScope();
+        this.verdicts = new BoundedResultCache<>(
+                new IdempotentExecutorSettings.Builder()
+                        .maximumCachedResults(pluginProperties.getFileVerdictCacheMaximumEntries())
+                        .build(),
+                changes -> 1);
+    }
+
+    @Override
+    public DotnetFormatCommandResult validate(RepositoryRef ref, List<String> params) {
+        if (!isApplicable(params)) {
+            return validator.validate(ref, params);
+        }
+        Map<String, String> blobIds;
+        try {
+            blobIds = blobIdLister.listBlobIds(ref.getRepository(), ref.getLatestCommit());
+        } catch (RuntimeException e) {
+            logger.warn("Failed to list files of Ref ID: {}, checking all of them", ref.getId(), e);
+            return validator.validate(ref, params);
+        }
+        String toolchainVersion = dotnetFormatRunner.getToolchainVersion();
+        if (blobIds == null || toolchainVersion == null) {
+            return validator.validate(ref, params);
+        }
+
+        List<String> includedPaths = DotnetFormatParameters.getIncludedPaths(params);
+        List<String> otherParams = DotnetFormatParameters.withoutIncludedPaths(params);
+        String configurationKey = calculateConfigurationKey(blobIds, otherParams, toolchainVersion);
+        Map<String, String> verdictKeys = new LinkedHashMap<>();
+        blobIds.forEach((path, blobId) -> {
+            if (isSourceFile(path) && isIncluded(path, includedPaths)) {
+                verdictKeys.put(path, configurationKey + "/" + blobId + "/" + path);
+            }
+        });
+        if (verdictKeys.isEmpty()) {
+            return validator.validate(ref, params);
+        }
+
+        Map<String, List<DotnetFormatReport.Change>> knownVerdicts = new LinkedHashMap<>();
+        List<String> unknownPaths = new ArrayList<>();
+        verdictKeys.forEach((path, key) -> {
+            List<DotnetFormatReport.Change> verdict = verdicts.get(key);
+            if (verdict == null) {
+                unknownPaths.add(path);
+            } else {
+                knownVerdicts.put(path, verdict);
+            }
+        });
+
+        DotnetFormatReport report = null;
+        if (!unknownPaths.isEmpty()) {
+            // When nothing is known yet, the original parameters check the same files with a shorter command line
+            DotnetFormatCommandResult result = validator.validate(
+                    ref,
+                    knownVerdicts.isEmpty() ? params : DotnetFormatParameters.withIncludedPaths(otherParams, unknownPaths));
+            if (result == null || !result.hasExecutedCorrectly() || result.getReport() == null) {
+                return result;
+            }
+            report = result.getReport();
+            remember(report, unknownPaths, verdictKeys);
+            if (knownVerdicts.isEmpty()) {
+                return result;
+            }
+        }
+        logger.debug("Reused verdicts of {} files and checked {} files of Ref ID: {}", knownVerdicts.size(), unknownPaths.size(), ref.getId());
+        return merge(knownVerdicts, report);
+    }
+
+    private boolean isApplicable(List<String> params) {
+        if (scope == null || scope == FileVerdictScope.NONE || !DotnetFormatParameters.isReadOnly(params)) {
+            return false;
+        }
+        return scope == FileVerdictScope.ALL || DotnetFormatParameters.isWhitespaceRun(params);
+    }
+
+    /**
+     * Verdicts are only kept when the report lists every change, otherwise files without listed changes may still have some.
+     */
+    private void remember(DotnetFormatReport report, List<String> checkedPaths, Map<String, String> verdictKeys) {
+        if (report.getListedChangeCount() != report.getChangeCount()) {
+            return;
+        }
+        Map<String, List<DotnetFormatReport.Change>> changesByFile = new TreeMap<>();
+        report.getChangesByFile().forEach((path, changes) -> changesByFile.put(path.replace('\\', '/'), changes));
+        for (String path : checkedPaths) {
+            verdicts.put(verdictKeys.get(path), changesByFile.getOrDefault(path, Collections.emptyList()));
+        }
+    }
+
+    private static DotnetFormatCommandResult merge(Map<String, List<DotnetFormatReport.Change>> knownVerdicts, DotnetFormatReport report) {
+        DotnetFormatReport.Builder builder = new DotnetFormatReport.Builder();
+        int fileCount = 0;
+        int changeCount = 0;
+        Map<String, Integer> diagnosticCounts = new TreeMap<>();
+        for (Map.Entry<String, List<DotnetFormatReport.Change>> file : knownVerdicts.entrySet()) {
+            if (file.getValue().isEmpty()) {
+                continue;
+            }
+            builder.file(file.getKey(), file.getValue());
+            fileCount++;
+            changeCount += file.getValue().size();
+            file.getValue().forEach(change -> diagnosticCounts.merge(change.getDiagnosticId(), 1, Integer::sum));
+        }
+        if (report != null) {
+            report.getChangesByFile().forEach(builder::file);
+            fileCount += report.getFileCount();
+            changeCount += report.getChangeCount();
+            report.getDiagnosticCounts().forEach((id, count) -> diagnosticCounts.merge(id, count, Integer::sum));
+        }
+        builder.totals(fileCount, changeCount, diagnosticCounts);
+        // dotnet-format exits with 2 when a check finds changes
+        return DotnetFormatCommandResult.executedCorrectlyWithReport(changeCount > 0 ? 2 : 0, builder.build());
+    }
+
+    private static String calculateConfigurationKey(Map<String, String> blobIds, List<String> otherParams, String toolchainVersion) {
+        Sha256 digest = Sha256.create().updateField(toolchainVersion);
+        for (String param : ValidationKey.normalize(otherParams)) {
+            digest.updateField(param);
+        }
+        new TreeMap<>(blobIds).forEach((path, blobId) -> {
+            if (isConfigurationFile(path)) {
+                digest.updateField(path).updateField(blobId);
+            }
+        });
+        return digest.digestToHex();
+    }
+
+    private static boolean isSourceFile(String path) {
+        String lowerCasePath = path.toLowerCase(Locale.ROOT);
+        return SourceFileExtensions.stream().anyMatch(lowerCasePath::endsWith);
+    }
+
+    private static boolean isConfigurationFile(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        return ConfigurationFileExtensions.stream().anyMatch(name::endsWith) || ConfigurationFileNames.contains(name);
+    }
+
+    private static boolean isIncluded(String path, List<String> includedPaths) {
+        if (includedPaths.isEmpty()) {
+            return true;
+        }
+        for (String includedPath : includedPaths) {
+            String normalizedPath = includedPath.replace('\\', '/');
+            normalizedPath = normalizedPath.startsWith("./") ? normalizedPath.substring(2) : normalizedPath;
+            normalizedPath = normalizedPath.endsWith("/") ? normalizedPath.substring(0, normalizedPath.length() - 1) : normalizedPath;
+            if (path.equals(normalizedPath) || path.startsWith(normalizedPath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
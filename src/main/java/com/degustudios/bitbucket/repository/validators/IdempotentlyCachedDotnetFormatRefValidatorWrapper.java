@@ -1,40 +1,90 @@
 package com.degustudios.bitbucket.repository.validators;
 
+import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.repository.RepositoryRef;
+import com.degustudios.bitbucket.cluster.ReplicatedResultCacheFactory;
+import com.degustudios.bitbucket.content.TreeIdResolver;
 import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidator;
+import com.degustudios.bitbucket.properties.FairShareGroup;
+import com.degustudios.bitbucket.properties.PluginProperties;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.dotnetformat.DotnetFormatCommandResultSerializer;
+import com.degustudios.executors.AppendOnlyFileResultStore;
+import com.degustudios.executors.ExecutionPriority;
 import com.degustudios.executors.IdempotentExecutor;
 import com.degustudios.executors.IdempotentExecutorBuilder;
-import org.apache.commons.lang3.StringUtils;
+import com.degustudios.executors.IdempotentExecutorSettings;
+import com.degustudios.executors.ResultStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service("IdempotentlyCachedDotnetFormatRefValidatorWrapper")
-public class IdempotentlyCachedDotnetFormatRefValidatorWrapper implements DotnetFormatRefValidator {
+public class IdempotentlyCachedDotnetFormatRefValidatorWrapper implements DotnetFormatRefValidator, DisposableBean {
     private final IdempotentExecutor<RepositoryRef, DotnetFormatCommandResult> executor;
+    private final ResultStore<DotnetFormatCommandResult> resultStore;
+    private final long hookTimeoutInSeconds;
     private static final Logger logger = LoggerFactory.getLogger(IdempotentlyCachedDotnetFormatRefValidatorWrapper.class);
     private static final int[] CacheableExitCodes = new int[] {0, 2};
+    private static final String QUEUE_FULL_MESSAGE =
+            "Too many dotnet-format runs are waiting on this node. Please try again in a few minutes.";
+    private static final String HOOK_TIMEOUT_MESSAGE =
+            "dotnet-format did not finish within %d seconds. It keeps running, please try again in a few minutes.";
 
     @Autowired
     public IdempotentlyCachedDotnetFormatRefValidatorWrapper(
-            @Qualifier("DotnetFormatRefValidatorImpl") DotnetFormatRefValidator validator,
-            IdempotentExecutorBuilder executorBuilder) {
+            @Qualifier("FileVerdictCachingDotnetFormatRefValidatorWrapper") DotnetFormatRefValidator validator,
+            IdempotentExecutorBuilder executorBuilder,
+            PluginProperties pluginProperties,
+            ReplicatedResultCacheFactory replicatedResultCacheFactory,
+            TreeIdResolver treeIdResolver) {
+        this.resultStore = createResultStore(pluginProperties);
+        this.hookTimeoutInSeconds = pluginProperties.getHookTimeoutInSeconds();
+        FairShareGroup fairShareGroup = pluginProperties.getFairShareGroup();
         this.executor = executorBuilder.build(
                 validator::validate,
-                IdempotentlyCachedDotnetFormatRefValidatorWrapper::mapToKey,
-                result -> result.hasExecutedCorrectly()
-                        && Arrays.stream(CacheableExitCodes).anyMatch(x -> x == result.getExitCode()));
+                (ref, params) -> mapToKey(ref, params, treeIdResolver),
+                (ref, params) -> mapToGroup(ref, fairShareGroup),
+                IdempotentlyCachedDotnetFormatRefValidatorWrapper::isCacheable,
+                IdempotentlyCachedDotnetFormatRefValidatorWrapper::weigh,
+                resultStore,
+                replicatedResultCacheFactory.create("results", new DotnetFormatCommandResultSerializer()),
+                createExecutorSettings(pluginProperties));
+    }
+
+    /**
+     * @return true when dotnet-format found the code formatted (0) or not (2); other exit codes are failures to
+     * check, such as failed restores, and checking again may succeed
+     */
+    public static boolean isCacheable(DotnetFormatCommandResult result) {
+        return result.hasExecutedCorrectly()
+                && Arrays.stream(CacheableExitCodes).anyMatch(x -> x == result.getExitCode());
     }
 
     public DotnetFormatCommandResult validate(RepositoryRef ref, List<String> params) {
         try {
-            return executor.execute(ref, params).get();
+            Future<DotnetFormatCommandResult> result = executor.execute(ref, params);
+            return hookTimeoutInSeconds > 0 ? result.get(hookTimeoutInSeconds, TimeUnit.SECONDS) : result.get();
+        } catch (TimeoutException e) {
+            // The run goes on and caches its result, so checking again later picks it up
+            logger.warn("Validation for Ref ID: {} did not finish within {} seconds", ref.getId(), hookTimeoutInSeconds);
+            return DotnetFormatCommandResult.timedOut(String.format(HOOK_TIMEOUT_MESSAGE, hookTimeoutInSeconds));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Rejected validation for Ref ID: {} - {} runs are already queued", ref.getId(), executor.getQueuedCount());
+            return DotnetFormatCommandResult.failed(QUEUE_FULL_MESSAGE);
         } catch (InterruptedException interruptedException) {
             logger.error("Interrupted exception");
             Thread.currentThread().interrupt();
@@ -45,11 +95,94 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapper implements Dotnet
         }
     }
 
-    private static String mapToKey(RepositoryRef x, List<String> params) {
-        return x.getRepository().getId()
-                + "/"
-                + x.getLatestCommit()
-                + "/"
-                + StringUtils.join(params, ' ');
+    /**
+     * Starts validating without waiting for the result, which is cached under the same key the merge check uses.
+     * Such runs wait for the merge checks queued after them, until a merge check asks for the same ref.
+     */
+    public void prewarm(RepositoryRef ref, List<String> params) {
+        try {
+            executor.execute(ref, params, ExecutionPriority.BACKGROUND);
+        } catch (RejectedExecutionException e) {
+            logger.info("Skipped pre-warming Ref ID: {} - {} runs are already queued", ref.getId(), executor.getQueuedCount());
+        } catch (Exception e) {
+            logger.warn("Failed to pre-warm validation for Ref ID: {}", ref.getId(), e);
+        }
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueuedCount();
+    }
+
+    public int getRunningCount() {
+        return executor.getRunningCount();
+    }
+
+    public Map<String, Integer> getQueuedCountByGroup() {
+        return executor.getQueuedCountByGroup();
+    }
+
+    public Map<String, Integer> getRunningCountByGroup() {
+        return executor.getRunningCountByGroup();
+    }
+
+    public int getCachedResultsCount() {
+        return executor.getCachedResultsCount();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        resultStore.close();
+    }
+
+    private static ResultStore<DotnetFormatCommandResult> createResultStore(PluginProperties pluginProperties) {
+        long maximumSize = pluginProperties.getResultStoreMaximumSize();
+        File directory = pluginProperties.getResultStoreDirectory();
+        if (maximumSize <= 0 || directory == null) {
+            return ResultStore.none();
+        }
+        try {
+            return new AppendOnlyFileResultStore<>(directory.toPath(), new DotnetFormatCommandResultSerializer(), maximumSize);
+        } catch (IOException e) {
+            logger.error("Failed to open result store in {}, results will not survive a restart", directory, e);
+            return ResultStore.none();
+        }
+    }
+
+    private static IdempotentExecutorSettings createExecutorSettings(PluginProperties pluginProperties) {
+        return new IdempotentExecutorSettings.Builder()
+                .maximumCachedResults(pluginProperties.getCacheMaximumEntries())
+                .maximumCachedResultsWeight(pluginProperties.getCacheMaximumOutputSize())
+                .expireAfterWrite(pluginProperties.getCacheExpireAfterWriteInMinutes(), TimeUnit.MINUTES)
+                .expireAfterAccess(pluginProperties.getCacheExpireAfterAccessInMinutes(), TimeUnit.MINUTES)
+                .maximumConcurrentExecutions(pluginProperties.getMaximumConcurrentRuns())
+                .maximumQueuedExecutions(pluginProperties.getMaximumQueuedRuns())
+                .maximumConcurrentExecutionsPerGroup(pluginProperties.getMaximumConcurrentRunsPerGroup())
+                // Renew well before the lease runs out so that other nodes never take over a running validation
+                .claimRenewalInterval(pluginProperties.getClusterClaimLeaseInSeconds() * 1000 / 4, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static Integer weigh(DotnetFormatCommandResult result) {
+        return result.getMessage() == null ? 0 : result.getMessage().length();
+    }
+
+    private static String mapToGroup(RepositoryRef ref, FairShareGroup fairShareGroup) {
+        if (fairShareGroup == null || fairShareGroup == FairShareGroup.NONE) {
+            return "";
+        }
+        Repository repository = ref.getRepository();
+        return fairShareGroup == FairShareGroup.PROJECT
+                ? repository.getProject().getKey()
+                : repository.getProject().getKey() + "/" + repository.getSlug();
+    }
+
+    /**
+     * Results are keyed by the root tree rather than the commit, so commits with the same content share them.
+     * Tree and commit IDs never collide, so the commit stands in when the tree cannot be resolved.
+     */
+    private static String mapToKey(RepositoryRef x, List<String> params, TreeIdResolver treeIdResolver) {
+        String treeId = treeIdResolver.resolve(x.getRepository(), x.getLatestCommit());
+        return ValidationKey.of(x.getRepository().getId(), treeId == null ? x.getLatestCommit() : treeId, params).toString();
     }
 }
@@ -0,0 +1,92 @@
+package com.degustudios.bitbucket.repository.validators;
+
+import com.degustudios.util.Sha256;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Identifies a validation by repository, content and parameters. The parameters are normalized, so paths given
+ * to --include or --exclude in another order give the same key, and kept only as a SHA-256 digest, so keys stay
+ * small however many paths a pull request changes. The caches store keys in their string form.
+ */
+public final class ValidationKey {
+    private static final List<String> PATH_LIST_OPTIONS = Arrays.asList("--include", "--exclude");
+
+    private final int repositoryId;
+    private final String contentId;
+    private final byte[] parametersDigest;
+
+    private ValidationKey(int repositoryId, String contentId, byte[] parametersDigest) {
+        this.repositoryId = repositoryId;
+        this.contentId = contentId;
+        this.parametersDigest = parametersDigest;
+    }
+
+    /**
+     * @param contentId the root tree of the validated commit, or the commit itself
+     */
+    public static ValidationKey of(int repositoryId, String contentId, List<String> params) {
+        return new ValidationKey(repositoryId, contentId, digest(normalize(params)));
+    }
+
+    /**
+     * Sorts and deduplicates the paths following --include and --exclude, other parameters keep their order.
+     * Double quotes around a parameter are removed, as the hook settings may quote any parameter.
+     */
+    public static List<String> normalize(List<String> params) {
+        List<String> normalized = new ArrayList<>(params.size());
+        TreeSet<String> paths = null;
+        for (String quotedParam : params) {
+            String param = unquote(quotedParam);
+            if (paths != null && !param.startsWith("-")) {
+                paths.add(param);
+                continue;
+            }
+            if (paths != null) {
+                normalized.addAll(paths);
+                paths = null;
+            }
+            normalized.add(param);
+            if (PATH_LIST_OPTIONS.contains(param)) {
+                paths = new TreeSet<>();
+            }
+        }
+        if (paths != null) {
+            normalized.addAll(paths);
+        }
+        return normalized;
+    }
+
+    private static String unquote(String param) {
+        return param.length() >= 2 && param.startsWith("\"") && param.endsWith("\"")
+                ? param.substring(1, param.length() - 1)
+                : param;
+    }
+
+    /**
+     * Each parameter is prefixed by its length, so "a b" and "a", "b" never share a digest.
+     */
+    private static byte[] digest(List<String> params) {
+        Sha256 digest = Sha256.create();
+        for (String param : params) {
+            byte[] bytes = param.getBytes(StandardCharsets.UTF_8);
+            digest.update(new byte[] {
+                    (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length});
+            digest.update(bytes);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return the key as stored by the caches, e.g. "12/4b825dc642cb6eb9a060e54bf8d69288fbee4904/" followed by
+     * the hexadecimal digest of the parameters
+     */
+    @Override
+    public String toString() {
+        return repositoryId + "/" + contentId + "/" + Sha256.toHex(parametersDigest);
+    }
+}
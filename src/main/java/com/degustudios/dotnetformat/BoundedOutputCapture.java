@@ -0,0 +1,112 @@
+package com.degustudios.dotnetformat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads process output spilled to a file while keeping at most a fixed number of bytes in memory: the beginning
+ * and the end of the output are kept, cut at line boundaries, and the middle is replaced by a line saying how
+ * much was left out. A maximum size of 0 or less disables the limit, apart from what fits into a Java string.
+ */
+public class BoundedOutputCapture {
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    private static final byte NEW_LINE = '\n';
+    private static final int UNLIMITED_SIZE = Integer.MAX_VALUE / 2;
+
+    private final int maximumHeadSize;
+    private final int maximumTailSize;
+    private final Charset charset;
+
+    public BoundedOutputCapture(int maximumSize, Charset charset) {
+        int limit = maximumSize > 0 ? maximumSize : UNLIMITED_SIZE;
+        this.maximumHeadSize = limit / 2;
+        this.maximumTailSize = limit - maximumHeadSize;
+        this.charset = charset;
+    }
+
+    public String read(Path outputFilePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(outputFilePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= (long) maximumHeadSize + maximumTailSize) {
+                return new String(readFully(channel, 0, (int) size), charset);
+            }
+
+            byte[] head = readFully(channel, 0, maximumHeadSize);
+            int headEnd = lastIndexOfNewLine(head) + 1;
+            if (headEnd == 0) {
+                headEnd = head.length;
+            }
+
+            long tailPosition = size - maximumTailSize;
+            byte[] tail = readFully(channel, tailPosition, maximumTailSize);
+            int tailStart = indexOfNewLine(tail) + 1;
+            if (tailStart == 0 || tailStart == tail.length) {
+                tailStart = 0;
+            }
+
+            long omittedStart = headEnd;
+            long omittedEnd = tailPosition + tailStart;
+            long omittedLines = countNewLines(channel, omittedStart, omittedEnd);
+            return new String(head, 0, headEnd, charset)
+                    + "[... " + (omittedEnd - omittedStart) + " bytes (" + omittedLines + " lines) of "
+                    + size + " bytes of output omitted ...]" + System.lineSeparator()
+                    + new String(tail, tailStart, tail.length - tailStart, charset);
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static long countNewLines(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long count = 0;
+        long position = start;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == NEW_LINE) {
+                    count++;
+                }
+            }
+            position += read;
+        }
+        return count;
+    }
+
+    private static int indexOfNewLine(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == NEW_LINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOfNewLine(byte[] bytes) {
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (bytes[i] == NEW_LINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
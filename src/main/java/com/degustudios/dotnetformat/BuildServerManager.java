@@ -0,0 +1,169 @@
+package com.degustudios.dotnetformat;
+
+import com.degustudios.bitbucket.mergechecks.NativeCommandRunner;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which dotnet-format runs may leave MSBuild nodes and the compiler server running for later runs.
+ * At most a fixed number of runs at a time are warm; the others run with node reuse and shared compilation
+ * turned off, so they leave nothing behind. Servers are shut down once no run has used them for a while,
+ * and when the plugin is disabled.
+ */
+@Service
+public class BuildServerManager implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(BuildServerManager.class);
+    private static final long IDLE_CHECK_INTERVAL_IN_MS = 60 * 1000L;
+
+    private final NativeCommandRunner commandRunner;
+    private final int maximumWarmRuns;
+    private final long idleShutdownInMs;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler;
+    private int activeRuns;
+    private int activeWarmRuns;
+    private boolean mayHaveLiveServers;
+    private boolean isShuttingDown;
+    private long lastRunFinishedAt;
+
+    @Autowired
+    public BuildServerManager(NativeCommandRunner commandRunner, PluginProperties pluginProperties) {
+        this(commandRunner,
+                pluginProperties.getMaximumBuildServers(),
+                TimeUnit.MINUTES.toMillis(pluginProperties.getBuildServerIdleShutdownInMinutes()),
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param maximumWarmRuns runs at a time that may reuse and leave build servers, 0 to never keep any
+     * @param idleShutdownInMs how long servers are kept after the last run, 0 or less to keep them until disabled
+     */
+    public BuildServerManager(NativeCommandRunner commandRunner, int maximumWarmRuns, long idleShutdownInMs, LongSupplier clock) {
+        this.commandRunner = commandRunner;
+        this.maximumWarmRuns = Math.max(0, maximumWarmRuns);
+        this.idleShutdownInMs = idleShutdownInMs;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("dotnet-format-build-servers");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.maximumWarmRuns > 0 && idleShutdownInMs > 0) {
+            scheduler.scheduleWithFixedDelay(this::shutDownIfIdle, IDLE_CHECK_INTERVAL_IN_MS, IDLE_CHECK_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Call {@link Lease#close()} once the run has finished.
+     */
+    public synchronized Lease acquire() {
+        activeRuns++;
+        boolean isWarm = !isShuttingDown && activeWarmRuns < maximumWarmRuns;
+        if (isWarm) {
+            activeWarmRuns++;
+            mayHaveLiveServers = true;
+        }
+        return new Lease(isWarm);
+    }
+
+    /**
+     * Shuts build servers down when no run is active and the last one finished longer ago than the idle timeout.
+     */
+    public void shutDownIfIdle() {
+        synchronized (this) {
+            if (!mayHaveLiveServers
+                    || activeRuns > 0
+                    || isShuttingDown
+                    || clock.getAsLong() - lastRunFinishedAt < idleShutdownInMs) {
+                return;
+            }
+            isShuttingDown = true;
+        }
+        try {
+            shutDownBuildServers();
+        } finally {
+            synchronized (this) {
+                isShuttingDown = false;
+                mayHaveLiveServers = false;
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        boolean shouldShutDown;
+        synchronized (this) {
+            shouldShutDown = mayHaveLiveServers;
+            mayHaveLiveServers = false;
+        }
+        if (shouldShutDown) {
+            shutDownBuildServers();
+        }
+    }
+
+    private synchronized void release(boolean isWarm) {
+        activeRuns--;
+        if (isWarm) {
+            activeWarmRuns--;
+        }
+        lastRunFinishedAt = clock.getAsLong();
+    }
+
+    private void shutDownBuildServers() {
+        DotnetFormatCommandResult result = commandRunner.runCommand(
+                new File(System.getProperty("java.io.tmpdir")),
+                "dotnet", "build-server", "shutdown");
+        if (!result.hasExecutedCorrectly() || result.getExitCode() != 0) {
+            logger.warn("Failed to shut down build servers: {}", result.getMessage());
+        }
+    }
+
+    public class Lease implements AutoCloseable {
+        private final boolean isWarm;
+        private boolean isReleased;
+
+        Lease(boolean isWarm) {
+            this.isWarm = isWarm;
+        }
+
+        public boolean isWarm() {
+            return isWarm;
+        }
+
+        /**
+         * @return variables to add to the environment of dotnet-format
+         */
+        public Map<String, String> getEnvironment() {
+            Map<String, String> environment = new HashMap<>();
+            environment.put("MSBUILDDISABLENODEREUSE", isWarm ? "0" : "1");
+            environment.put("UseSharedCompilation", isWarm ? "true" : "false");
+            environment.put("DOTNET_CLI_TELEMETRY_OPTOUT", "1");
+            return environment;
+        }
+
+        @Override
+        public void close() {
+            synchronized (BuildServerManager.this) {
+                if (isReleased) {
+                    return;
+                }
+                isReleased = true;
+            }
+            release(isWarm);
+        }
+    }
+}
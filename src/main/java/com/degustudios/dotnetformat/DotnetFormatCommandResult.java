@@ -5,18 +5,40 @@ public class DotnetFormatCommandResult {
     private final String message;
     private final Exception exception;
     private final boolean hasExecutedCorrectly;
+    private final boolean hasTimedOut;
+    private final DotnetFormatReport report;
 
     private DotnetFormatCommandResult(int exitCode, String message, Exception exception, boolean hasExecutedCorrectly) {
+        this(exitCode, message, exception, hasExecutedCorrectly, false, null);
+    }
+
+    private DotnetFormatCommandResult(int exitCode, String message, Exception exception, boolean hasExecutedCorrectly, boolean hasTimedOut, DotnetFormatReport report) {
         this.exitCode = exitCode;
         this.message = message;
         this.exception = exception;
         this.hasExecutedCorrectly = hasExecutedCorrectly;
+        this.hasTimedOut = hasTimedOut;
+        this.report = report;
     }
 
     public static DotnetFormatCommandResult executedCorrectly(int exitCode, String message) {
         return new DotnetFormatCommandResult(exitCode, message, null, true);
     }
 
+    /**
+     * Keeps the parsed report instead of the console output, the message is rendered from the report.
+     */
+    public static DotnetFormatCommandResult executedCorrectlyWithReport(int exitCode, DotnetFormatReport report) {
+        return new DotnetFormatCommandResult(exitCode, null, null, true, false, report);
+    }
+
+    /**
+     * dotnet-format did not finish in time. Such results have not executed correctly, so they are never cached.
+     */
+    public static DotnetFormatCommandResult timedOut(String message) {
+        return new DotnetFormatCommandResult(-1, message, null, false, true, null);
+    }
+
     public static DotnetFormatCommandResult failed(Exception e) {
         return new DotnetFormatCommandResult(
                 -1,
@@ -34,10 +56,19 @@ public class DotnetFormatCommandResult {
     }
 
     public String getMessage() {
-        return message;
+        return report == null ? message : report.toText();
+    }
+
+    /**
+     * @return the parsed dotnet-format report, or null when only console output is available
+     */
+    public DotnetFormatReport getReport() {
+        return report;
     }
 
     public boolean hasExecutedCorrectly() { return hasExecutedCorrectly; }
 
     public Exception getException() { return exception; }
+
+    public boolean hasTimedOut() { return hasTimedOut; }
 }
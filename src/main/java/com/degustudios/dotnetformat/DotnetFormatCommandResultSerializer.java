@@ -0,0 +1,122 @@
+package com.degustudios.dotnetformat;
+
+import com.degustudios.executors.ResultSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary format of results that executed correctly. Failed results are never persisted.
+ * Version 2 stores parsed reports, results stored by version 1 are still read.
+ */
+public class DotnetFormatCommandResultSerializer implements ResultSerializer<DotnetFormatCommandResult> {
+    private static final byte MESSAGE_FORMAT_VERSION = 1;
+    private static final byte FORMAT_VERSION = 2;
+
+    @Override
+    public byte[] serialize(DotnetFormatCommandResult result) throws IOException {
+        if (!result.hasExecutedCorrectly()) {
+            throw new IOException("Only results that executed correctly can be serialized");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(FORMAT_VERSION);
+            output.writeInt(result.getExitCode());
+            DotnetFormatReport report = result.getReport();
+            output.writeBoolean(report != null);
+            if (report == null) {
+                writeString(output, result.getMessage());
+            } else {
+                writeReport(output, report);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public DotnetFormatCommandResult deserialize(byte[] bytes) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte version = input.readByte();
+            if (version != FORMAT_VERSION && version != MESSAGE_FORMAT_VERSION) {
+                throw new IOException("Unsupported result format version: " + version);
+            }
+            int exitCode = input.readInt();
+            if (version == FORMAT_VERSION && input.readBoolean()) {
+                return DotnetFormatCommandResult.executedCorrectlyWithReport(exitCode, readReport(input));
+            }
+            String message = readString(input);
+            return DotnetFormatCommandResult.executedCorrectly(exitCode, message);
+        }
+    }
+
+    private static void writeReport(DataOutputStream output, DotnetFormatReport report) throws IOException {
+        output.writeInt(report.getFileCount());
+        output.writeInt(report.getChangeCount());
+        output.writeInt(report.getDiagnosticCounts().size());
+        for (Map.Entry<String, Integer> diagnosticCount : report.getDiagnosticCounts().entrySet()) {
+            writeString(output, diagnosticCount.getKey());
+            output.writeInt(diagnosticCount.getValue());
+        }
+        output.writeInt(report.getChangesByFile().size());
+        for (Map.Entry<String, List<DotnetFormatReport.Change>> file : report.getChangesByFile().entrySet()) {
+            writeString(output, file.getKey());
+            output.writeInt(file.getValue().size());
+            for (DotnetFormatReport.Change change : file.getValue()) {
+                output.writeInt(change.getLine());
+                output.writeInt(change.getColumn());
+                writeString(output, change.getDiagnosticId());
+                writeString(output, change.getDescription());
+            }
+        }
+    }
+
+    private static DotnetFormatReport readReport(DataInputStream input) throws IOException {
+        DotnetFormatReport.Builder report = new DotnetFormatReport.Builder();
+        int fileCount = input.readInt();
+        int changeCount = input.readInt();
+        int diagnosticIdCount = input.readInt();
+        Map<String, Integer> diagnosticCounts = new TreeMap<>();
+        for (int i = 0; i < diagnosticIdCount; i++) {
+            diagnosticCounts.put(readString(input), input.readInt());
+        }
+        int listedFileCount = input.readInt();
+        for (int i = 0; i < listedFileCount; i++) {
+            String filePath = readString(input);
+            int listedChangeCount = input.readInt();
+            List<DotnetFormatReport.Change> changes = new ArrayList<>(listedChangeCount);
+            for (int j = 0; j < listedChangeCount; j++) {
+                changes.add(new DotnetFormatReport.Change(input.readInt(), input.readInt(), readString(input), readString(input)));
+            }
+            report.file(filePath, changes);
+        }
+        return report.totals(fileCount, changeCount, diagnosticCounts).build();
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,69 @@
+package com.degustudios.dotnetformat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and rewrites dotnet-format parameters. The paths passed with --include are the parameters following it,
+ * up to the next option.
+ */
+public class DotnetFormatParameters {
+    public static final String INCLUDE_PARAMETER = "--include";
+    // "dotnet format whitespace" neither restores nor accepts --no-restore
+    private static final String WHITESPACE_SUBCOMMAND = "whitespace";
+    private static final List<String> READ_ONLY_PARAMETERS = Arrays.asList("--check", "--verify-no-changes");
+
+    private DotnetFormatParameters() {
+    }
+
+    public static List<String> getIncludedPaths(List<String> params) {
+        int includeIndex = params.indexOf(INCLUDE_PARAMETER);
+        if (includeIndex < 0) {
+            return Collections.emptyList();
+        }
+        List<String> includedPaths = new ArrayList<>();
+        for (String param : params.subList(includeIndex + 1, params.size())) {
+            if (param.startsWith("-")) {
+                break;
+            }
+            includedPaths.add(param);
+        }
+        return includedPaths;
+    }
+
+    /**
+     * @return the parameters without --include and the paths following it
+     */
+    public static List<String> withoutIncludedPaths(List<String> params) {
+        int includeIndex = params.indexOf(INCLUDE_PARAMETER);
+        if (includeIndex < 0) {
+            return params;
+        }
+        List<String> otherParams = new ArrayList<>(params.subList(0, includeIndex));
+        otherParams.addAll(params.subList(includeIndex + 1 + getIncludedPaths(params).size(), params.size()));
+        return otherParams;
+    }
+
+    /**
+     * @param otherParams parameters without --include
+     */
+    public static List<String> withIncludedPaths(List<String> otherParams, List<String> includedPaths) {
+        List<String> params = new ArrayList<>(otherParams);
+        params.add(INCLUDE_PARAMETER);
+        params.addAll(includedPaths);
+        return params;
+    }
+
+    /**
+     * @return true when dotnet-format only reports changes instead of writing them
+     */
+    public static boolean isReadOnly(List<String> params) {
+        return params.stream().anyMatch(READ_ONLY_PARAMETERS::contains);
+    }
+
+    public static boolean isWhitespaceRun(List<String> params) {
+        return params.contains(WHITESPACE_SUBCOMMAND);
+    }
+}
@@ -0,0 +1,173 @@
+package com.degustudios.dotnetformat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Changes dotnet-format wants to make, read from its JSON report. Counts cover every change, but only the first
+ * {@link #MAXIMUM_LISTED_CHANGES} changes are kept in detail.
+ */
+public class DotnetFormatReport {
+    public static final int MAXIMUM_LISTED_CHANGES = 1000;
+
+    private final Map<String, List<Change>> changesByFile;
+    private final Map<String, Integer> diagnosticCounts;
+    private final int fileCount;
+    private final int changeCount;
+
+    private DotnetFormatReport(Map<String, List<Change>> changesByFile, Map<String, Integer> diagnosticCounts, int fileCount, int changeCount) {
+        this.changesByFile = changesByFile;
+        this.diagnosticCounts = diagnosticCounts;
+        this.fileCount = fileCount;
+        this.changeCount = changeCount;
+    }
+
+    /**
+     * Listed changes by file path relative to the repository root, in report order.
+     */
+    public Map<String, List<Change>> getChangesByFile() {
+        return changesByFile;
+    }
+
+    /**
+     * Number of changes by diagnostic ID, sorted by ID.
+     */
+    public Map<String, Integer> getDiagnosticCounts() {
+        return diagnosticCounts;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    public int getListedChangeCount() {
+        return changesByFile.values().stream().mapToInt(List::size).sum();
+    }
+
+    /**
+     * Renders the report the way dotnet-format prints changes on the console, followed by a summary.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, List<Change>> file : changesByFile.entrySet()) {
+            for (Change change : file.getValue()) {
+                text.append(file.getKey())
+                        .append('(').append(change.getLine()).append(',').append(change.getColumn()).append("): ")
+                        .append(change.getDiagnosticId()).append(": ")
+                        .append(change.getDescription())
+                        .append('\n');
+            }
+        }
+        int notListedChangeCount = changeCount - getListedChangeCount();
+        if (notListedChangeCount > 0) {
+            text.append("... and ").append(notListedChangeCount).append(" more changes").append('\n');
+        }
+        text.append(changeCount).append(" changes in ").append(fileCount).append(" files");
+        if (!diagnosticCounts.isEmpty()) {
+            text.append(':');
+            diagnosticCounts.forEach((id, count) -> text.append(' ').append(id).append(" (").append(count).append(')'));
+        }
+        return text.append('\n').toString();
+    }
+
+    public static class Change {
+        private final int line;
+        private final int column;
+        private final String diagnosticId;
+        private final String description;
+
+        public Change(int line, int column, String diagnosticId, String description) {
+            this.line = line;
+            this.column = column;
+            this.diagnosticId = diagnosticId;
+            this.description = description;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public String getDiagnosticId() {
+            return diagnosticId;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    public static class Builder {
+        private final Map<String, List<Change>> changesByFile = new LinkedHashMap<>();
+        private final Map<String, Integer> diagnosticCounts = new TreeMap<>();
+        // Descriptions and IDs repeat a lot, keeping one copy of each keeps cached reports small
+        private final Map<String, String> strings = new TreeMap<>();
+        private int fileCount;
+        private int changeCount;
+        private int listedChangeCount;
+
+        /**
+         * Adds all changes of one file.
+         */
+        public Builder file(String filePath, List<Change> changes) {
+            if (changes.isEmpty()) {
+                return this;
+            }
+            fileCount++;
+            changeCount += changes.size();
+            for (Change change : changes) {
+                diagnosticCounts.merge(share(change.getDiagnosticId()), 1, Integer::sum);
+            }
+
+            int listed = Math.min(changes.size(), MAXIMUM_LISTED_CHANGES - listedChangeCount);
+            if (listed > 0) {
+                List<Change> listedChanges = changesByFile.computeIfAbsent(filePath, x -> new ArrayList<>());
+                for (Change change : changes.subList(0, listed)) {
+                    listedChanges.add(new Change(
+                            change.getLine(),
+                            change.getColumn(),
+                            share(change.getDiagnosticId()),
+                            share(change.getDescription())));
+                }
+                listedChangeCount += listed;
+            }
+            return this;
+        }
+
+        /**
+         * Restores the totals of a report whose changes were not all listed.
+         */
+        public Builder totals(int fileCount, int changeCount, Map<String, Integer> diagnosticCounts) {
+            this.fileCount = fileCount;
+            this.changeCount = changeCount;
+            this.diagnosticCounts.clear();
+            this.diagnosticCounts.putAll(diagnosticCounts);
+            return this;
+        }
+
+        public DotnetFormatReport build() {
+            Map<String, List<Change>> files = new LinkedHashMap<>();
+            changesByFile.forEach((path, changes) -> files.put(path, Collections.unmodifiableList(changes)));
+            return new DotnetFormatReport(
+                    Collections.unmodifiableMap(files),
+                    Collections.unmodifiableMap(new TreeMap<>(diagnosticCounts)),
+                    fileCount,
+                    changeCount);
+        }
+
+        private String share(String value) {
+            return value == null ? null : strings.computeIfAbsent(value, x -> x);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.degustudios.dotnetformat;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the JSON written by "dotnet format --report" one token at a time, so large reports are never held in memory:
+ * <pre>
+ * [{"FilePath": "/workspace/src/Program.cs",
+ *   "FileChanges": [{"LineNumber": 5, "CharNumber": 9, "DiagnosticId": "WHITESPACE", "FormatDescription": "..."}]}]
+ * </pre>
+ */
+public class DotnetFormatReportParser {
+    public DotnetFormatReport parse(Path reportFilePath, Path workingDirectory) throws IOException {
+        DotnetFormatReport.Builder report = new DotnetFormatReport.Builder();
+        try (Reader reader = Files.newBufferedReader(reportFilePath, StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginArray();
+            while (json.hasNext()) {
+                readDocument(json, workingDirectory, report);
+            }
+            json.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Report " + reportFilePath + " is not a dotnet-format report", e);
+        }
+        return report.build();
+    }
+
+    private static void readDocument(JsonReader json, Path workingDirectory, DotnetFormatReport.Builder report) throws IOException {
+        String filePath = null;
+        List<DotnetFormatReport.Change> changes = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("FilePath".equals(name)) {
+                filePath = json.nextString();
+            } else if ("FileChanges".equals(name)) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    changes.add(readChange(json));
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        if (filePath != null) {
+            report.file(relativize(filePath, workingDirectory), changes);
+        }
+    }
+
+    private static DotnetFormatReport.Change readChange(JsonReader json) throws IOException {
+        int line = 0;
+        int column = 0;
+        String diagnosticId = "";
+        String description = "";
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "LineNumber":
+                    line = json.nextInt();
+                    break;
+                case "CharNumber":
+                    column = json.nextInt();
+                    break;
+                case "DiagnosticId":
+                    diagnosticId = json.nextString();
+                    break;
+                case "FormatDescription":
+                    description = json.nextString();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return new DotnetFormatReport.Change(line, column, diagnosticId, description);
+    }
+
+    private static String relativize(String filePath, Path workingDirectory) {
+        try {
+            Path path = Paths.get(filePath).normalize();
+            Path root = workingDirectory.toAbsolutePath().normalize();
+            if (path.startsWith(root)) {
+                return root.relativize(path).toString().replace('\\', '/');
+            }
+        } catch (RuntimeException e) {
+            // Not a path of this platform, keep it as reported
+        }
+        return filePath;
+    }
+}
@@ -1,36 +1,378 @@
 package com.degustudios.dotnetformat;
 
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import com.degustudios.bitbucket.mergechecks.NativeCommandRunner;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Service
-public class DotnetFormatRunner {
+public class DotnetFormatRunner implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(DotnetFormatRunner.class);
+    private static final String REPORT_PARAMETER = "--report";
+    private static final String REPORT_FILE_NAME = "format-report.json";
+    private static final String NO_RESTORE_PARAMETER = "--no-restore";
+    private static final String RESPONSE_FILE_NAME = "include.rsp";
+    // Other exit codes mean dotnet-format failed, its console output explains why
+    private static final int[] ReportedExitCodes = new int[] {0, 2};
+    private static final long TOOLCHAIN_CHECK_INTERVAL_IN_MS = 10 * 60 * 1000L;
     private final NativeCommandRunner commandRunner;
+    private final DotnetFormatReportParser reportParser = new DotnetFormatReportParser();
+    private final NuGetRestoreCache restoreCache;
+    private final BuildServerManager buildServerManager;
+    private final int responseFileThreshold;
+    private final int chunkSize;
+    private final ExecutorService chunkExecutor;
+    private final int maximumParallelChunks;
+    private String toolchainVersion;
+    private long toolchainCheckedAt;
 
-    public DotnetFormatRunner(NativeCommandRunner commandRunner) {
+    public DotnetFormatRunner(NativeCommandRunner commandRunner, NuGetRestoreCache restoreCache, BuildServerManager buildServerManager) {
+        this(commandRunner, restoreCache, buildServerManager, 0, 0, 0);
+    }
+
+    @Autowired
+    public DotnetFormatRunner(NativeCommandRunner commandRunner, NuGetRestoreCache restoreCache, BuildServerManager buildServerManager, PluginProperties pluginProperties) {
+        this(commandRunner,
+                restoreCache,
+                buildServerManager,
+                pluginProperties.getIncludeResponseFileThreshold(),
+                pluginProperties.getIncludeChunkSize(),
+                pluginProperties.getMaximumParallelIncludeChunks());
+    }
+
+    /**
+     * @param responseFileThreshold number of included paths from which they are written to a response file, 0 to never write one
+     * @param chunkSize included paths checked by one dotnet-format process when there are more, 0 to never split them
+     * @param maximumParallelChunks chunks checked at the same time across all runs, besides the one each split run checks itself
+     */
+    public DotnetFormatRunner(
+            NativeCommandRunner commandRunner,
+            NuGetRestoreCache restoreCache,
+            BuildServerManager buildServerManager,
+            int responseFileThreshold,
+            int chunkSize,
+            int maximumParallelChunks) {
         this.commandRunner = commandRunner;
+        this.restoreCache = restoreCache;
+        this.buildServerManager = buildServerManager;
+        this.responseFileThreshold = responseFileThreshold;
+        this.chunkSize = chunkSize;
+        this.maximumParallelChunks = Math.max(0, maximumParallelChunks);
+        this.chunkExecutor = this.maximumParallelChunks == 0 ? null : createChunkExecutor(this.maximumParallelChunks);
     }
 
+    /**
+     * Runs dotnet-format once, or once per chunk when more paths are included than fit into one chunk.
+     */
     public DotnetFormatCommandResult runDotnetFormat(Path workingDirectory, List<String> param) {
-        String shell;
-        String executeSwitch;
+        List<String> includedPaths = DotnetFormatParameters.getIncludedPaths(param);
+        if (chunkSize <= 0 || includedPaths.size() <= chunkSize) {
+            return runOnce(workingDirectory, param);
+        }
+        List<List<String>> chunks = IncludeChunker.split(workingDirectory, includedPaths, chunkSize);
+        logger.info("Checking {} included paths in {} chunks", includedPaths.size(), chunks.size());
+        List<String> otherParams = DotnetFormatParameters.withoutIncludedPaths(param);
+
+        // The first chunk restores the projects alone, so that the others do not restore them at the same time
+        DotnetFormatCommandResult firstResult = runOnce(workingDirectory, DotnetFormatParameters.withIncludedPaths(otherParams, chunks.get(0)));
+        if (!hasRunCorrectly(firstResult)) {
+            return firstResult;
+        }
+        List<String> restoredParams = new ArrayList<>(otherParams);
+        if (!otherParams.contains(NO_RESTORE_PARAMETER) && !DotnetFormatParameters.isWhitespaceRun(otherParams)) {
+            restoredParams.add(NO_RESTORE_PARAMETER);
+        }
+        List<List<String>> otherChunkParams = chunks.subList(1, chunks.size()).stream()
+                .map(chunk -> DotnetFormatParameters.withIncludedPaths(restoredParams, chunk))
+                .collect(Collectors.toList());
+
+        List<DotnetFormatCommandResult> results = new ArrayList<>();
+        results.add(firstResult);
+        results.addAll(runInParallel(workingDirectory, otherChunkParams));
+        return merge(results);
+    }
+
+    @Override
+    public void destroy() {
+        if (chunkExecutor != null) {
+            chunkExecutor.shutdownNow();
+        }
+    }
+
+    private DotnetFormatCommandResult runOnce(Path workingDirectory, List<String> param) {
+        Path reportDirectory = createReportDirectory();
+        try (BuildServerManager.Lease buildServerLease = buildServerManager.acquire()) {
+            List<String> allParams = restore(workingDirectory, param);
+            DotnetFormatCommandResult result = commandRunner.runCommand(
+                    workingDirectory.toFile(),
+                    getEnvironment(buildServerLease),
+                    buildCommand(withResponseFile(allParams, reportDirectory), reportDirectory));
+            return complete(result, workingDirectory, allParams, reportDirectory);
+        } finally {
+            deleteReportDirectory(reportDirectory);
+        }
+    }
+
+    /**
+     * The calling thread checks chunks as well, so a run makes progress even while all chunk threads are busy
+     * with other runs. Once a chunk fails, the chunks nobody started yet are skipped.
+     */
+    private List<DotnetFormatCommandResult> runInParallel(Path workingDirectory, List<List<String>> chunkParams) {
+        DotnetFormatCommandResult[] results = new DotnetFormatCommandResult[chunkParams.size()];
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicBoolean hasFailed = new AtomicBoolean();
+        CountDownLatch finishedChunks = new CountDownLatch(chunkParams.size());
+        Runnable worker = () -> {
+            for (int i = nextChunk.getAndIncrement(); i < results.length; i = nextChunk.getAndIncrement()) {
+                try {
+                    if (!hasFailed.get()) {
+                        results[i] = runOnce(workingDirectory, chunkParams.get(i));
+                    }
+                } catch (RuntimeException e) {
+                    results[i] = DotnetFormatCommandResult.failed(e);
+                } finally {
+                    if (results[i] != null && !hasRunCorrectly(results[i])) {
+                        hasFailed.set(true);
+                    }
+                    finishedChunks.countDown();
+                }
+            }
+        };
+        int helpers = chunkExecutor == null ? 0 : Math.min(maximumParallelChunks, chunkParams.size() - 1);
+        for (int i = 0; i < helpers; i++) {
+            try {
+                chunkExecutor.execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+        try {
+            finishedChunks.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.singletonList(DotnetFormatCommandResult.failed(e));
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * SDKs can be installed or updated while Bitbucket runs, so the versions are read again every few minutes.
+     *
+     * @return the installed SDKs and the version of dotnet-format, or null when they could not be read
+     */
+    public synchronized String getToolchainVersion() {
+        long now = System.currentTimeMillis();
+        if (toolchainVersion != null && now - toolchainCheckedAt < TOOLCHAIN_CHECK_INTERVAL_IN_MS) {
+            return toolchainVersion;
+        }
+        File workingDirectory = new File(System.getProperty("java.io.tmpdir"));
+        DotnetFormatCommandResult sdks = commandRunner.runCommand(workingDirectory, "dotnet", "--list-sdks");
+        DotnetFormatCommandResult dotnetFormat = commandRunner.runCommand(workingDirectory, "dotnet", "format", "--version");
+        if (!hasExitedWithZero(sdks) || !hasExitedWithZero(dotnetFormat)) {
+            logger.warn("Failed to read versions of .NET SDKs and dotnet-format");
+            return null;
+        }
+        toolchainVersion = sdks.getMessage().trim() + "\n" + dotnetFormat.getMessage().trim();
+        toolchainCheckedAt = now;
+        return toolchainVersion;
+    }
+
+    private static boolean hasExitedWithZero(DotnetFormatCommandResult result) {
+        return result != null && result.hasExecutedCorrectly() && result.getExitCode() == 0 && result.getMessage() != null;
+    }
+
+    private Map<String, String> getEnvironment(BuildServerManager.Lease buildServerLease) {
+        Map<String, String> environment = new HashMap<>(buildServerLease.getEnvironment());
+        environment.putAll(restoreCache.getEnvironment());
+        return environment;
+    }
+
+    /**
+     * @return the parameters, with --no-restore when restore outputs of all projects were found in the cache
+     */
+    private List<String> restore(Path workingDirectory, List<String> param) {
+        if (param.contains(NO_RESTORE_PARAMETER)
+                || DotnetFormatParameters.isWhitespaceRun(param)
+                || !restoreCache.tryRestore(workingDirectory, DotnetFormatParameters.withoutIncludedPaths(param))) {
+            return param;
+        }
+        List<String> allParams = new ArrayList<>(param);
+        allParams.add(NO_RESTORE_PARAMETER);
+        return allParams;
+    }
+
+    private DotnetFormatCommandResult complete(DotnetFormatCommandResult result, Path workingDirectory, List<String> allParams, Path reportDirectory) {
+        DotnetFormatCommandResult completedResult = readReport(result, workingDirectory, reportDirectory);
+        if (hasRunCorrectly(result) && !allParams.contains(NO_RESTORE_PARAMETER) && !DotnetFormatParameters.isWhitespaceRun(allParams)) {
+            restoreCache.save(workingDirectory, DotnetFormatParameters.withoutIncludedPaths(allParams));
+        }
+        return completedResult;
+    }
+
+    private static boolean hasRunCorrectly(DotnetFormatCommandResult result) {
+        return result != null
+                && result.hasExecutedCorrectly()
+                && Arrays.stream(ReportedExitCodes).anyMatch(x -> x == result.getExitCode());
+    }
+
+    /**
+     * Merges the results of chunks: the first failure if one failed, otherwise all changes found.
+     */
+    private static DotnetFormatCommandResult merge(List<DotnetFormatCommandResult> results) {
+        List<DotnetFormatCommandResult> finishedResults = results.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        for (DotnetFormatCommandResult result : finishedResults) {
+            if (!hasRunCorrectly(result)) {
+                return result;
+            }
+        }
+        int exitCode = finishedResults.stream().mapToInt(DotnetFormatCommandResult::getExitCode).max().orElse(0);
+        if (finishedResults.stream().anyMatch(result -> result.getReport() == null)) {
+            return DotnetFormatCommandResult.executedCorrectly(
+                    exitCode,
+                    finishedResults.stream().map(DotnetFormatCommandResult::getMessage).filter(Objects::nonNull).collect(Collectors.joining("\n")));
+        }
+        DotnetFormatReport.Builder builder = new DotnetFormatReport.Builder();
+        int fileCount = 0;
+        int changeCount = 0;
+        Map<String, Integer> diagnosticCounts = new TreeMap<>();
+        for (DotnetFormatCommandResult result : finishedResults) {
+            DotnetFormatReport report = result.getReport();
+            report.getChangesByFile().forEach(builder::file);
+            fileCount += report.getFileCount();
+            changeCount += report.getChangeCount();
+            report.getDiagnosticCounts().forEach((id, count) -> diagnosticCounts.merge(id, count, Integer::sum));
+        }
+        builder.totals(fileCount, changeCount, diagnosticCounts);
+        return DotnetFormatCommandResult.executedCorrectlyWithReport(exitCode, builder.build());
+    }
+
+    /**
+     * Moves the included paths into a response file, which dotnet-format reads as if they were on the command
+     * line, so that long lists stay below the maximum command line length. Paths with whitespace, quotes or a
+     * leading '#' or '@' stay on the command line, as dotnet-format versions split lines of response files differently.
+     */
+    private List<String> withResponseFile(List<String> param, Path directory) {
+        List<String> includedPaths = DotnetFormatParameters.getIncludedPaths(param);
+        if (responseFileThreshold <= 0 || directory == null || includedPaths.size() < responseFileThreshold) {
+            return param;
+        }
+        List<String> listedPaths = new ArrayList<>();
+        List<String> otherPaths = new ArrayList<>();
+        for (String includedPath : includedPaths) {
+            (canBeListed(includedPath) ? listedPaths : otherPaths).add(includedPath);
+        }
+        Path responseFile = directory.resolve(RESPONSE_FILE_NAME);
+        try {
+            Files.write(responseFile, listedPaths, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Failed to write response file, passing included paths on the command line", e);
+            return param;
+        }
+        int includeIndex = param.indexOf(DotnetFormatParameters.INCLUDE_PARAMETER);
+        List<String> allParams = new ArrayList<>(param.subList(0, includeIndex + 1));
+        allParams.add("@" + responseFile);
+        allParams.addAll(otherPaths);
+        allParams.addAll(param.subList(includeIndex + 1 + includedPaths.size(), param.size()));
+        return allParams;
+    }
+
+    private static boolean canBeListed(String path) {
+        return !path.isEmpty()
+                && path.charAt(0) != '#'
+                && path.charAt(0) != '@'
+                && path.chars().noneMatch(c -> Character.isWhitespace(c) || c == '"' || c == '\'');
+    }
+
+    private static ExecutorService createChunkExecutor(int threads) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setName("dotnet-format-chunk-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static String[] buildCommand(List<String> param, Path reportDirectory) {
+        List<String> command = new ArrayList<>();
         if (System.getProperty("os.name").toLowerCase().contains("win")) {
-            shell = "cmd.exe";
-            executeSwitch = "/c";
+            command.addAll(Arrays.asList("cmd.exe", "/c", "dotnet format"));
         } else {
-            shell = "sh";
-            executeSwitch = "-c";
+            // Parameters following the script of "sh -c" only reach it as "$@", the first one being its name
+            command.addAll(Arrays.asList("sh", "-c", "dotnet format \"$@\"", "dotnet-format"));
+        }
+        command.addAll(param);
+        if (reportDirectory != null && !param.contains(REPORT_PARAMETER)) {
+            command.add(REPORT_PARAMETER);
+            command.add(reportDirectory.toString());
         }
-        String[] allParams = Stream.concat(
-                Arrays.stream(new String[]{shell, executeSwitch, "dotnet format"}),
-                param.stream()).toArray(String[]::new);
-        return commandRunner.runCommand(workingDirectory.toFile(), allParams);
+        return command.toArray(new String[0]);
+    }
 
+    /**
+     * Replaces the console output with the parsed report when dotnet-format wrote one.
+     */
+    private DotnetFormatCommandResult readReport(DotnetFormatCommandResult result, Path workingDirectory, Path reportDirectory) {
+        if (!hasRunCorrectly(result) || reportDirectory == null) {
+            return result;
+        }
+        Path reportFilePath = reportDirectory.resolve(REPORT_FILE_NAME);
+        if (!Files.exists(reportFilePath)) {
+            return result;
+        }
+        try {
+            return DotnetFormatCommandResult.executedCorrectlyWithReport(
+                    result.getExitCode(),
+                    reportParser.parse(reportFilePath, workingDirectory));
+        } catch (IOException e) {
+            logger.warn("Failed to read dotnet-format report, keeping its console output", e);
+            return result;
+        }
     }
 
-}
\ No newline at end of file
+    private static Path createReportDirectory() {
+        try {
+            return Files.createTempDirectory("dotnet-format-report");
+        } catch (IOException e) {
+            logger.warn("Failed to create directory for dotnet-format report, only console output will be kept", e);
+            return null;
+        }
+    }
+
+    private static void deleteReportDirectory(Path reportDirectory) {
+        if (reportDirectory != null) {
+            FileUtils.deleteQuietly(reportDirectory.toFile());
+        }
+    }
+}
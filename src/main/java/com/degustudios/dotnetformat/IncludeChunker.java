@@ -0,0 +1,98 @@
+package com.degustudios.dotnetformat;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits the paths passed with --include into chunks for separate dotnet-format runs. Paths of one project stay
+ * in the same chunk where possible, so that each run compiles and analyzes fewer projects; a project with more
+ * paths than fit into a chunk is split on its own.
+ */
+public class IncludeChunker {
+    private static final List<String> PROJECT_EXTENSIONS = Arrays.asList(".csproj", ".vbproj", ".fsproj");
+
+    private IncludeChunker() {
+    }
+
+    /**
+     * @param workingDirectory checkout the paths are relative to, searched for the projects containing them
+     * @return chunks of at most chunkSize paths, in order of their projects
+     */
+    public static List<List<String>> split(Path workingDirectory, List<String> includedPaths, int chunkSize) {
+        Map<Path, Boolean> isProjectDirectory = new HashMap<>();
+        Map<String, List<String>> pathsByProject = new TreeMap<>();
+        for (String includedPath : includedPaths) {
+            pathsByProject
+                    .computeIfAbsent(findProjectDirectory(workingDirectory, includedPath, isProjectDirectory), x -> new ArrayList<>())
+                    .add(includedPath);
+        }
+
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        for (List<String> paths : pathsByProject.values()) {
+            if (!chunk.isEmpty() && chunk.size() + paths.size() > chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+            for (String path : paths) {
+                if (chunk.size() >= chunkSize) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                }
+                chunk.add(path);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the directory of the closest project containing the path relative to the working directory,
+     * or an empty string when no project contains it
+     */
+    private static String findProjectDirectory(Path workingDirectory, String includedPath, Map<Path, Boolean> isProjectDirectory) {
+        Path root = workingDirectory.toAbsolutePath().normalize();
+        Path directory;
+        try {
+            Path path = root.resolve(includedPath.replace('\\', '/')).normalize();
+            directory = Files.isDirectory(path) ? path : path.getParent();
+        } catch (InvalidPathException e) {
+            return "";
+        }
+        for (; directory != null && directory.startsWith(root); directory = directory.getParent()) {
+            if (isProjectDirectory.computeIfAbsent(directory, IncludeChunker::containsProject)) {
+                return root.relativize(directory).toString().replace('\\', '/');
+            }
+        }
+        return "";
+    }
+
+    private static boolean containsProject(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return false;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                if (PROJECT_EXTENSIONS.stream().anyMatch(name::endsWith)) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return false;
+    }
+}
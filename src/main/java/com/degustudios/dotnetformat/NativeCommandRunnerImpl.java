@@ -2,49 +2,202 @@ package com.degustudios.dotnetformat;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import com.degustudios.bitbucket.mergechecks.NativeCommandRunner;
+import com.degustudios.bitbucket.properties.PluginProperties;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs processes without a thread per process: output goes straight to a temporary file, a single reaper thread
+ * notices when processes exit and a small shared pool reads the beginning and the end of their output.
+ * Processes running longer than the timeout are killed together with their child processes.
+ */
 @Component
-public class NativeCommandRunnerImpl implements NativeCommandRunner {
+public class NativeCommandRunnerImpl implements NativeCommandRunner, DisposableBean {
+    private static final long EXIT_POLL_INTERVAL_IN_MS = 100;
+    private static final int OUTPUT_READER_THREADS = 2;
 
     private final Logger logger = LoggerFactory.getLogger(NativeCommandRunnerImpl.class);
+    private final Set<RunningProcess> runningProcesses = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(createThreadFactory("dotnet-format-reaper-"));
+    private final ExecutorService outputReader = Executors.newFixedThreadPool(OUTPUT_READER_THREADS, createThreadFactory("dotnet-format-output-"));
+    private final long timeoutInMs;
+    private final BoundedOutputCapture outputCapture;
+
+    @Autowired
+    public NativeCommandRunnerImpl(PluginProperties pluginProperties) {
+        this(pluginProperties.getRunTimeoutInSeconds(), TimeUnit.SECONDS, pluginProperties.getMaximumOutputSize());
+    }
+
+    /**
+     * @param timeout how long a process may run before it is killed, 0 or less to never kill it
+     * @param maximumOutputSize how many bytes of output are kept, the middle of longer output is left out, 0 or less keeps all of it
+     */
+    public NativeCommandRunnerImpl(long timeout, TimeUnit unit, int maximumOutputSize) {
+        this.timeoutInMs = unit.toMillis(timeout);
+        // The charset matches what the process writes on this platform
+        this.outputCapture = new BoundedOutputCapture(maximumOutputSize, Charset.defaultCharset());
+        reaper.scheduleWithFixedDelay(this::completeExitedProcesses, EXIT_POLL_INTERVAL_IN_MS, EXIT_POLL_INTERVAL_IN_MS, TimeUnit.MILLISECONDS);
+    }
 
     @Override
     public DotnetFormatCommandResult runCommand(File workingDirectory, String... commands) {
-        ProcessBuilder processBuilder = new ProcessBuilder();
+        return runCommand(workingDirectory, Collections.emptyMap(), commands);
+    }
+
+    @Override
+    public DotnetFormatCommandResult runCommand(File workingDirectory, Map<String, String> environment, String... commands) {
+        CompletableFuture<DotnetFormatCommandResult> result = runCommandAsync(workingDirectory, environment, commands);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            logger.error("Process was aborted for: parameters: {} in {}",
+                    String.join(", ", commands), workingDirectory, e);
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return DotnetFormatCommandResult.failed(e);
+        } catch (ExecutionException e) {
+            logger.error("Failed to run command with params: {} Directory: {}",
+                    String.join(", ", commands), workingDirectory, e.getCause());
+            return DotnetFormatCommandResult.failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<DotnetFormatCommandResult> runCommandAsync(File workingDirectory, String... commands) {
+        return runCommandAsync(workingDirectory, Collections.emptyMap(), commands);
+    }
+
+    @Override
+    public CompletableFuture<DotnetFormatCommandResult> runCommandAsync(File workingDirectory, Map<String, String> environment, String... commands) {
+        Path outputFilePath = null;
         Process process;
         try {
-            process = processBuilder
+            outputFilePath = Files.createTempFile("dotnet-format", ".log");
+            ProcessBuilder processBuilder = new ProcessBuilder()
                     .command(commands)
                     .directory(workingDirectory)
-                    .start();
+                    .redirectErrorStream(true)
+                    .redirectOutput(outputFilePath.toFile());
+            processBuilder.environment().putAll(environment);
+            process = processBuilder.start();
         } catch (IOException e) {
             logger.error("IO exception during running command  with params:  {} Directory: {}",
                     String.join(", ", commands), workingDirectory, e);
-            return DotnetFormatCommandResult.failed(e);
+            deleteOutputFile(outputFilePath);
+            return CompletableFuture.completedFuture(DotnetFormatCommandResult.failed(e));
+        }
+
+        RunningProcess runningProcess = new RunningProcess(process, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMs));
+        runningProcesses.add(runningProcess);
+        Path finalOutputFilePath = outputFilePath;
+        CompletableFuture<DotnetFormatCommandResult> result = runningProcess.exitCode
+                .thenApplyAsync(exitCode -> readResult(runningProcess, exitCode, finalOutputFilePath), outputReader);
+        result.whenComplete((x, e) -> {
+            if (result.isCancelled()) {
+                ProcessTreeKiller.kill(process);
+                deleteOutputFile(finalOutputFilePath);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        reaper.shutdownNow();
+        outputReader.shutdownNow();
+        for (RunningProcess runningProcess : runningProcesses) {
+            ProcessTreeKiller.kill(runningProcess.process);
+        }
+    }
+
+    private void completeExitedProcesses() {
+        long now = System.nanoTime();
+        for (RunningProcess runningProcess : runningProcesses) {
+            if (!runningProcess.process.isAlive()) {
+                runningProcesses.remove(runningProcess);
+                runningProcess.exitCode.complete(runningProcess.process.exitValue());
+            } else if (timeoutInMs > 0 && !runningProcess.hasTimedOut && now - runningProcess.deadline > 0) {
+                logger.warn("Process did not finish within {} ms, killing it", timeoutInMs);
+                runningProcess.hasTimedOut = true;
+                try {
+                    ProcessTreeKiller.kill(runningProcess.process);
+                } catch (RuntimeException e) {
+                    // Keep polling the other processes, this one is retried as long as it is alive
+                    logger.error("Failed to kill process", e);
+                    runningProcess.hasTimedOut = false;
+                }
+            }
         }
-        StringBuilder messageBuffer = new StringBuilder();
-        StreamGobbler inputStreamGobbler = new StreamGobbler(process.getInputStream(), messageBuffer::append);
-        StreamGobbler errorStreamGobbler = new StreamGobbler(process.getErrorStream(), messageBuffer::append);
-        Executors.newSingleThreadExecutor().submit(inputStreamGobbler);
-        Executors.newSingleThreadExecutor().submit(errorStreamGobbler);
+    }
 
-        int exitCode;
+    private DotnetFormatCommandResult readResult(RunningProcess runningProcess, int exitCode, Path outputFilePath) {
         try {
-            exitCode = process.waitFor();
-        } catch (InterruptedException e) {
-            logger.error("Process was aborted for: parameters: {} in {}",
-                    String.join(", ", commands), workingDirectory, e);
-            Thread.currentThread().interrupt();
+            String output = outputCapture.read(outputFilePath);
+            if (runningProcess.hasTimedOut) {
+                return DotnetFormatCommandResult.timedOut(
+                        "dotnet-format did not finish within " + TimeUnit.MILLISECONDS.toSeconds(timeoutInMs)
+                                + " seconds and was stopped." + System.lineSeparator() + output);
+            }
+            return DotnetFormatCommandResult.executedCorrectly(exitCode, output);
+        } catch (IOException e) {
+            logger.error("Failed to read output of process from {}", outputFilePath, e);
             return DotnetFormatCommandResult.failed(e);
+        } finally {
+            deleteOutputFile(outputFilePath);
+        }
+    }
+
+    private void deleteOutputFile(Path outputFilePath) {
+        if (outputFilePath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(outputFilePath);
+        } catch (IOException e) {
+            logger.error("Failed to clean up temporary file {}", outputFilePath, e);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = defaultThreadFactory.newThread(runnable);
+            thread.setName(namePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class RunningProcess {
+        private final Process process;
+        private final long deadline;
+        private final CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+        private volatile boolean hasTimedOut;
+
+        private RunningProcess(Process process, long deadline) {
+            this.process = process;
+            this.deadline = deadline;
         }
-        return DotnetFormatCommandResult.executedCorrectly(
-                exitCode,
-                messageBuffer.toString());
     }
 }
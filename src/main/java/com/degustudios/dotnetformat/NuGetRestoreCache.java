@@ -0,0 +1,284 @@
+package com.degustudios.dotnetformat;
+
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.util.Sha256;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lets dotnet-format skip the implicit restore. Packages go to one plugin-owned NUGET_PACKAGES folder, and the
+ * restore outputs in the obj folders of a checkout are kept together under a hash of everything the restore reads:
+ * all project, solution, .props and .targets files, the packages.lock.json files and the NuGet configuration. The
+ * restore of a project also depends on the projects it references and the files they import, so a change to any
+ * of them invalidates the outputs of the whole checkout. Which projects are restored depends on the project or
+ * solution dotnet-format is given, so the parameters of the run are part of the hash as well. When the outputs
+ * are found, they are copied back and dotnet-format can run with --no-restore.
+ */
+@Service
+public class NuGetRestoreCache {
+    private static final Logger logger = LoggerFactory.getLogger(NuGetRestoreCache.class);
+    private static final List<String> PROJECT_EXTENSIONS = Arrays.asList(".csproj", ".vbproj", ".fsproj");
+    private static final List<String> BUILD_FILE_EXTENSIONS = Arrays.asList(".sln", ".props", ".targets");
+    private static final List<String> BUILD_FILE_NAMES = Arrays.asList("packages.lock.json", "nuget.config", "global.json");
+    private static final List<String> SKIPPED_DIRECTORY_NAMES = Arrays.asList("obj", "bin", ".git");
+    private static final String INTERMEDIATE_DIRECTORY_NAME = "obj";
+    private static final String WORKSPACE_TOKEN = "$(DotnetFormatWorkspace)";
+
+    private final Path packagesDirectory;
+    private final Path restoreOutputsDirectory;
+    private final long maximumSize;
+
+    @Autowired
+    public NuGetRestoreCache(PluginProperties pluginProperties) {
+        File nuGetDirectory = pluginProperties.isNuGetCacheEnabled() ? pluginProperties.getNuGetDirectory() : null;
+        this.packagesDirectory = nuGetDirectory == null ? null : nuGetDirectory.toPath().resolve("packages");
+        this.restoreOutputsDirectory = nuGetDirectory == null ? null : nuGetDirectory.toPath().resolve("restore");
+        this.maximumSize = pluginProperties.getNuGetRestoreCacheMaximumSize();
+    }
+
+    /**
+     * @return variables to add to the environment of dotnet-format
+     */
+    public Map<String, String> getEnvironment() {
+        if (packagesDirectory == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.singletonMap("NUGET_PACKAGES", packagesDirectory.toString());
+    }
+
+    /**
+     * Copies cached restore outputs into the obj folders of the projects.
+     *
+     * @param params parameters of the run, without the included paths
+     * @return true when the checkout was restored before with the same build files and parameters, so
+     * dotnet-format may skip restoring
+     */
+    public boolean tryRestore(Path workingDirectory, List<String> params) {
+        if (restoreOutputsDirectory == null) {
+            return false;
+        }
+        try {
+            BuildFiles buildFiles = findBuildFiles(workingDirectory, params);
+            if (buildFiles.projects.isEmpty()) {
+                return false;
+            }
+            Path entryDirectory = restoreOutputsDirectory.resolve(buildFiles.key);
+            if (!Files.isDirectory(entryDirectory)) {
+                return false;
+            }
+            for (Map.Entry<String, Path> project : buildFiles.projects.entrySet()) {
+                Path projectEntryDirectory = entryDirectory.resolve(project.getKey());
+                // Projects the restore did not touch have no outputs
+                if (Files.isDirectory(projectEntryDirectory)) {
+                    copyOutputs(projectEntryDirectory, project.getValue().resolveSibling(INTERMEDIATE_DIRECTORY_NAME), WORKSPACE_TOKEN, getRoot(workingDirectory));
+                }
+            }
+            Files.setLastModifiedTime(entryDirectory, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            logger.warn("Failed to reuse restore outputs in {}, dotnet-format will restore", workingDirectory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Keeps the restore outputs dotnet-format left in the obj folders, replacing outputs kept for the same build
+     * files and parameters, as they were just restored again. Nothing is kept when no project has restore outputs.
+     *
+     * @param params parameters of the run, without the included paths
+     */
+    public void save(Path workingDirectory, List<String> params) {
+        if (restoreOutputsDirectory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(restoreOutputsDirectory);
+            BuildFiles buildFiles = findBuildFiles(workingDirectory, params);
+            Path entryDirectory = restoreOutputsDirectory.resolve(buildFiles.key);
+            Path temporaryDirectory = Files.createTempDirectory(restoreOutputsDirectory, ".entry");
+            try {
+                boolean hasOutputs = false;
+                for (Map.Entry<String, Path> project : buildFiles.projects.entrySet()) {
+                    Path intermediateDirectory = project.getValue().resolveSibling(INTERMEDIATE_DIRECTORY_NAME);
+                    if (Files.isDirectory(intermediateDirectory)) {
+                        hasOutputs |= copyOutputs(intermediateDirectory, temporaryDirectory.resolve(project.getKey()), getRoot(workingDirectory), WORKSPACE_TOKEN);
+                    }
+                }
+                if (hasOutputs) {
+                    replace(entryDirectory, temporaryDirectory);
+                }
+            } finally {
+                FileUtils.deleteQuietly(temporaryDirectory.toFile());
+            }
+            evictLeastRecentlyUsed();
+        } catch (IOException e) {
+            logger.warn("Failed to keep restore outputs of {}", workingDirectory, e);
+        }
+    }
+
+    private void replace(Path entryDirectory, Path temporaryDirectory) throws IOException {
+        if (Files.isDirectory(entryDirectory)) {
+            Path staleDirectory = Files.createTempDirectory(restoreOutputsDirectory, ".stale");
+            try {
+                Files.move(entryDirectory, staleDirectory.resolve("entry"));
+            } catch (IOException e) {
+                // Replaced or evicted by a concurrent run
+                logger.debug("Failed to move restore outputs {} aside", entryDirectory, e);
+            } finally {
+                FileUtils.deleteQuietly(staleDirectory.toFile());
+            }
+        }
+        try {
+            Files.move(temporaryDirectory, entryDirectory);
+        } catch (IOException e) {
+            if (!Files.isDirectory(entryDirectory)) {
+                throw e;
+            }
+            // Saved by a concurrent run
+        }
+    }
+
+    private static String getRoot(Path workingDirectory) {
+        return workingDirectory.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Restore outputs refer to the checkout by its absolute path, which differs between runs, so it is
+     * swapped for a token while they are cached.
+     *
+     * @return true when there were restore outputs to copy
+     */
+    private static boolean copyOutputs(Path sourceDirectory, Path targetDirectory, String from, String to) throws IOException {
+        boolean hasOutputs = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(sourceDirectory, Files::isRegularFile)) {
+            for (Path file : files) {
+                if (!isRestoreOutput(file.getFileName().toString())) {
+                    continue;
+                }
+                if (!hasOutputs) {
+                    Files.createDirectories(targetDirectory);
+                    hasOutputs = true;
+                }
+                String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8)
+                        .replace(escapeForJson(from), escapeForJson(to))
+                        .replace(from, to);
+                Path targetFile = targetDirectory.resolve(file.getFileName().toString());
+                Path temporaryFile = Files.createTempFile(targetDirectory, ".restore", ".tmp");
+                Files.write(temporaryFile, content.getBytes(StandardCharsets.UTF_8));
+                Files.move(temporaryFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return hasOutputs;
+    }
+
+    private static String escapeForJson(String value) {
+        return value.replace("\\", "\\\\");
+    }
+
+    private static boolean isRestoreOutput(String fileName) {
+        return fileName.equals("project.assets.json")
+                || fileName.equals("project.nuget.cache")
+                || fileName.endsWith(".nuget.g.props")
+                || fileName.endsWith(".nuget.g.targets")
+                || fileName.endsWith(".nuget.dgspec.json");
+    }
+
+    private static BuildFiles findBuildFiles(Path workingDirectory, List<String> params) throws IOException {
+        Map<String, Path> projects = new TreeMap<>();
+        Map<String, Path> buildFiles = new TreeMap<>();
+        Path root = workingDirectory.toAbsolutePath().normalize();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                return !directory.equals(root) && SKIPPED_DIRECTORY_NAMES.contains(directory.getFileName().toString().toLowerCase(Locale.ROOT))
+                        ? FileVisitResult.SKIP_SUBTREE
+                        : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                if (PROJECT_EXTENSIONS.stream().anyMatch(fileName::endsWith)) {
+                    projects.put(relativize(root, file), file);
+                    buildFiles.put(relativize(root, file), file);
+                } else if (BUILD_FILE_EXTENSIONS.stream().anyMatch(fileName::endsWith) || BUILD_FILE_NAMES.contains(fileName)) {
+                    buildFiles.put(relativize(root, file), file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Sha256 digest = Sha256.create();
+        for (Map.Entry<String, Path> buildFile : buildFiles.entrySet()) {
+            digest.updateField(buildFile.getKey()).updateField(Files.readAllBytes(buildFile.getValue()));
+        }
+        for (String param : params) {
+            digest.updateField(param);
+        }
+        return new BuildFiles(projects, digest.digestToHex());
+    }
+
+    private static String relativize(Path root, Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static class BuildFiles {
+        /**
+         * Project files by their path relative to the checkout
+         */
+        private final Map<String, Path> projects;
+        private final String key;
+
+        private BuildFiles(Map<String, Path> projects, String key) {
+            this.projects = projects;
+            this.key = key;
+        }
+    }
+
+    private void evictLeastRecentlyUsed() throws IOException {
+        if (maximumSize <= 0) {
+            return;
+        }
+        Map<Path, Long> sizes = new HashMap<>();
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(restoreOutputsDirectory, x -> Files.isDirectory(x) && !x.getFileName().toString().startsWith("."))) {
+            for (Path directory : directories) {
+                entries.add(directory);
+                sizes.put(directory, FileUtils.sizeOfDirectory(directory.toFile()));
+            }
+        }
+        long totalSize = sizes.values().stream().mapToLong(Long::longValue).sum();
+        entries.sort(Comparator.comparingLong(x -> x.toFile().lastModified()));
+        for (Path entry : entries) {
+            if (totalSize <= maximumSize) {
+                break;
+            }
+            FileUtils.deleteQuietly(entry.toFile());
+            totalSize -= sizes.get(entry);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.degustudios.dotnetformat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Kills a process together with everything it started. "sh -c dotnet format" spawns dotnet, which spawns MSBuild
+ * nodes, and Process.destroyForcibly() alone would leave those running.
+ */
+final class ProcessTreeKiller {
+    private static final Logger logger = LoggerFactory.getLogger(ProcessTreeKiller.class);
+    private static final long PS_TIMEOUT_IN_SECONDS = 10;
+
+    private ProcessTreeKiller() {
+    }
+
+    static void kill(Process process) {
+        if (!tryKillWithProcessHandles(process)) {
+            tryKillWithPs(process);
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * ProcessHandle is only available from Java 9, so it is looked up reflectively.
+     */
+    private static boolean tryKillWithProcessHandles(Process process) {
+        try {
+            Class<?> processHandleClass = Class.forName("java.lang.ProcessHandle");
+            Method destroyForcibly = processHandleClass.getMethod("destroyForcibly");
+            Object processHandle = Process.class.getMethod("toHandle").invoke(process);
+            // Collect the descendants first, killing the parent would detach them from the tree
+            List<?> descendants = ((Stream<?>) processHandleClass.getMethod("descendants").invoke(processHandle))
+                    .collect(Collectors.toList());
+            destroyForcibly.invoke(processHandle);
+            for (Object descendant : descendants) {
+                destroyForcibly.invoke(descendant);
+            }
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static void tryKillWithPs(Process process) {
+        if (System.getProperty("os.name").toLowerCase().contains("win")) {
+            return;
+        }
+        try {
+            long pid = getPid(process);
+            List<String> command = new ArrayList<>();
+            command.add("kill");
+            command.add("-KILL");
+            command.add(Long.toString(pid));
+            for (Long descendant : findDescendants(pid)) {
+                command.add(Long.toString(descendant));
+            }
+            new ProcessBuilder(command).start().waitFor(PS_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (IOException | ReflectiveOperationException | RuntimeException e) {
+            logger.warn("Failed to kill child processes, only the main process will be killed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long getPid(Process process) throws ReflectiveOperationException {
+        Field pidField = process.getClass().getDeclaredField("pid");
+        pidField.setAccessible(true);
+        return pidField.getLong(process);
+    }
+
+    private static List<Long> findDescendants(long pid) throws IOException, InterruptedException {
+        Map<Long, List<Long>> children = new HashMap<>();
+        Process ps = new ProcessBuilder("ps", "-A", "-o", "pid=", "-o", "ppid=").redirectErrorStream(true).start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ps.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.trim().split("\\s+");
+                if (columns.length == 2) {
+                    try {
+                        children.computeIfAbsent(Long.parseLong(columns[1]), x -> new ArrayList<>()).add(Long.parseLong(columns[0]));
+                    } catch (NumberFormatException e) {
+                        // Not a process line
+                    }
+                }
+            }
+        }
+        ps.waitFor(PS_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+
+        List<Long> descendants = new ArrayList<>();
+        Deque<Long> toVisit = new ArrayDeque<>(children.getOrDefault(pid, new ArrayList<>()));
+        while (!toVisit.isEmpty()) {
+            Long descendant = toVisit.pop();
+            descendants.add(descendant);
+            toVisit.addAll(children.getOrDefault(descendant, new ArrayList<>()));
+        }
+        return descendants;
+    }
+}
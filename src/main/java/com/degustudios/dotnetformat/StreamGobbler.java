@@ -1,23 +0,0 @@
-package com.degustudios.dotnetformat;
-
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.function.Consumer;
-
-class StreamGobbler implements Runnable {
-    private final InputStream inputStream;
-    private final Consumer<String> consumer;
-
-    public StreamGobbler(InputStream inputStream, Consumer<String> consumer) {
-        this.inputStream = inputStream;
-        this.consumer = consumer;
-    }
-
-    @Override
-    public void run() {
-        new BufferedReader(new InputStreamReader(inputStream))
-                .lines()
-                .forEach(consumer);
-    }
-}
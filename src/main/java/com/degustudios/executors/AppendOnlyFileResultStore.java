@@ -0,0 +1,277 @@
+package com.degustudios.executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Result store kept in a single append-only log file with an in-memory index of record locations.
+ * Each record is: key length, value length, key, value and a CRC32 of key and value.
+ * A torn or corrupted tail (e.g. after a crash) is truncated when the log is opened.
+ * When the log grows over the size cap, or is mostly made of overwritten records,
+ * it is rewritten with only the newest live records.
+ */
+public class AppendOnlyFileResultStore<R> implements ResultStore<R> {
+    private static final Logger logger = LoggerFactory.getLogger(AppendOnlyFileResultStore.class);
+    private static final String LOG_FILE_NAME = "results.log";
+    private static final String COMPACTED_LOG_FILE_NAME = "results.log.compacted";
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RECORD_FOOTER_SIZE = Long.BYTES;
+    private static final long MINIMUM_SIZE_FOR_GARBAGE_COMPACTION = 1024L * 1024;
+
+    private final Path directory;
+    private final Path logFilePath;
+    private final ResultSerializer<R> serializer;
+    private final long maximumSizeInBytes;
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>();
+    private FileChannel channel;
+    private long liveBytes;
+
+    public AppendOnlyFileResultStore(Path directory, ResultSerializer<R> serializer, long maximumSizeInBytes) throws IOException {
+        this.directory = directory;
+        this.logFilePath = directory.resolve(LOG_FILE_NAME);
+        this.serializer = serializer;
+        this.maximumSizeInBytes = maximumSizeInBytes;
+
+        Files.createDirectories(directory);
+        long validLength = load();
+        channel = openLogFile();
+        if (channel.size() > validLength) {
+            logger.warn("Truncating corrupted tail of {} at {} bytes", logFilePath, validLength);
+            channel.truncate(validLength);
+        }
+    }
+
+    @Override
+    public synchronized R get(String key) {
+        Location location = index.get(key);
+        if (location == null || channel == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(location.valueLength);
+            readFully(location.getValueOffset(), buffer);
+            return serializer.deserialize(buffer.array());
+        } catch (IOException e) {
+            logger.warn("Failed to read stored result for {}", key, e);
+            removeFromIndex(key);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, R result) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = serializer.serialize(result);
+            ByteBuffer record = encode(keyBytes, valueBytes);
+            long offset = channel.size();
+            writeFully(offset, record);
+
+            removeFromIndex(key);
+            Location location = new Location(offset, keyBytes.length, valueBytes.length);
+            index.put(key, location);
+            liveBytes += location.getRecordLength();
+            compactIfNeeded();
+        } catch (IOException e) {
+            logger.warn("Failed to store result for {}", key, e);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close {}", logFilePath, e);
+        }
+        channel = null;
+    }
+
+    private long load() throws IOException {
+        if (!Files.exists(logFilePath)) {
+            return 0;
+        }
+        long fileSize = Files.size(logFilePath);
+        long position = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFilePath)))) {
+            while (fileSize - position >= RECORD_HEADER_SIZE + RECORD_FOOTER_SIZE) {
+                int keyLength = input.readInt();
+                int valueLength = input.readInt();
+                long recordLength = (long) RECORD_HEADER_SIZE + keyLength + valueLength + RECORD_FOOTER_SIZE;
+                if (keyLength < 0 || valueLength < 0 || position + recordLength > fileSize) {
+                    break;
+                }
+                byte[] keyBytes = new byte[keyLength];
+                byte[] valueBytes = new byte[valueLength];
+                input.readFully(keyBytes);
+                input.readFully(valueBytes);
+                if (input.readLong() != checksum(keyBytes, valueBytes)) {
+                    break;
+                }
+
+                String key = new String(keyBytes, StandardCharsets.UTF_8);
+                removeFromIndex(key);
+                Location location = new Location(position, keyLength, valueLength);
+                index.put(key, location);
+                liveBytes += recordLength;
+                position += recordLength;
+            }
+        } catch (EOFException e) {
+            logger.warn("Unexpected end of {}", logFilePath, e);
+        }
+        return position;
+    }
+
+    private void compactIfNeeded() throws IOException {
+        long fileSize = channel.size();
+        boolean isOverCapacity = fileSize > maximumSizeInBytes;
+        boolean isMostlyGarbage = fileSize > MINIMUM_SIZE_FOR_GARBAGE_COMPACTION && fileSize > 2 * liveBytes;
+        if (!isOverCapacity && !isMostlyGarbage) {
+            return;
+        }
+
+        // Leave some headroom so that the next few writes do not trigger another compaction
+        long targetSize = maximumSizeInBytes / 4 * 3;
+        Iterator<Map.Entry<String, Location>> iterator = index.entrySet().iterator();
+        while (iterator.hasNext() && liveBytes > targetSize) {
+            liveBytes -= iterator.next().getValue().getRecordLength();
+            iterator.remove();
+        }
+        compact();
+    }
+
+    private void compact() throws IOException {
+        Path compactedLogFilePath = directory.resolve(COMPACTED_LOG_FILE_NAME);
+        LinkedHashMap<String, Location> compactedIndex = new LinkedHashMap<>();
+        try (FileChannel target = FileChannel.open(compactedLogFilePath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                transferFully(location.offset, location.getRecordLength(), target);
+                compactedIndex.put(entry.getKey(), new Location(position, location.keyLength, location.valueLength));
+                position += location.getRecordLength();
+            }
+            target.force(true);
+        }
+
+        channel.close();
+        channel = null;
+        try {
+            Files.move(compactedLogFilePath, logFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            index.clear();
+            index.putAll(compactedIndex);
+        } catch (IOException e) {
+            // The original log is still in place and the index still points into it
+            try {
+                Files.deleteIfExists(compactedLogFilePath);
+            } catch (IOException deleteException) {
+                e.addSuppressed(deleteException);
+            }
+            throw e;
+        } finally {
+            // Without a channel the store stays disabled until the next restart
+            channel = openLogFile();
+        }
+    }
+
+    private FileChannel openLogFile() throws IOException {
+        return FileChannel.open(logFilePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void removeFromIndex(String key) {
+        Location location = index.remove(key);
+        if (location != null) {
+            liveBytes -= location.getRecordLength();
+        }
+    }
+
+    private void readFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Stored result is truncated");
+            }
+        }
+    }
+
+    private void writeFully(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void transferFully(long position, long count, FileChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < count) {
+            transferred += channel.transferTo(position + transferred, count - transferred, target);
+        }
+    }
+
+    private static ByteBuffer encode(byte[] keyBytes, byte[] valueBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length + RECORD_FOOTER_SIZE);
+        buffer.putInt(keyBytes.length);
+        buffer.putInt(valueBytes.length);
+        buffer.put(keyBytes);
+        buffer.put(valueBytes);
+        buffer.putLong(checksum(keyBytes, valueBytes));
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long checksum(byte[] keyBytes, byte[] valueBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(valueBytes);
+        return crc.getValue();
+    }
+
+    private static class Location {
+        private final long offset;
+        private final int keyLength;
+        private final int valueLength;
+
+        private Location(long offset, int keyLength, int valueLength) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private long getValueOffset() {
+            return offset + RECORD_HEADER_SIZE + keyLength;
+        }
+
+        private long getRecordLength() {
+            return (long) RECORD_HEADER_SIZE + keyLength + valueLength + RECORD_FOOTER_SIZE;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.degustudios.executors;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Least-recently-used cache of completed results, bounded by entry count and total weight,
+ * with optional expiry after write and after access. Limits lower than or equal to zero are ignored.
+ */
+public class BoundedResultCache<K, V> {
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maximumEntries;
+    private final long maximumWeight;
+    private final long expireAfterWriteInMillis;
+    private final long expireAfterAccessInMillis;
+    private final Function<V, Integer> weighFunc;
+    private final LongSupplier clock;
+    private long totalWeight;
+
+    public BoundedResultCache(IdempotentExecutorSettings settings, Function<V, Integer> weighFunc) {
+        this(settings, weighFunc, System::currentTimeMillis);
+    }
+
+    public BoundedResultCache(IdempotentExecutorSettings settings, Function<V, Integer> weighFunc, LongSupplier clock) {
+        this.maximumEntries = settings.getMaximumCachedResults();
+        this.maximumWeight = settings.getMaximumCachedResultsWeight();
+        this.expireAfterWriteInMillis = settings.getExpireAfterWriteInMillis();
+        this.expireAfterAccessInMillis = settings.getExpireAfterAccessInMillis();
+        this.weighFunc = weighFunc;
+        this.clock = clock;
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (isExpired(entry, now)) {
+            remove(key);
+            return null;
+        }
+        entry.accessedAt = now;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        int weight = Math.max(0, weighFunc.apply(value));
+        remove(key);
+        if (maximumWeight > 0 && weight > maximumWeight) {
+            return;
+        }
+
+        long now = clock.getAsLong();
+        entries.put(key, new Entry<>(value, weight, now));
+        totalWeight += weight;
+        evictExpired(now);
+        evictLeastRecentlyUsed();
+    }
+
+    public synchronized void remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry != null) {
+            totalWeight -= entry.weight;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next().getValue();
+            if (isExpired(entry, now)) {
+                totalWeight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext() && isOverLimit()) {
+            totalWeight -= iterator.next().getValue().weight;
+            iterator.remove();
+        }
+    }
+
+    private boolean isOverLimit() {
+        return (maximumEntries > 0 && entries.size() > maximumEntries)
+                || (maximumWeight > 0 && totalWeight > maximumWeight);
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return (expireAfterWriteInMillis > 0 && now - entry.writtenAt >= expireAfterWriteInMillis)
+                || (expireAfterAccessInMillis > 0 && now - entry.accessedAt >= expireAfterAccessInMillis);
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+        private final long writtenAt;
+        private long accessedAt;
+
+        private Entry(V value, int weight, long now) {
+            this.value = value;
+            this.weight = weight;
+            this.writtenAt = now;
+            this.accessedAt = now;
+        }
+    }
+}
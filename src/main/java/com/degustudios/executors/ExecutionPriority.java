@@ -0,0 +1,19 @@
+package com.degustudios.executors;
+
+/**
+ * Order in which queued executions are started, most urgent first.
+ */
+public enum ExecutionPriority {
+    /**
+     * Someone is waiting for the result, such as a merge check.
+     */
+    INTERACTIVE,
+    /**
+     * Speculative or bulk work that nobody waits for yet.
+     */
+    BACKGROUND;
+
+    public boolean isMoreUrgentThan(ExecutionPriority other) {
+        return compareTo(other) < 0;
+    }
+}
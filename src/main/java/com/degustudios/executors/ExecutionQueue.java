@@ -0,0 +1,175 @@
+package com.degustudios.executors;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Executions waiting for a worker, handed out by priority. Within a priority, groups take turns in round-robin
+ * order so that one group queueing many executions cannot starve the others, and each group's executions start
+ * in order of arrival. A group may also be limited in how many of its executions run at the same time; it only
+ * goes beyond that limit when no other group has anything queued.
+ * A queued execution can be promoted without losing its place among those that arrived after it.
+ */
+class ExecutionQueue<E> {
+    private final Map<ExecutionPriority, LinkedHashMap<String, TreeSet<Entry<E>>>> groupsByPriority = new EnumMap<>(ExecutionPriority.class);
+    private final Map<E, Entry<E>> entriesByElement = new HashMap<>();
+    private final Map<String, Integer> runningCountByGroup = new HashMap<>();
+    private final int maximumQueued;
+    private final int maximumRunning;
+    private final int maximumRunningPerGroup;
+    private int runningCount;
+    private long nextSequence;
+
+    /**
+     * @param maximumRunningPerGroup executions of a group that may run while other groups wait, 0 for no limit
+     */
+    ExecutionQueue(int maximumQueued, int maximumRunning, int maximumRunningPerGroup) {
+        this.maximumQueued = maximumQueued;
+        this.maximumRunning = maximumRunning;
+        this.maximumRunningPerGroup = maximumRunningPerGroup;
+        for (ExecutionPriority priority : ExecutionPriority.values()) {
+            groupsByPriority.put(priority, new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Idle workers take executions straight away, so only the others count against the maximum.
+     *
+     * @return false when the queue is full
+     */
+    synchronized boolean offer(E element, String group, ExecutionPriority priority) {
+        int idleWorkers = Math.max(0, maximumRunning - runningCount);
+        if (entriesByElement.size() >= maximumQueued + idleWorkers || entriesByElement.containsKey(element)) {
+            return false;
+        }
+        add(new Entry<>(element, group, priority, nextSequence++));
+        return true;
+    }
+
+    /**
+     * Takes the next element and counts it as running until {@link #finish(String)} is called for its group.
+     *
+     * @return the next element, or null when the queue is empty
+     */
+    synchronized E poll() {
+        for (LinkedHashMap<String, TreeSet<Entry<E>>> groups : groupsByPriority.values()) {
+            if (groups.isEmpty()) {
+                continue;
+            }
+            String group = selectGroup(groups);
+            TreeSet<Entry<E>> entries = groups.remove(group);
+            Entry<E> entry = entries.pollFirst();
+            if (!entries.isEmpty()) {
+                // Back to the end of the round
+                groups.put(group, entries);
+            }
+            entriesByElement.remove(entry.element);
+            runningCount++;
+            runningCountByGroup.merge(group, 1, Integer::sum);
+            return entry.element;
+        }
+        return null;
+    }
+
+    synchronized void finish(String group) {
+        runningCount--;
+        runningCountByGroup.computeIfPresent(group, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Moves a queued element up to the given priority, lower priorities are ignored.
+     */
+    synchronized void promote(E element, ExecutionPriority priority) {
+        Entry<E> entry = entriesByElement.get(element);
+        if (entry == null || !priority.isMoreUrgentThan(entry.priority)) {
+            return;
+        }
+        removeEntry(entry);
+        add(new Entry<>(element, entry.group, priority, entry.sequence));
+    }
+
+    synchronized boolean remove(E element) {
+        Entry<E> entry = entriesByElement.get(element);
+        if (entry == null) {
+            return false;
+        }
+        removeEntry(entry);
+        return true;
+    }
+
+    synchronized int size() {
+        return entriesByElement.size();
+    }
+
+    synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    synchronized Map<String, Integer> getQueuedCountByGroup() {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (Entry<E> entry : entriesByElement.values()) {
+            counts.merge(entry.group, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    synchronized Map<String, Integer> getRunningCountByGroup() {
+        return new TreeMap<>(runningCountByGroup);
+    }
+
+    /**
+     * @return the first group in the round that is below its running limit, or the first group when none is
+     * so that workers are never left idle
+     */
+    private String selectGroup(LinkedHashMap<String, TreeSet<Entry<E>>> groups) {
+        Iterator<String> iterator = groups.keySet().iterator();
+        String first = iterator.next();
+        if (maximumRunningPerGroup <= 0) {
+            return first;
+        }
+        for (String group = first; ; group = iterator.next()) {
+            if (runningCountByGroup.getOrDefault(group, 0) < maximumRunningPerGroup) {
+                return group;
+            }
+            if (!iterator.hasNext()) {
+                return first;
+            }
+        }
+    }
+
+    private void add(Entry<E> entry) {
+        groupsByPriority.get(entry.priority)
+                .computeIfAbsent(entry.group, x -> new TreeSet<>((a, b) -> Long.compare(a.sequence, b.sequence)))
+                .add(entry);
+        entriesByElement.put(entry.element, entry);
+    }
+
+    private void removeEntry(Entry<E> entry) {
+        entriesByElement.remove(entry.element);
+        LinkedHashMap<String, TreeSet<Entry<E>>> groups = groupsByPriority.get(entry.priority);
+        TreeSet<Entry<E>> entries = groups.get(entry.group);
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+            groups.remove(entry.group);
+        }
+    }
+
+    private static class Entry<E> {
+        private final E element;
+        private final String group;
+        private final ExecutionPriority priority;
+        private final long sequence;
+
+        private Entry(E element, String group, ExecutionPriority priority, long sequence) {
+            this.element = element;
+            this.group = group;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -4,37 +4,189 @@ import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.apache.commons.lang3.concurrent.LazyInitializer;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.function.Supplier;
 
 public class IdempotentExecutor<T,R> {
-    private final ConcurrentHashMap<String, LazyInitializer<Future<R>>> cache = new ConcurrentHashMap<>();
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ConcurrentHashMap<String, ScheduledTask> inFlight = new ConcurrentHashMap<>();
+    private final ExecutionQueue<ScheduledTask> queue;
+    private final BoundedResultCache<String, R> results;
+    private final ResultStore<R> resultStore;
+    private final ReplicatedResultCache<R> replicatedResultCache;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService scheduler;
+    private final long replicatedResultPollIntervalInMillis;
+    private final long claimRenewalIntervalInMillis;
     private final BiFunction<T, List<String>, R> executeFunc;
     private final BiFunction<T, List<String>, String> mapToKeyFunc;
+    private final BiFunction<T, List<String>, String> mapToGroupFunc;
     private final Function<R, Boolean> shouldCacheFunc;
 
     public IdempotentExecutor(BiFunction<T, List<String>, R> executeFunc, BiFunction<T, List<String>, String> mapToKeyFunc, Function<R, Boolean> shouldCacheFunc) {
+        this(executeFunc, mapToKeyFunc, shouldCacheFunc, result -> 1, ResultStore.none(), IdempotentExecutorSettings.defaults());
+    }
+
+    public IdempotentExecutor(
+            BiFunction<T, List<String>, R> executeFunc,
+            BiFunction<T, List<String>, String> mapToKeyFunc,
+            Function<R, Boolean> shouldCacheFunc,
+            Function<R, Integer> weighFunc,
+            ResultStore<R> resultStore,
+            IdempotentExecutorSettings settings) {
+        this(executeFunc, mapToKeyFunc, shouldCacheFunc, weighFunc, resultStore, ReplicatedResultCache.none(), settings);
+    }
+
+    public IdempotentExecutor(
+            BiFunction<T, List<String>, R> executeFunc,
+            BiFunction<T, List<String>, String> mapToKeyFunc,
+            Function<R, Boolean> shouldCacheFunc,
+            Function<R, Integer> weighFunc,
+            ResultStore<R> resultStore,
+            ReplicatedResultCache<R> replicatedResultCache,
+            IdempotentExecutorSettings settings) {
+        this(executeFunc, mapToKeyFunc, (x, y) -> "", shouldCacheFunc, weighFunc, resultStore, replicatedResultCache, settings);
+    }
+
+    /**
+     * @param mapToGroupFunc groups that take turns when executions are queued, such as the repository
+     */
+    public IdempotentExecutor(
+            BiFunction<T, List<String>, R> executeFunc,
+            BiFunction<T, List<String>, String> mapToKeyFunc,
+            BiFunction<T, List<String>, String> mapToGroupFunc,
+            Function<R, Boolean> shouldCacheFunc,
+            Function<R, Integer> weighFunc,
+            ResultStore<R> resultStore,
+            ReplicatedResultCache<R> replicatedResultCache,
+            IdempotentExecutorSettings settings) {
         this.executeFunc = executeFunc;
         this.mapToKeyFunc = mapToKeyFunc;
+        this.mapToGroupFunc = mapToGroupFunc;
         this.shouldCacheFunc = shouldCacheFunc;
+        this.results = new BoundedResultCache<>(settings, weighFunc);
+        this.resultStore = resultStore;
+        this.replicatedResultCache = replicatedResultCache;
+        this.replicatedResultPollIntervalInMillis = Math.max(1, settings.getReplicatedResultPollIntervalInMillis());
+        this.claimRenewalIntervalInMillis = Math.max(1, settings.getClaimRenewalIntervalInMillis());
+        int maximumConcurrentExecutions = Math.max(1, settings.getMaximumConcurrentExecutions());
+        this.queue = new ExecutionQueue<>(
+                Math.max(1, settings.getMaximumQueuedExecutions()),
+                maximumConcurrentExecutions,
+                Math.max(0, settings.getMaximumConcurrentExecutionsPerGroup()));
+        // Workers take the most urgent execution from the queue when they start, not the one they were started for,
+        // so the executor's own queue holds one wake-up per queued execution and needs no bound of its own
+        this.executor = new ThreadPoolExecutor(
+                maximumConcurrentExecutions,
+                maximumConcurrentExecutions,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                createThreadFactory("dotnet-format-worker-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        // Waiting for other nodes and renewing claims never takes a worker slot
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(createThreadFactory("dotnet-format-scheduler-"));
     }
 
+    /**
+     * Executes with {@link ExecutionPriority#INTERACTIVE} priority.
+     *
+     * @throws RejectedExecutionException when the execution is not cached, not in flight
+     * and the queue of pending executions is full
+     */
     public Future<R> execute(T param1, List<String> param2) throws ConcurrentException {
-        LazyInitializer<Future<R>> lazyTask = getEarliestScheduledLazyTaskFor(param1, param2);
-        return lazyTask.get();
+        return execute(param1, param2, ExecutionPriority.INTERACTIVE);
+    }
+
+    /**
+     * Queued executions start in order of priority. When the same parameters are already queued with a lower
+     * priority, that execution is promoted instead of queueing another one.
+     *
+     * @throws RejectedExecutionException when the execution is not cached, not in flight
+     * and the queue of pending executions is full
+     */
+    public Future<R> execute(T param1, List<String> param2, ExecutionPriority priority) throws ConcurrentException {
+        String key = mapToKeyFunc.apply(param1, param2);
+        R cachedResult = getCachedResult(key);
+        if (cachedResult != null) {
+            return CompletableFuture.completedFuture(cachedResult);
+        }
+        ScheduledTask task = getEarliestScheduledLazyTaskFor(key, param1, param2, priority);
+        Future<R> future = task.get();
+        task.promote(priority);
+        return future;
+    }
+
+    public int getCachedResultsCount() {
+        return results.size();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public int getRunningCount() {
+        return queue.getRunningCount();
+    }
+
+    public Map<String, Integer> getQueuedCountByGroup() {
+        return queue.getQueuedCountByGroup();
+    }
+
+    public Map<String, Integer> getRunningCountByGroup() {
+        return queue.getRunningCountByGroup();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = defaultThreadFactory.newThread(runnable);
+            thread.setName(namePrefix + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private R getCachedResult(String key) {
+        R cachedResult = results.get(key);
+        if (cachedResult == null) {
+            cachedResult = resultStore.get(key);
+            if (cachedResult != null) {
+                results.put(key, cachedResult);
+            }
+        }
+        if (cachedResult == null) {
+            cachedResult = replicatedResultCache.get(key);
+            if (cachedResult != null) {
+                results.put(key, cachedResult);
+                resultStore.put(key, cachedResult);
+            }
+        }
+        return cachedResult;
     }
 
-    private LazyInitializer<Future<R>> getEarliestScheduledLazyTaskFor(T param1, List<String> param2) {
-        LazyInitializer<Future<R>> justScheduledLazyTask = wrapWithLazy((() -> scheduleForExecution(param1, param2)));
-        LazyInitializer<Future<R>> earlierScheduledLazyTask = cache.putIfAbsent(
-                mapToKeyFunc.apply(param1, param2),
-                justScheduledLazyTask);
+    private ScheduledTask getEarliestScheduledLazyTaskFor(String key, T param1, List<String> param2, ExecutionPriority priority) {
+        ScheduledTask justScheduledLazyTask = new ScheduledTask(key, mapToGroupFunc.apply(param1, param2), param1, param2, priority);
+        ScheduledTask earlierScheduledLazyTask = inFlight.putIfAbsent(key, justScheduledLazyTask);
 
         if (earlierScheduledLazyTask != null) {
             return earlierScheduledLazyTask;
@@ -43,23 +195,88 @@ public class IdempotentExecutor<T,R> {
         }
     }
 
-    private LazyInitializer<Future<R>> wrapWithLazy(Supplier<Future<R>> supplier) {
-        return new LazyInitializer<Future<R>>() {
-            @Override
-            protected Future<R> initialize() {
-                return supplier.get();
+    /**
+     * Computes the result on this node when it wins the cluster-wide claim for the key,
+     * otherwise waits for the node that owns the claim to publish it.
+     */
+    private void executeOrWaitForOtherNode(ScheduledTask task, CompletableFuture<R> future) {
+        if (replicatedResultCache.tryClaim(task.key)) {
+            scheduleForExecution(task, future);
+        } else {
+            scheduler.schedule(() -> pollReplicatedResult(task, future), replicatedResultPollIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void pollReplicatedResult(ScheduledTask task, CompletableFuture<R> future) {
+        try {
+            R cachedResult = getCachedResult(task.key);
+            if (cachedResult != null) {
+                inFlight.remove(task.key, task);
+                future.complete(cachedResult);
+            } else {
+                // The owner may have released its claim without a cacheable result or stopped renewing it
+                executeOrWaitForOtherNode(task, future);
             }
-        };
+        } catch (RuntimeException e) {
+            inFlight.remove(task.key, task);
+            future.completeExceptionally(e);
+        }
     }
 
-    private Future<R> scheduleForExecution(T param1, List<String> param2) {
-        return executor.submit(() -> {
-            R result = executeFunc.apply(param1, param2);
-            if (!Boolean.TRUE.equals(shouldCacheFunc.apply(result))) {
-                cache.remove(mapToKeyFunc.apply(param1, param2));
+    private void scheduleForExecution(ScheduledTask task, CompletableFuture<R> future) {
+        task.future = future;
+        task.claimRenewal = scheduler.scheduleAtFixedRate(
+                () -> replicatedResultCache.tryClaim(task.key),
+                claimRenewalIntervalInMillis,
+                claimRenewalIntervalInMillis,
+                TimeUnit.MILLISECONDS);
+        try {
+            if (!queue.offer(task, task.group, task.priority)) {
+                throw new RejectedExecutionException("Queue of pending executions is full");
+            }
+            // Catches a promotion that happened while the task was being queued
+            queue.promote(task, task.priority);
+            try {
+                executor.execute(this::executeMostUrgent);
+            } catch (RejectedExecutionException e) {
+                queue.remove(task);
+                throw e;
+            }
+        } catch (RejectedExecutionException e) {
+            task.claimRenewal.cancel(false);
+            replicatedResultCache.release(task.key);
+            throw e;
+        }
+    }
+
+    private void executeMostUrgent() {
+        ScheduledTask task = queue.poll();
+        if (task == null) {
+            return;
+        }
+        R result = null;
+        Throwable failure = null;
+        try {
+            result = executeFunc.apply(task.param1, task.param2);
+            if (Boolean.TRUE.equals(shouldCacheFunc.apply(result))) {
+                results.put(task.key, result);
+                resultStore.put(task.key, result);
+                replicatedResultCache.put(task.key, result);
             }
-            return result;
-        });
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            task.claimRenewal.cancel(false);
+            replicatedResultCache.release(task.key);
+            inFlight.remove(task.key, task);
+            queue.finish(task.group);
+        }
+        // Completed only after leaving the in-flight map, so later calls never reuse a non-cacheable result
+        if (failure != null) {
+            task.future.completeExceptionally(failure);
+        } else {
+            task.future.complete(result);
+        }
     }
 
     @Override
@@ -70,4 +287,54 @@ public class IdempotentExecutor<T,R> {
                 ", mapToKeyFunc=" + mapToKeyFunc +
                 '}';
     }
+
+    private class ScheduledTask extends LazyInitializer<Future<R>> {
+        private final String key;
+        private final String group;
+        private final T param1;
+        private final List<String> param2;
+        private volatile ExecutionPriority priority;
+        // Set before the task is queued and read by the worker that takes it from the queue
+        private CompletableFuture<R> future;
+        private ScheduledFuture<?> claimRenewal;
+
+        private ScheduledTask(String key, String group, T param1, List<String> param2, ExecutionPriority priority) {
+            this.key = key;
+            this.group = group;
+            this.param1 = param1;
+            this.param2 = param2;
+            this.priority = priority;
+        }
+
+        /**
+         * Raises the priority of the task, moving it ahead in the queue when it is waiting there.
+         */
+        private void promote(ExecutionPriority newPriority) {
+            synchronized (this) {
+                if (!newPriority.isMoreUrgentThan(priority)) {
+                    return;
+                }
+                priority = newPriority;
+            }
+            queue.promote(this, newPriority);
+        }
+
+        @Override
+        protected Future<R> initialize() {
+            // The result may have been cached between the lookup in execute and winning the in-flight slot.
+            R cachedResult = getCachedResult(key);
+            if (cachedResult != null) {
+                inFlight.remove(key, this);
+                return CompletableFuture.completedFuture(cachedResult);
+            }
+            try {
+                CompletableFuture<R> future = new CompletableFuture<>();
+                executeOrWaitForOtherNode(this, future);
+                return future;
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(key, this);
+                throw e;
+            }
+        }
+    }
 }
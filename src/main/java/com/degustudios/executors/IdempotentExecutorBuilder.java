@@ -14,4 +14,27 @@ public class IdempotentExecutorBuilder {
             Function<R, Boolean> shouldCacheFunc) {
         return new IdempotentExecutor<>(executeFunc, mapToKeyFunc, shouldCacheFunc);
     }
+
+    public <T,R> IdempotentExecutor<T,R> build(
+            BiFunction<T, List<String>, R> executeFunc,
+            BiFunction<T, List<String>, String> mapToKeyFunc,
+            Function<R, Boolean> shouldCacheFunc,
+            Function<R, Integer> weighFunc,
+            ResultStore<R> resultStore,
+            ReplicatedResultCache<R> replicatedResultCache,
+            IdempotentExecutorSettings settings) {
+        return new IdempotentExecutor<>(executeFunc, mapToKeyFunc, shouldCacheFunc, weighFunc, resultStore, replicatedResultCache, settings);
+    }
+
+    public <T,R> IdempotentExecutor<T,R> build(
+            BiFunction<T, List<String>, R> executeFunc,
+            BiFunction<T, List<String>, String> mapToKeyFunc,
+            BiFunction<T, List<String>, String> mapToGroupFunc,
+            Function<R, Boolean> shouldCacheFunc,
+            Function<R, Integer> weighFunc,
+            ResultStore<R> resultStore,
+            ReplicatedResultCache<R> replicatedResultCache,
+            IdempotentExecutorSettings settings) {
+        return new IdempotentExecutor<>(executeFunc, mapToKeyFunc, mapToGroupFunc, shouldCacheFunc, weighFunc, resultStore, replicatedResultCache, settings);
+    }
 }
@@ -0,0 +1,131 @@
+package com.degustudios.executors;
+
+import java.util.concurrent.TimeUnit;
+
+public class IdempotentExecutorSettings {
+    private final int maximumCachedResults;
+    private final long maximumCachedResultsWeight;
+    private final long expireAfterWriteInMillis;
+    private final long expireAfterAccessInMillis;
+    private final int maximumConcurrentExecutions;
+    private final int maximumQueuedExecutions;
+    private final int maximumConcurrentExecutionsPerGroup;
+    private final long replicatedResultPollIntervalInMillis;
+    private final long claimRenewalIntervalInMillis;
+
+    private IdempotentExecutorSettings(Builder builder) {
+        this.maximumCachedResults = builder.maximumCachedResults;
+        this.maximumCachedResultsWeight = builder.maximumCachedResultsWeight;
+        this.expireAfterWriteInMillis = builder.expireAfterWriteInMillis;
+        this.expireAfterAccessInMillis = builder.expireAfterAccessInMillis;
+        this.maximumConcurrentExecutions = builder.maximumConcurrentExecutions;
+        this.maximumQueuedExecutions = builder.maximumQueuedExecutions;
+        this.maximumConcurrentExecutionsPerGroup = builder.maximumConcurrentExecutionsPerGroup;
+        this.replicatedResultPollIntervalInMillis = builder.replicatedResultPollIntervalInMillis;
+        this.claimRenewalIntervalInMillis = builder.claimRenewalIntervalInMillis;
+    }
+
+    public static IdempotentExecutorSettings defaults() {
+        return new Builder().build();
+    }
+
+    public int getMaximumCachedResults() {
+        return maximumCachedResults;
+    }
+
+    public long getMaximumCachedResultsWeight() {
+        return maximumCachedResultsWeight;
+    }
+
+    public long getExpireAfterWriteInMillis() {
+        return expireAfterWriteInMillis;
+    }
+
+    public long getExpireAfterAccessInMillis() {
+        return expireAfterAccessInMillis;
+    }
+
+    public int getMaximumConcurrentExecutions() {
+        return maximumConcurrentExecutions;
+    }
+
+    public int getMaximumQueuedExecutions() {
+        return maximumQueuedExecutions;
+    }
+
+    /**
+     * @return executions of one group that may run while other groups wait, 0 for no limit
+     */
+    public int getMaximumConcurrentExecutionsPerGroup() {
+        return maximumConcurrentExecutionsPerGroup;
+    }
+
+    public long getReplicatedResultPollIntervalInMillis() {
+        return replicatedResultPollIntervalInMillis;
+    }
+
+    public long getClaimRenewalIntervalInMillis() {
+        return claimRenewalIntervalInMillis;
+    }
+
+    public static class Builder {
+        private int maximumCachedResults = 1000;
+        private long maximumCachedResultsWeight;
+        private long expireAfterWriteInMillis;
+        private long expireAfterAccessInMillis;
+        private int maximumConcurrentExecutions = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private int maximumQueuedExecutions = 100;
+        private int maximumConcurrentExecutionsPerGroup;
+        private long replicatedResultPollIntervalInMillis = 1000;
+        private long claimRenewalIntervalInMillis = 30 * 1000;
+
+        public Builder maximumCachedResults(int value) {
+            this.maximumCachedResults = value;
+            return this;
+        }
+
+        public Builder maximumCachedResultsWeight(long value) {
+            this.maximumCachedResultsWeight = value;
+            return this;
+        }
+
+        public Builder expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteInMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccessInMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder maximumConcurrentExecutions(int value) {
+            this.maximumConcurrentExecutions = value;
+            return this;
+        }
+
+        public Builder maximumQueuedExecutions(int value) {
+            this.maximumQueuedExecutions = value;
+            return this;
+        }
+
+        public Builder maximumConcurrentExecutionsPerGroup(int value) {
+            this.maximumConcurrentExecutionsPerGroup = value;
+            return this;
+        }
+
+        public Builder replicatedResultPollInterval(long duration, TimeUnit unit) {
+            this.replicatedResultPollIntervalInMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder claimRenewalInterval(long duration, TimeUnit unit) {
+            this.claimRenewalIntervalInMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public IdempotentExecutorSettings build() {
+            return new IdempotentExecutorSettings(this);
+        }
+    }
+}
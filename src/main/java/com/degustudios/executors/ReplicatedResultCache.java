@@ -0,0 +1,48 @@
+package com.degustudios.executors;
+
+/**
+ * Results and in-flight markers shared between the nodes of a cluster, so that only one node
+ * computes a given key while the others wait for and reuse its result.
+ */
+public interface ReplicatedResultCache<R> {
+    /**
+     * @return the result published by any node or null when there is none
+     */
+    R get(String key);
+
+    void put(String key, R result);
+
+    /**
+     * Claims the computation of the key for this node. Claiming a key that is already claimed
+     * by this node renews its lease. Claims whose lease has expired can be taken over.
+     *
+     * @return true when this node should compute the result
+     */
+    boolean tryClaim(String key);
+
+    void release(String key);
+
+    static <R> ReplicatedResultCache<R> none() {
+        return new ReplicatedResultCache<R>() {
+            @Override
+            public R get(String key) {
+                return null;
+            }
+
+            @Override
+            public void put(String key, R result) {
+                // Nothing is shared
+            }
+
+            @Override
+            public boolean tryClaim(String key) {
+                return true;
+            }
+
+            @Override
+            public void release(String key) {
+                // Nothing to release
+            }
+        };
+    }
+}
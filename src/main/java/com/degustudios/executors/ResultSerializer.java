@@ -0,0 +1,9 @@
+package com.degustudios.executors;
+
+import java.io.IOException;
+
+public interface ResultSerializer<R> {
+    byte[] serialize(R result) throws IOException;
+
+    R deserialize(byte[] bytes) throws IOException;
+}
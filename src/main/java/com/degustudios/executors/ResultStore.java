@@ -0,0 +1,37 @@
+package com.degustudios.executors;
+
+import java.io.Closeable;
+
+/**
+ * Second-level storage for cacheable results that outlives the in-memory cache.
+ */
+public interface ResultStore<R> extends Closeable {
+    /**
+     * @return the stored result or null when there is none
+     */
+    R get(String key);
+
+    void put(String key, R result);
+
+    @Override
+    void close();
+
+    static <R> ResultStore<R> none() {
+        return new ResultStore<R>() {
+            @Override
+            public R get(String key) {
+                return null;
+            }
+
+            @Override
+            public void put(String key, R result) {
+                // Nothing is stored
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        };
+    }
+}
@@ -0,0 +1,60 @@
+package com.degustudios.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates the SHA-256 digests the caches are keyed by. Fields are terminated by a zero byte, so that "ab", "c"
+ * and "a", "bc" never share a digest.
+ */
+public class Sha256 {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+
+    private Sha256(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    public static Sha256 create() {
+        try {
+            return new Sha256(MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Sha256 update(byte[] bytes) {
+        digest.update(bytes);
+        return this;
+    }
+
+    public Sha256 updateField(byte[] bytes) {
+        digest.update(bytes);
+        digest.update((byte) 0);
+        return this;
+    }
+
+    public Sha256 updateField(String value) {
+        return updateField(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] digest() {
+        return digest.digest();
+    }
+
+    public String digestToHex() {
+        return toHex(digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
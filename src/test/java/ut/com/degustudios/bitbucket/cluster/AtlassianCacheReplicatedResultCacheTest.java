@@ -0,0 +1,127 @@
+package ut.com.degustudios.bitbucket.cluster;
+
+import com.atlassian.cache.Cache;
+import com.degustudios.bitbucket.cluster.AtlassianCacheReplicatedResultCache;
+import com.degustudios.executors.ResultSerializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AtlassianCacheReplicatedResultCacheTest {
+    private static final String KEY = "1/4b825dc642cb6eb9a060e54bf8d69288fbee4904/0123";
+    private static final String NODE_ID = "node-1";
+    private static final long LEASE_IN_MILLIS = 60 * 1000L;
+
+    @Mock
+    private Cache<String, byte[]> results;
+    @Mock
+    private Cache<String, String> claims;
+    @Mock
+    private ResultSerializer<String> serializer;
+
+    private AtlassianCacheReplicatedResultCache<String> cache;
+
+    @Before
+    public void initialize() {
+        cache = new AtlassianCacheReplicatedResultCache<>(results, claims, serializer, NODE_ID, LEASE_IN_MILLIS);
+    }
+
+    @Test
+    public void claimsKeyNobodyClaimed() {
+        long now = System.currentTimeMillis();
+
+        assertThat(cache.tryClaim(KEY), is(true));
+
+        ArgumentCaptor<String> claim = ArgumentCaptor.forClass(String.class);
+        verify(claims).putIfAbsent(eq(KEY), claim.capture());
+        assertThat(claim.getValue().startsWith(NODE_ID + ":"), is(true));
+        assertThat(Long.parseLong(claim.getValue().substring(NODE_ID.length() + 1)) >= now + LEASE_IN_MILLIS, is(true));
+    }
+
+    @Test
+    public void renewsOwnClaim() {
+        String ownClaim = NODE_ID + ":" + (System.currentTimeMillis() + LEASE_IN_MILLIS);
+        when(claims.putIfAbsent(eq(KEY), anyString())).thenReturn(ownClaim);
+        when(claims.replace(eq(KEY), eq(ownClaim), anyString())).thenReturn(true);
+
+        assertThat(cache.tryClaim(KEY), is(true));
+    }
+
+    @Test
+    public void renewsOwnClaimWhenNodeIdContainsColons() {
+        String nodeId = "10.0.0.1:5701";
+        cache = new AtlassianCacheReplicatedResultCache<>(results, claims, serializer, nodeId, LEASE_IN_MILLIS);
+        String ownClaim = nodeId + ":" + (System.currentTimeMillis() + LEASE_IN_MILLIS);
+        when(claims.putIfAbsent(eq(KEY), anyString())).thenReturn(ownClaim);
+        when(claims.replace(eq(KEY), eq(ownClaim), anyString())).thenReturn(true);
+
+        assertThat(cache.tryClaim(KEY), is(true));
+    }
+
+    @Test
+    public void doesNotTakeOverValidClaimOfOtherNode() {
+        when(claims.putIfAbsent(eq(KEY), anyString())).thenReturn("node-2:" + (System.currentTimeMillis() + LEASE_IN_MILLIS));
+
+        assertThat(cache.tryClaim(KEY), is(false));
+
+        verify(claims, never()).replace(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void takesOverExpiredClaim() {
+        String expiredClaim = "node-2:" + (System.currentTimeMillis() - 1);
+        when(claims.putIfAbsent(eq(KEY), anyString())).thenReturn(expiredClaim);
+        when(claims.replace(eq(KEY), eq(expiredClaim), anyString())).thenReturn(true);
+
+        assertThat(cache.tryClaim(KEY), is(true));
+    }
+
+    @Test
+    public void takesOverMalformedClaim() {
+        when(claims.putIfAbsent(eq(KEY), anyString())).thenReturn("node-2:not a time");
+        when(claims.replace(eq(KEY), eq("node-2:not a time"), anyString())).thenReturn(true);
+
+        assertThat(cache.tryClaim(KEY), is(true));
+    }
+
+    @Test
+    public void losesExpiredClaimTakenOverByOtherNodeFirst() {
+        String expiredClaim = "node-2:" + (System.currentTimeMillis() - 1);
+        when(claims.putIfAbsent(eq(KEY), anyString())).thenReturn(expiredClaim);
+        when(claims.replace(eq(KEY), eq(expiredClaim), anyString())).thenReturn(false);
+
+        assertThat(cache.tryClaim(KEY), is(false));
+    }
+
+    @Test
+    public void releasesOwnClaim() {
+        String ownClaim = NODE_ID + ":" + (System.currentTimeMillis() + LEASE_IN_MILLIS);
+        when(claims.get(KEY)).thenReturn(ownClaim);
+
+        cache.release(KEY);
+
+        verify(claims).remove(KEY, ownClaim);
+    }
+
+    @Test
+    public void doesNotReleaseClaimOfOtherNode() {
+        when(claims.get(KEY)).thenReturn("node-2:" + (System.currentTimeMillis() + LEASE_IN_MILLIS));
+
+        cache.release(KEY);
+
+        verify(claims, never()).remove(anyString(), anyString());
+        verify(claims, never()).remove(anyString());
+    }
+}
@@ -1,5 +1,6 @@
 package ut.com.degustudios.bitbucket.content;
 
+import com.atlassian.bitbucket.content.ArchiveFormat;
 import com.atlassian.bitbucket.content.ArchiveRequest;
 import com.atlassian.bitbucket.content.ContentService;
 import com.atlassian.bitbucket.io.TypeAwareOutputSupplier;
@@ -9,12 +10,14 @@ import com.atlassian.bitbucket.user.EscalatedSecurityContext;
 import com.atlassian.bitbucket.user.SecurityService;
 import com.atlassian.bitbucket.util.Operation;
 import com.degustudios.bitbucket.content.CodeService;
+import com.degustudios.bitbucket.properties.PluginProperties;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -32,6 +35,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -46,6 +50,8 @@ public class CodeServiceTest {
     private EscalatedSecurityContext context;
     @Mock
     private Repository repository;
+    @Mock
+    private PluginProperties pluginProperties;
 
     private Path temporaryDirectory;
 
@@ -98,10 +104,48 @@ public class CodeServiceTest {
         assertThat(itemsAfter.size(), is(0));
     }
 
+    @Test
+    public void extractsStreamedArchiveCorrectly() throws IOException {
+        when(pluginProperties.isArchiveStreamingEnabled()).thenReturn(true);
+
+        boolean result = runServiceForFile("archives/codebase.tar", "application/x-tar");
+
+        assertTrue(result);
+        assertTrue(Files.isRegularFile(temporaryDirectory.resolve("test").resolve("code.cs")));
+        List<Path> itemsAfter = Files.list(temporaryDirectory).collect(Collectors.toList());
+        assertThat(itemsAfter.size(), is(1));
+    }
+
+    @Test
+    public void requestsTarArchiveWhenStreaming() {
+        when(pluginProperties.isArchiveStreamingEnabled()).thenReturn(true);
+        ArgumentCaptor<ArchiveRequest> requestCaptor = ArgumentCaptor.forClass(ArchiveRequest.class);
+
+        runServiceForFile("archives/codebase.tar", "application/x-tar");
+
+        verify(contentService).streamArchive(requestCaptor.capture(), notNull(TypeAwareOutputSupplier.class));
+        assertThat(requestCaptor.getValue().getFormat(), is(ArchiveFormat.TAR));
+    }
+
+    @Test
+    public void whenZipSlipVulnerabilityIsDetectedInStreamedArchiveNoFilesAreExtracted() throws IOException {
+        when(pluginProperties.isArchiveStreamingEnabled()).thenReturn(true);
+
+        boolean result = runServiceForFile("archives/tar-slip.tar", "application/x-tar");
+
+        assertFalse(result);
+        List<Path> itemsAfter = Files.list(temporaryDirectory).collect(Collectors.toList());
+        assertThat(itemsAfter.size(), is(0));
+    }
+
     private boolean runServiceForFile(String s) {
+        return runServiceForFile(s, "archive/zip");
+    }
+
+    private boolean runServiceForFile(String s, String contentType) {
         doAnswer(invocationOnMock -> {
             TypeAwareOutputSupplier supplier = (TypeAwareOutputSupplier) invocationOnMock.getArguments()[1];
-            OutputStream outputStream = supplier.getStream("archive/zip");
+            OutputStream outputStream = supplier.getStream(contentType);
             try (InputStream inputStream = CodeServiceTest.class.getResourceAsStream(s)) {
                 CodeServiceTest.this.copy(inputStream, outputStream);
             }
@@ -110,7 +154,7 @@ public class CodeServiceTest {
                 .when(contentService)
                 .streamArchive(notNull(ArchiveRequest.class), notNull(TypeAwareOutputSupplier.class));
 
-        CodeService codeService = new CodeService(contentService, securityService);
+        CodeService codeService = new CodeService(contentService, securityService, pluginProperties);
 
         return codeService.tryDownloadRepositoryCode(
                 temporaryDirectory,
@@ -0,0 +1,82 @@
+package ut.com.degustudios.bitbucket.content;
+
+import com.degustudios.bitbucket.content.SparseCheckoutPathCalculator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SparseCheckoutPathCalculatorTest {
+    private static final List<String> files = Arrays.asList(
+            ".editorconfig",
+            "global.json",
+            "Directory.Build.props",
+            "Monorepo.sln",
+            "README.md",
+            "build/Analyzers.props",
+            "build/Company.ruleset",
+            "build/Company.globalconfig",
+            "src/Directory.Build.targets",
+            "src/Api/Api.csproj",
+            "src/Api/Controllers/HomeController.cs",
+            "src/Api/Program.cs",
+            "src/Core/Core.csproj",
+            "src/Core/Model.cs",
+            "tools/script.cs");
+
+    @Test
+    public void includesDirectoriesOfProjectsContainingChangedFiles() {
+        Set<String> paths = SparseCheckoutPathCalculator.calculatePaths(files, Collections.singletonList("src/Api/Controllers/HomeController.cs"));
+
+        assertThat(paths.contains("src/Api"), is(true));
+        assertThat(paths.contains("src/Core"), is(false));
+        assertThat(paths.contains("src/Core/Model.cs"), is(false));
+    }
+
+    @Test
+    public void alwaysIncludesSolutionProjectAndConfigurationFiles() {
+        Set<String> paths = SparseCheckoutPathCalculator.calculatePaths(files, Collections.singletonList("src/Core/Model.cs"));
+
+        assertThat(paths, hasItems(
+                ".editorconfig",
+                "global.json",
+                "Directory.Build.props",
+                "Monorepo.sln",
+                "src/Directory.Build.targets",
+                "src/Api/Api.csproj",
+                "src/Core"));
+        assertThat(paths.contains("README.md"), is(false));
+    }
+
+    @Test
+    public void alwaysIncludesImportedBuildFilesOutsideOfProjectDirectories() {
+        Set<String> paths = SparseCheckoutPathCalculator.calculatePaths(files, Collections.singletonList("src/Core/Model.cs"));
+
+        assertThat(paths, hasItems("build/Analyzers.props", "build/Company.ruleset", "build/Company.globalconfig"));
+    }
+
+    @Test
+    public void includesChangedFilesOutsideOfProjects() {
+        Set<String> paths = SparseCheckoutPathCalculator.calculatePaths(files, Arrays.asList("tools/script.cs", "deleted/File.cs"));
+
+        assertThat(paths.contains("tools/script.cs"), is(true));
+        assertThat(paths.contains("deleted/File.cs"), is(false));
+    }
+
+    @Test
+    public void includesOnlyChangedFilesOfProjectAtRepositoryRoot() {
+        List<String> rootProjectFiles = Arrays.asList("Root.csproj", "Program.cs", "Other.cs");
+
+        Set<String> paths = SparseCheckoutPathCalculator.calculatePaths(rootProjectFiles, Collections.singletonList("Program.cs"));
+
+        assertThat(paths, hasItems("Root.csproj", "Program.cs"));
+        assertThat(paths.contains("Other.cs"), is(false));
+        assertThat(paths.contains(""), is(false));
+    }
+}
@@ -0,0 +1,138 @@
+package ut.com.degustudios.bitbucket.content;
+
+import com.degustudios.bitbucket.content.TarExtractingOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TarExtractingOutputStreamTest {
+    private static final String LONG_PATH = "test/a-rather-long-directory-name-0/a-rather-long-directory-name-1/"
+            + "a-rather-long-directory-name-2/a-rather-long-directory-name-3/File.cs";
+
+    private Path temporaryDirectory;
+    private ExecutorService executor;
+
+    @Before
+    public void initialize() throws IOException {
+        temporaryDirectory = Files.createTempDirectory("tests");
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(new File(temporaryDirectory.toString()));
+    }
+
+    @Test
+    public void extractsFilesAndDirectories() throws IOException {
+        extract(readArchive("archives/codebase.tar"), Integer.MAX_VALUE);
+
+        assertThat(readFile("test/code.cs").startsWith("namespace Test"), is(true));
+        assertThat(readFile(LONG_PATH), is("class File {}\n"));
+        assertThat(Files.list(temporaryDirectory).count(), is(1L));
+    }
+
+    @Test
+    public void extractsArchiveWrittenInArbitraryChunks() throws IOException {
+        byte[] archive = readArchive("archives/codebase.tar");
+
+        for (int chunkSize : new int[] {1, 7, 511, 513}) {
+            FileUtils.cleanDirectory(temporaryDirectory.toFile());
+            extract(archive, chunkSize);
+
+            assertThat(readFile(LONG_PATH), is("class File {}\n"));
+        }
+    }
+
+    @Test
+    public void extractsFilesOnExecutor() throws IOException {
+        byte[] archive = readArchive("archives/codebase.tar");
+
+        for (int chunkSize : new int[] {7, Integer.MAX_VALUE}) {
+            FileUtils.cleanDirectory(temporaryDirectory.toFile());
+            extract(archive, chunkSize, executor);
+
+            assertThat(readFile("test/code.cs").startsWith("namespace Test"), is(true));
+            assertThat(readFile(LONG_PATH), is("class File {}\n"));
+        }
+    }
+
+    @Test
+    public void reportsFileThatCouldNotBeWrittenOnExecutor() throws IOException {
+        // A directory where the archive has a file
+        Files.createDirectories(temporaryDirectory.resolve(LONG_PATH));
+
+        try {
+            extract(readArchive("archives/codebase.tar"), Integer.MAX_VALUE, executor);
+            fail("Expected failed write to be reported");
+        } catch (IOException e) {
+            assertTrue(Files.isDirectory(temporaryDirectory.resolve(LONG_PATH)));
+        }
+    }
+
+    @Test
+    public void rejectsEntryOutsideOfTargetDirectory() throws IOException {
+        try {
+            extract(readArchive("archives/tar-slip.tar"), Integer.MAX_VALUE);
+            fail("Expected entry outside of the target directory to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage().startsWith("Archive entry is outside of the target directory"), is(true));
+        }
+        assertTrue(Files.exists(temporaryDirectory.resolve("good.txt")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedArchive() throws IOException {
+        byte[] archive = readArchive("archives/codebase.tar");
+
+        extract(Arrays.copyOf(archive, 1024 + 100), Integer.MAX_VALUE);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsCorruptedHeader() throws IOException {
+        byte[] archive = readArchive("archives/codebase.tar");
+        archive[0] ^= 1;
+
+        extract(archive, Integer.MAX_VALUE);
+    }
+
+    private void extract(byte[] archive, int chunkSize) throws IOException {
+        extract(archive, chunkSize, null);
+    }
+
+    private void extract(byte[] archive, int chunkSize, ExecutorService executor) throws IOException {
+        try (TarExtractingOutputStream outputStream = new TarExtractingOutputStream(temporaryDirectory, executor)) {
+            for (int offset = 0; offset < archive.length; offset += chunkSize) {
+                outputStream.write(archive, offset, Math.min(chunkSize, archive.length - offset));
+            }
+        }
+    }
+
+    private String readFile(String path) throws IOException {
+        return new String(Files.readAllBytes(temporaryDirectory.resolve(path)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readArchive(String name) throws IOException {
+        try (InputStream inputStream = TarExtractingOutputStreamTest.class.getResourceAsStream(name)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package ut.com.degustudios.bitbucket.content;
+
+import com.atlassian.bitbucket.content.Change;
+import com.atlassian.bitbucket.content.ChangeType;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scm.ChangesCommandParameters;
+import com.atlassian.bitbucket.scm.ScmCommandFactory;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.scm.SimpleCommand;
+import com.atlassian.bitbucket.user.EscalatedSecurityContext;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.bitbucket.util.Operation;
+import com.atlassian.bitbucket.util.Page;
+import com.atlassian.bitbucket.util.PageImpl;
+import com.atlassian.bitbucket.util.PageRequest;
+import com.degustudios.bitbucket.content.CodeService;
+import com.degustudios.bitbucket.content.SparseCheckoutPathCalculator;
+import com.degustudios.bitbucket.content.Workspace;
+import com.degustudios.bitbucket.content.WorkspaceManager;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WorkspaceManagerTest {
+    private static final String FIRST_COMMIT = "1111111";
+    private static final String SECOND_COMMIT = "2222222";
+
+    @Mock
+    private CodeService codeService;
+    @Mock
+    private SparseCheckoutPathCalculator sparseCheckoutPathCalculator;
+    @Mock
+    private ScmService scmService;
+    @Mock
+    private ScmCommandFactory commandFactory;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private EscalatedSecurityContext context;
+    @Mock
+    private PluginProperties pluginProperties;
+    @Mock
+    private Repository repository;
+    @Mock
+    private Repository otherRepository;
+
+    private final Map<String, Map<String, String>> commits = new HashMap<>();
+    private Path workspacesDirectory;
+    private WorkspaceManager workspaceManager;
+
+    @Before
+    public void initialize() throws IOException {
+        workspacesDirectory = Files.createTempDirectory("workspaces");
+        when(pluginProperties.getWorkspacesDirectory()).thenReturn(workspacesDirectory.toFile());
+        when(pluginProperties.getWorkspacesMaximumSize()).thenReturn(1024L * 1024);
+        when(repository.getId()).thenReturn(1);
+        when(otherRepository.getId()).thenReturn(2);
+        when(scmService.getCommandFactory(repository)).thenReturn(commandFactory);
+        when(securityService.withPermission(eq(Permission.REPO_READ), notNull(String.class))).thenReturn(context);
+        when(context.call(notNull(Operation.class))).thenAnswer(invocationOnMock -> {
+            Operation<Object, IOException> call = (Operation<Object, IOException>) invocationOnMock.getArguments()[0];
+            return call.perform();
+        });
+        when(codeService.tryDownloadRepositoryCode(any(Path.class), any(Repository.class), anyString()))
+                .thenAnswer(invocationOnMock -> download(invocationOnMock.getArguments(), null));
+        when(codeService.tryDownloadRepositoryCode(any(Path.class), any(Repository.class), anyString(), anyCollectionOf(String.class)))
+                .thenAnswer(invocationOnMock -> download(
+                        invocationOnMock.getArguments(),
+                        (Collection<String>) invocationOnMock.getArguments()[3]));
+
+        commits.put(FIRST_COMMIT, files("src/Kept.cs", "KEPT", "src/Changed.cs", "OLD", "old/Deleted.cs", "DELETED"));
+        commits.put(SECOND_COMMIT, files("src/Kept.cs", "KEPT", "src/Changed.cs", "NEW", "src/Added.cs", "ADDED"));
+        workspaceManager = new WorkspaceManager(codeService, sparseCheckoutPathCalculator, scmService, securityService, pluginProperties);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(workspacesDirectory.toFile());
+    }
+
+    @Test
+    public void keepsWorkspaceAfterItIsReleased() throws IOException {
+        Path path;
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            path = workspace.getPath();
+            assertThat(read(path, "src/Changed.cs"), is("OLD"));
+        }
+
+        assertThat(path.startsWith(workspacesDirectory), is(true));
+        assertThat(read(path, "src/Changed.cs"), is("OLD"));
+    }
+
+    @Test
+    public void doesNotDownloadAnythingForTheSameCommit() throws IOException {
+        workspaceManager.acquire(repository, FIRST_COMMIT).close();
+        workspaceManager.acquire(repository, FIRST_COMMIT).close();
+
+        verify(codeService, times(1)).tryDownloadRepositoryCode(any(Path.class), eq(repository), eq(FIRST_COMMIT));
+    }
+
+    @Test
+    public void downloadsOnlyChangedPathsForNewCommit() throws IOException {
+        setupChanges(
+                change(ChangeType.MODIFY, "src/Changed.cs"),
+                change(ChangeType.ADD, "src/Added.cs"),
+                change(ChangeType.DELETE, "old/Deleted.cs"));
+        workspaceManager.acquire(repository, FIRST_COMMIT).close();
+
+        try (Workspace workspace = workspaceManager.acquire(repository, SECOND_COMMIT)) {
+            Path path = workspace.getPath();
+            assertThat(read(path, "src/Kept.cs"), is("KEPT"));
+            assertThat(read(path, "src/Changed.cs"), is("NEW"));
+            assertThat(read(path, "src/Added.cs"), is("ADDED"));
+            assertThat(Files.exists(path.resolve("old")), is(false));
+        }
+        verify(codeService).tryDownloadRepositoryCode(
+                any(Path.class),
+                eq(repository),
+                eq(SECOND_COMMIT),
+                eq(new HashSet<>(Arrays.asList("src/Changed.cs", "src/Added.cs"))));
+        verify(codeService, never()).tryDownloadRepositoryCode(any(Path.class), eq(repository), eq(SECOND_COMMIT));
+    }
+
+    @Test
+    public void downloadsWholeRepositoryAgainWhenWorkspaceIsDirty() throws IOException {
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            Files.write(workspace.getPath().resolve("src/Changed.cs"), "FORMATTED".getBytes(StandardCharsets.UTF_8));
+            workspace.markDirty();
+        }
+
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            assertThat(read(workspace.getPath(), "src/Changed.cs"), is("OLD"));
+        }
+        verify(codeService, times(2)).tryDownloadRepositoryCode(any(Path.class), eq(repository), eq(FIRST_COMMIT));
+    }
+
+    @Test
+    public void usesTemporaryCheckoutWhenWorkspaceIsInUse() throws IOException {
+        try (Workspace first = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            Path temporaryPath;
+            try (Workspace second = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+                temporaryPath = second.getPath();
+                assertThat(temporaryPath, is(not(first.getPath())));
+                assertThat(read(temporaryPath, "src/Changed.cs"), is("OLD"));
+            }
+            assertThat(Files.exists(temporaryPath), is(false));
+        }
+    }
+
+    @Test
+    public void usesTemporaryCheckoutWhenWorkspacesAreDisabled() throws IOException {
+        when(pluginProperties.getWorkspacesMaximumSize()).thenReturn(0L);
+
+        Path path;
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            path = workspace.getPath();
+            assertThat(read(path, "src/Changed.cs"), is("OLD"));
+        }
+
+        assertThat(path.startsWith(workspacesDirectory), is(false));
+        assertThat(Files.exists(path), is(false));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedWorkspaceOverDiskBudget() throws IOException {
+        when(pluginProperties.getWorkspacesMaximumSize()).thenReturn(20L);
+        Path firstPath;
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            firstPath = workspace.getPath();
+        }
+
+        Path secondPath;
+        try (Workspace workspace = workspaceManager.acquire(otherRepository, FIRST_COMMIT)) {
+            secondPath = workspace.getPath();
+        }
+
+        assertThat(Files.exists(firstPath), is(false));
+        assertThat(Files.exists(secondPath), is(true));
+    }
+
+    @Test
+    public void evictsWorkspaceThatGrewOverDiskBudgetWithChangedPaths() throws IOException {
+        when(pluginProperties.getWorkspacesMaximumSize()).thenReturn(20L);
+        commits.put(SECOND_COMMIT, files("src/Kept.cs", "KEPT", "src/Changed.cs", "NEW", "src/Added.cs", "ADDED ADDED ADDED"));
+        setupChanges(
+                change(ChangeType.MODIFY, "src/Changed.cs"),
+                change(ChangeType.ADD, "src/Added.cs"),
+                change(ChangeType.DELETE, "old/Deleted.cs"));
+        Path path;
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT)) {
+            path = workspace.getPath();
+        }
+        assertThat(Files.exists(path), is(true));
+
+        workspaceManager.acquire(repository, SECOND_COMMIT).close();
+
+        assertThat(Files.exists(path), is(false));
+        verify(codeService, never()).tryDownloadRepositoryCode(any(Path.class), eq(repository), eq(SECOND_COMMIT));
+    }
+
+    @Test
+    public void downloadsOnlyPathsNeededForChangedFilesWhenSparseDownloadIsEnabled() throws IOException {
+        List<String> changedPaths = Collections.singletonList("src/Changed.cs");
+        when(pluginProperties.isSparseDownloadEnabled()).thenReturn(true);
+        when(sparseCheckoutPathCalculator.calculatePaths(repository, FIRST_COMMIT, changedPaths))
+                .thenReturn(new HashSet<>(changedPaths));
+
+        Path path;
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT, changedPaths)) {
+            path = workspace.getPath();
+            assertThat(read(path, "src/Changed.cs"), is("OLD"));
+            assertThat(Files.exists(path.resolve("src/Kept.cs")), is(false));
+        }
+
+        assertThat(path.startsWith(workspacesDirectory), is(false));
+        assertThat(Files.exists(path), is(false));
+    }
+
+    @Test
+    public void ignoresChangedPathsWhenSparseDownloadIsDisabled() throws IOException {
+        try (Workspace workspace = workspaceManager.acquire(repository, FIRST_COMMIT, Collections.singletonList("src/Changed.cs"))) {
+            assertThat(read(workspace.getPath(), "src/Kept.cs"), is("KEPT"));
+        }
+
+        verify(sparseCheckoutPathCalculator, never()).calculatePaths(any(Repository.class), anyString(), anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void throwsWhenDownloadFails() throws IOException {
+        when(codeService.tryDownloadRepositoryCode(any(Path.class), any(Repository.class), anyString())).thenReturn(false);
+
+        try {
+            workspaceManager.acquire(repository, FIRST_COMMIT);
+            fail("Expected download to fail");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Downloading code failed"));
+        }
+    }
+
+    private boolean download(Object[] arguments, Collection<String> paths) throws IOException {
+        Path directory = (Path) arguments[0];
+        Map<String, String> files = commits.get((String) arguments[2]);
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            if (paths == null || paths.contains(file.getKey())) {
+                Path path = directory.resolve(file.getKey());
+                Files.createDirectories(path.getParent());
+                Files.write(path, file.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return true;
+    }
+
+    private void setupChanges(Change... changes) {
+        List<Change> elements = Arrays.asList(changes);
+        when(commandFactory.changes(any(ChangesCommandParameters.class), notNull(PageRequest.class)))
+                .thenAnswer(invocationOnMock -> {
+                    PageRequest request = (PageRequest) invocationOnMock.getArguments()[1];
+                    return new SimpleCommand<Page<Change>>() {
+                        @Override
+                        public Page<Change> call() {
+                            return new PageImpl<>(request, elements, true);
+                        }
+                    };
+                });
+    }
+
+    private static Change change(ChangeType type, String pathValue) {
+        Change change = mock(Change.class);
+        com.atlassian.bitbucket.content.Path path = mock(com.atlassian.bitbucket.content.Path.class);
+        when(path.toString()).thenReturn(pathValue);
+        when(change.getPath()).thenReturn(path);
+        when(change.getType()).thenReturn(type);
+        return change;
+    }
+
+    private static Map<String, String> files(String... pathsAndContents) {
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < pathsAndContents.length; i += 2) {
+            files.put(pathsAndContents[i], pathsAndContents[i + 1]);
+        }
+        return files;
+    }
+
+    private static String read(Path directory, String path) throws IOException {
+        return new String(Files.readAllBytes(directory.resolve(path)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package ut.com.degustudios.bitbucket.content;
+
+import com.degustudios.bitbucket.content.ZipArchiveExtractor;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ZipArchiveExtractorTest {
+    private static final int FILE_COUNT = 1000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private Path temporaryDirectory;
+    private Path archiveFilePath;
+
+    @Before
+    public void initialize() throws IOException {
+        temporaryDirectory = Files.createTempDirectory("tests");
+        archiveFilePath = Files.createTempFile("archive", ".zip");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(new File(temporaryDirectory.toString()));
+        Files.deleteIfExists(archiveFilePath);
+    }
+
+    @Test
+    public void extractsAllFilesOfLargeArchive() throws IOException {
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(archiveFilePath))) {
+            outputStream.putNextEntry(new ZipEntry("src/"));
+            outputStream.closeEntry();
+            for (int i = 0; i < FILE_COUNT; i++) {
+                // Files in directories without their own entry must be extracted too
+                outputStream.putNextEntry(new ZipEntry("src/" + i % 10 + "/File" + i + ".cs"));
+                outputStream.write(getContent(i));
+                outputStream.closeEntry();
+            }
+        }
+
+        new ZipArchiveExtractor(executor).extract(archiveFilePath, temporaryDirectory);
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            Path path = temporaryDirectory.resolve("src").resolve(Integer.toString(i % 10)).resolve("File" + i + ".cs");
+            assertThat(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), is(new String(getContent(i), StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    public void extractsNothingWhenAnyEntryIsOutsideOfTargetDirectory() throws IOException {
+        try (InputStream inputStream = ZipArchiveExtractorTest.class.getResourceAsStream("archives/zip-slip.zip");
+             OutputStream outputStream = Files.newOutputStream(archiveFilePath)) {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, length);
+            }
+        }
+
+        try {
+            new ZipArchiveExtractor(executor).extract(archiveFilePath, temporaryDirectory);
+            fail("Expected entry outside of the target directory to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("ZipEntry is outside of the target directory"));
+        }
+        assertThat(Files.list(temporaryDirectory).count(), is(0L));
+    }
+
+    private static byte[] getContent(int i) {
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line <= i % 50; line++) {
+            content.append("// File ").append(i).append(", line ").append(line).append('\n');
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package ut.com.degustudios.bitbucket.events;
+
+import com.atlassian.bitbucket.event.pull.PullRequestDeclinedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestDeletedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestMergedEvent;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.event.api.EventPublisher;
+import com.degustudios.bitbucket.events.PullRequestCommentIndexCleaner;
+import com.degustudios.bitbucket.mergechecks.comment.PullRequestCommentIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PullRequestCommentIndexCleanerTest {
+    @Mock
+    private EventPublisher eventPublisher;
+    @Mock
+    private PullRequestCommentIndex commentIndex;
+    @Mock
+    private PullRequest pullRequest;
+    @Mock
+    private PullRequestMergedEvent merged;
+    @Mock
+    private PullRequestDeclinedEvent declined;
+    @Mock
+    private PullRequestDeletedEvent deleted;
+
+    private PullRequestCommentIndexCleaner cleaner;
+
+    @Before
+    public void initialize() {
+        when(merged.getPullRequest()).thenReturn(pullRequest);
+        when(declined.getPullRequest()).thenReturn(pullRequest);
+        when(deleted.getPullRequest()).thenReturn(pullRequest);
+
+        cleaner = new PullRequestCommentIndexCleaner(eventPublisher, commentIndex);
+    }
+
+    @Test
+    public void registersForEvents() {
+        cleaner.afterPropertiesSet();
+
+        verify(eventPublisher).register(cleaner);
+    }
+
+    @Test
+    public void removesEntryOfMergedPullRequest() {
+        cleaner.onPullRequestMerged(merged);
+
+        verify(commentIndex).remove(pullRequest);
+    }
+
+    @Test
+    public void removesEntryOfDeclinedPullRequest() {
+        cleaner.onPullRequestDeclined(declined);
+
+        verify(commentIndex).remove(pullRequest);
+    }
+
+    @Test
+    public void removesEntryOfDeletedPullRequest() {
+        cleaner.onPullRequestDeleted(deleted);
+
+        verify(commentIndex).remove(pullRequest);
+    }
+
+    @Test
+    public void doesNotFailEventWhenEntryCannotBeRemoved() {
+        doThrow(new IllegalStateException()).when(commentIndex).remove(pullRequest);
+
+        cleaner.onPullRequestMerged(merged);
+    }
+}
@@ -0,0 +1,160 @@
+package ut.com.degustudios.bitbucket.events;
+
+import com.atlassian.bitbucket.event.pull.PullRequestOpenedEvent;
+import com.atlassian.bitbucket.event.pull.PullRequestRescopedEvent;
+import com.atlassian.bitbucket.hook.repository.GetRepositoryHookSettingsRequest;
+import com.atlassian.bitbucket.hook.repository.RepositoryHook;
+import com.atlassian.bitbucket.hook.repository.RepositoryHookService;
+import com.atlassian.bitbucket.hook.repository.RepositoryHookSettings;
+import com.atlassian.bitbucket.permission.Permission;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestRef;
+import com.atlassian.bitbucket.pull.PullRequestState;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.scope.Scope;
+import com.atlassian.bitbucket.setting.Settings;
+import com.atlassian.bitbucket.user.EscalatedSecurityContext;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.bitbucket.util.Operation;
+import com.atlassian.event.api.EventPublisher;
+import com.degustudios.bitbucket.events.PullRequestEventListener;
+import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidatorParameterCalculator;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.bitbucket.repository.validators.IdempotentlyCachedDotnetFormatRefValidatorWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PullRequestEventListenerTest {
+    private static final List<String> PARAMS = Collections.singletonList("--check");
+
+    @Mock
+    private EventPublisher eventPublisher;
+    @Mock
+    private RepositoryHookService repositoryHookService;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private EscalatedSecurityContext context;
+    @Mock
+    private DotnetFormatRefValidatorParameterCalculator parameterCalculator;
+    @Mock
+    private IdempotentlyCachedDotnetFormatRefValidatorWrapper validator;
+    @Mock
+    private PluginProperties pluginProperties;
+    @Mock
+    private PullRequest pullRequest;
+    @Mock
+    private PullRequestRef fromRef;
+    @Mock
+    private PullRequestRef toRef;
+    @Mock
+    private Repository repository;
+    @Mock
+    private RepositoryHook hook;
+    @Mock
+    private RepositoryHookSettings hookSettings;
+    @Mock
+    private Settings settings;
+    @Mock
+    private PullRequestOpenedEvent opened;
+    @Mock
+    private PullRequestRescopedEvent rescoped;
+
+    private PullRequestEventListener listener;
+
+    @Before
+    public void initialize() throws Throwable {
+        when(securityService.withPermission(eq(Permission.REPO_ADMIN), notNull(String.class))).thenReturn(context);
+        when(context.call(notNull(Operation.class))).thenAnswer(invocationOnMock -> {
+            Operation<Object, RuntimeException> call = (Operation<Object, RuntimeException>) invocationOnMock.getArguments()[0];
+            return call.perform();
+        });
+        when(opened.getPullRequest()).thenReturn(pullRequest);
+        when(rescoped.getPullRequest()).thenReturn(pullRequest);
+        when(pullRequest.getState()).thenReturn(PullRequestState.OPEN);
+        when(pullRequest.getFromRef()).thenReturn(fromRef);
+        when(pullRequest.getToRef()).thenReturn(toRef);
+        when(toRef.getRepository()).thenReturn(repository);
+        when(repositoryHookService.getByKey(any(Scope.class), eq(PullRequestEventListener.MERGE_CHECK_KEY))).thenReturn(hook);
+        when(repositoryHookService.getSettings(any(GetRepositoryHookSettingsRequest.class))).thenReturn(hookSettings);
+        when(hookSettings.getSettings()).thenReturn(settings);
+        when(hook.isEnabled()).thenReturn(true);
+        when(parameterCalculator.calculateParameters(settings, pullRequest)).thenReturn(PARAMS);
+        when(pluginProperties.isPrewarmEnabled()).thenReturn(true);
+
+        listener = new PullRequestEventListener(
+                eventPublisher, repositoryHookService, securityService, parameterCalculator, validator, pluginProperties);
+    }
+
+    @Test
+    public void registersForEventsWhenEnabled() {
+        listener.afterPropertiesSet();
+
+        verify(eventPublisher).register(listener);
+    }
+
+    @Test
+    public void doesNotRegisterForEventsWhenDisabled() {
+        when(pluginProperties.isPrewarmEnabled()).thenReturn(false);
+
+        listener.afterPropertiesSet();
+
+        verify(eventPublisher, never()).register(any());
+    }
+
+    @Test
+    public void prewarmsSourceRefWhenPullRequestIsOpened() {
+        listener.onPullRequestOpened(opened);
+
+        verify(validator).prewarm(fromRef, PARAMS);
+    }
+
+    @Test
+    public void prewarmsSourceRefWhenPullRequestIsRescoped() {
+        listener.onPullRequestRescoped(rescoped);
+
+        verify(validator).prewarm(fromRef, PARAMS);
+    }
+
+    @Test
+    public void doesNotPrewarmWhenMergeCheckIsDisabled() {
+        when(hook.isEnabled()).thenReturn(false);
+
+        listener.onPullRequestOpened(opened);
+
+        verify(validator, never()).prewarm(any(), anyListOf(String.class));
+    }
+
+    @Test
+    public void doesNotPrewarmPullRequestsWithoutRelevantChanges() {
+        when(parameterCalculator.calculateParameters(settings, pullRequest)).thenReturn(null);
+
+        listener.onPullRequestOpened(opened);
+
+        verify(validator, never()).prewarm(any(), anyListOf(String.class));
+    }
+
+    @Test
+    public void doesNotPrewarmClosedPullRequests() {
+        when(pullRequest.getState()).thenReturn(PullRequestState.MERGED);
+
+        listener.onPullRequestOpened(opened);
+
+        verify(validator, never()).prewarm(any(), anyListOf(String.class));
+    }
+}
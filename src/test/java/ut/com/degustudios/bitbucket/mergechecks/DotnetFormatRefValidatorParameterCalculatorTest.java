@@ -11,6 +11,7 @@ import com.atlassian.bitbucket.util.Page;
 import com.atlassian.bitbucket.util.PageImpl;
 import com.atlassian.bitbucket.util.PageRequest;
 import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidatorParameterCalculator;
+import com.degustudios.bitbucket.mergechecks.RelevantFileFilter;
 import org.hamcrest.Matcher;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,6 +22,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -30,6 +32,9 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.*;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -72,7 +77,9 @@ public class DotnetFormatRefValidatorParameterCalculatorTest {
             }
         };
 
-        calculator = new DotnetFormatRefValidatorParameterCalculator(scmService);
+        setupSearchToReturn(convertPathsToChanges(new String[]{ "src/Program.cs" }));
+
+        calculator = new DotnetFormatRefValidatorParameterCalculator(scmService, new RelevantFileFilter(Arrays.asList("*.cs", ".editorconfig")));
     }
 
     @Test
@@ -165,6 +172,62 @@ public class DotnetFormatRefValidatorParameterCalculatorTest {
         assertThat(result.get(0), is(dotNetFormatSingleParameter));
     }
 
+    @Test
+    public void whenNoChangedFileIsRelevantCalculatorReturnsNull() {
+        setupDotNetFormatParameterTo("params");
+        setupIncludeParameterTo(false);
+        setupSearchToReturn(convertPathsToChanges(new String[]{ "README.md", "docs/diagram.png" }));
+
+        List<String> result = calculator.calculateParameters(settings, pullRequest);
+
+        assertThat(result, is(nullValue()));
+    }
+
+    @Test
+    public void whenNoIncludedFileIsRelevantCalculatorReturnsNull() {
+        setupDotNetFormatParameterTo("params");
+        setupIncludeParameterTo(true);
+        setupSearchToReturn(convertPathsToChanges(new String[]{ "README.md", "build/pipeline.yml" }));
+
+        List<String> result = calculator.calculateParameters(settings, pullRequest);
+
+        assertThat(result, is(nullValue()));
+    }
+
+    @Test
+    public void whenOneChangedFileIsRelevantCalculatorReturnsParameters() {
+        setupDotNetFormatParameterTo("params");
+        setupIncludeParameterTo(false);
+        setupSearchToReturn(convertPathsToChanges(new String[]{ "README.md", "src/.editorconfig" }));
+
+        List<String> result = calculator.calculateParameters(settings, pullRequest);
+
+        assertThat(result, is(Collections.singletonList("params")));
+    }
+
+    @Test
+    public void withoutIncludeParameterCalculatorStopsListingChangesAtFirstRelevantFile() {
+        setupDotNetFormatParameterTo("params");
+        setupIncludeParameterTo(false);
+        setupSearchToReturn(convertPathsToChanges(IntStream.range(0, 1000).mapToObj(i -> "/src/" + i + ".cs").toArray(String[]::new)));
+
+        calculator.calculateParameters(settings, pullRequest);
+
+        verify(commandFactory, times(1)).changes(any(ChangesCommandParameters.class), any(PageRequest.class));
+    }
+
+    @Test
+    public void whenEveryFileIsRelevantCalculatorDoesNotListChangesWithoutIncludeParameter() {
+        calculator = new DotnetFormatRefValidatorParameterCalculator(scmService, new RelevantFileFilter(Collections.singletonList("*")));
+        setupDotNetFormatParameterTo("params");
+        setupIncludeParameterTo(false);
+
+        List<String> result = calculator.calculateParameters(settings, pullRequest);
+
+        assertThat(result, is(Collections.singletonList("params")));
+        verifyZeroInteractions(scmService);
+    }
+
     private Collection<Change> convertPathsToChanges(String[] changedPaths) {
         return Arrays.stream(changedPaths).map(s -> {
             Change change = mock(Change.class);
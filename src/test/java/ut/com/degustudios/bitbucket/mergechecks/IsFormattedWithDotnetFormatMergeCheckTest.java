@@ -12,6 +12,9 @@ import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidator;
 import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidatorParameterCalculator;
 import com.degustudios.bitbucket.mergechecks.IsFormattedWithDotnetFormatMergeCheck;
 import com.degustudios.bitbucket.mergechecks.PullRequestCommenter;
+import com.degustudios.bitbucket.mergechecks.PullRequestDecisionCache;
+import com.degustudios.bitbucket.metrics.MergeCheckOutcome;
+import com.degustudios.bitbucket.metrics.MergeCheckOutcomeCounter;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
 import org.junit.Before;
 import org.junit.Test;
@@ -48,6 +51,10 @@ public class IsFormattedWithDotnetFormatMergeCheckTest {
     Repository repository;
     @Mock
     Settings settings;
+    @Mock
+    private PullRequestDecisionCache decisionCache;
+    @Mock
+    private MergeCheckOutcomeCounter outcomeCounter;
 
     private IsFormattedWithDotnetFormatMergeCheck checker;
 
@@ -60,7 +67,7 @@ public class IsFormattedWithDotnetFormatMergeCheckTest {
         when(repository.getId()).thenReturn(1);
         when(context.getSettings()).thenReturn(settings);
 
-        checker = new IsFormattedWithDotnetFormatMergeCheck(validator, pullRequestCommenter, parameterCalculator);
+        checker = new IsFormattedWithDotnetFormatMergeCheck(validator, pullRequestCommenter, parameterCalculator, decisionCache, outcomeCounter);
     }
 
     @Test
@@ -130,6 +137,24 @@ public class IsFormattedWithDotnetFormatMergeCheckTest {
         verify(pullRequestCommenter, times(0)).addComment(eq(pullRequest), any());
     }
 
+    @Test
+    public void rejectsPullRequestWithoutCommentWhenDotnetFormatTimedOut() {
+        String message = "TIMED OUT";
+        when(validator.validate(eq(request.getFromRef()), any()))
+                .thenReturn(DotnetFormatCommandResult.timedOut(message));
+
+        RepositoryHookResult pullRequestResult = runChecker();
+
+        assertThat(pullRequestResult.isAccepted(), is(false));
+        assertThat(
+                getVeto(pullRequestResult).getSummaryMessage(),
+                is("Dotnet format timed out."));
+        assertThat(
+                getVeto(pullRequestResult).getDetailedMessage(),
+                is(message));
+        verify(pullRequestCommenter, times(0)).addComment(eq(pullRequest), any());
+    }
+
     @Test
     public void testThatParamsAreCalculatedAndPassedCorrectly() {
         List<String> expectedParams = Arrays.asList(new String[]{"1", "2", "3"});
@@ -141,6 +166,71 @@ public class IsFormattedWithDotnetFormatMergeCheckTest {
         verify(validator).validate(pullRequest.getFromRef(), expectedParams);
     }
 
+    @Test
+    public void returnsRememberedDecisionWithoutValidating() {
+        RepositoryHookResult decision = RepositoryHookResult.accepted();
+        when(decisionCache.get(settings, pullRequest)).thenReturn(decision);
+
+        RepositoryHookResult pullRequestResult = runChecker();
+
+        assertThat(pullRequestResult, is(decision));
+        verifyZeroInteractions(parameterCalculator, validator, pullRequestCommenter);
+    }
+
+    @Test
+    public void remembersDecisionWhenDotnetFormatRan() {
+        when(validator.validate(eq(request.getFromRef()), any()))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(2, "ERROR"));
+
+        RepositoryHookResult pullRequestResult = runChecker();
+
+        verify(decisionCache).put(settings, pullRequest, pullRequestResult);
+    }
+
+    @Test
+    public void checksAgainWhenDotnetFormatFailedWithOtherExitCode() {
+        when(validator.validate(eq(request.getFromRef()), any()))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(1, "RESTORE FAILED"));
+
+        runChecker();
+        runChecker();
+
+        verify(decisionCache, never()).put(any(), any(), any());
+        verify(validator, times(2)).validate(eq(request.getFromRef()), any());
+    }
+
+    @Test
+    public void doesNotRememberDecisionWhenDotnetFormatTimedOut() {
+        when(validator.validate(eq(request.getFromRef()), any()))
+                .thenReturn(DotnetFormatCommandResult.timedOut("TIMED OUT"));
+
+        runChecker();
+
+        verify(decisionCache, never()).put(any(), any(), any());
+    }
+
+    @Test
+    public void acceptsPullRequestWithoutRelevantChangesWithoutValidating() {
+        when(parameterCalculator.calculateParameters(settings, pullRequest)).thenReturn(null);
+
+        RepositoryHookResult pullRequestResult = runChecker();
+
+        assertThat(pullRequestResult.isAccepted(), is(true));
+        verifyZeroInteractions(validator, pullRequestCommenter);
+        verify(outcomeCounter).record(MergeCheckOutcome.SKIPPED);
+        verify(decisionCache).put(settings, pullRequest, pullRequestResult);
+    }
+
+    @Test
+    public void countsOutcomeOfValidation() {
+        when(validator.validate(eq(request.getFromRef()), any()))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(0, "SUCCESS!"));
+
+        runChecker();
+
+        verify(outcomeCounter).record(MergeCheckOutcome.ACCEPTED);
+    }
+
     private RepositoryHookVeto getVeto(RepositoryHookResult pullRequestResult) {
         return pullRequestResult.getVetoes().get(0);
     }
@@ -0,0 +1,91 @@
+package ut.com.degustudios.bitbucket.mergechecks;
+
+import com.atlassian.bitbucket.hook.repository.RepositoryHookResult;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestRef;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.setting.Settings;
+import com.degustudios.bitbucket.mergechecks.PullRequestDecisionCache;
+import com.degustudios.executors.IdempotentExecutorSettings;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PullRequestDecisionCacheTest {
+    @Mock
+    private Settings settings;
+    @Mock
+    private PullRequest pullRequest;
+    @Mock
+    private PullRequestRef fromRef;
+    @Mock
+    private PullRequestRef toRef;
+    @Mock
+    private Repository repository;
+
+    private Map<String, Object> settingsMap;
+    private RepositoryHookResult decision;
+    private PullRequestDecisionCache decisionCache;
+
+    @Before
+    public void initialize() {
+        settingsMap = new HashMap<>();
+        settingsMap.put("dotnetFormatParams", "--check");
+        when(settings.asMap()).thenAnswer(invocation -> new HashMap<>(settingsMap));
+        when(pullRequest.getId()).thenReturn(7L);
+        when(pullRequest.getFromRef()).thenReturn(fromRef);
+        when(pullRequest.getToRef()).thenReturn(toRef);
+        when(toRef.getRepository()).thenReturn(repository);
+        when(repository.getId()).thenReturn(1);
+        when(fromRef.getLatestCommit()).thenReturn("a1");
+        when(toRef.getLatestCommit()).thenReturn("b1");
+        decision = RepositoryHookResult.rejected("Dotnet format has found issues.", "Dotnet format exit code: 2");
+
+        decisionCache = new PullRequestDecisionCache(new IdempotentExecutorSettings.Builder().maximumCachedResults(10).build());
+        decisionCache.put(settings, pullRequest, decision);
+    }
+
+    @Test
+    public void returnsDecisionForSameCommitsAndSettings() {
+        assertThat(decisionCache.get(settings, pullRequest), is(decision));
+    }
+
+    @Test
+    public void forgetsDecisionWhenSourceBranchChanges() {
+        when(fromRef.getLatestCommit()).thenReturn("a2");
+
+        assertThat(decisionCache.get(settings, pullRequest), is(nullValue()));
+    }
+
+    @Test
+    public void forgetsDecisionWhenTargetBranchChanges() {
+        when(toRef.getLatestCommit()).thenReturn("b2");
+
+        assertThat(decisionCache.get(settings, pullRequest), is(nullValue()));
+    }
+
+    @Test
+    public void forgetsDecisionWhenSettingsChange() {
+        settingsMap.put("shouldUseIncludeParameter", true);
+
+        assertThat(decisionCache.get(settings, pullRequest), is(nullValue()));
+    }
+
+    @Test
+    public void keepsDecisionsOfPullRequestsInOtherRepositoriesApart() {
+        when(repository.getId()).thenReturn(2);
+
+        assertThat(decisionCache.get(settings, pullRequest), is(nullValue()));
+    }
+}
@@ -0,0 +1,60 @@
+package ut.com.degustudios.bitbucket.mergechecks;
+
+import com.degustudios.bitbucket.mergechecks.RelevantFileFilter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RelevantFileFilterTest {
+    private final RelevantFileFilter filter = new RelevantFileFilter(
+            Arrays.asList("*.cs", ".editorconfig", "Directory.Build.*", "build/**/*.targets", "/tools/?.json"));
+
+    @Test
+    public void matchesFileNamesAnywhere() {
+        assertThat(filter.isRelevant("Program.cs"), is(true));
+        assertThat(filter.isRelevant("src/Api/Controllers/HomeController.cs"), is(true));
+        assertThat(filter.isRelevant("src/.editorconfig"), is(true));
+        assertThat(filter.isRelevant("src/Directory.Build.props"), is(true));
+    }
+
+    @Test
+    public void ignoresCase() {
+        assertThat(filter.isRelevant("src/PROGRAM.CS"), is(true));
+        assertThat(filter.isRelevant("directory.build.targets"), is(true));
+    }
+
+    @Test
+    public void doesNotMatchOtherFiles() {
+        assertThat(filter.isRelevant("README.md"), is(false));
+        assertThat(filter.isRelevant("src/Program.cs.orig"), is(false));
+        assertThat(filter.isRelevant("docs/cs/diagram.png"), is(false));
+    }
+
+    @Test
+    public void matchesPathsFromRepositoryRootWhenGlobHasSlash() {
+        assertThat(filter.isRelevant("build/Common.targets"), is(true));
+        assertThat(filter.isRelevant("build/ci/Common.targets"), is(true));
+        assertThat(filter.isRelevant("src/build/Common.targets"), is(false));
+        assertThat(filter.isRelevant("tools/a.json"), is(true));
+        assertThat(filter.isRelevant("tools/ab.json"), is(false));
+    }
+
+    @Test
+    public void acceptsPathsWithLeadingSlash() {
+        assertThat(filter.isRelevant("/src/Program.cs"), is(true));
+        assertThat(filter.isRelevant("/tools/a.json"), is(true));
+    }
+
+    @Test
+    public void matchesEverythingWithStar() {
+        RelevantFileFilter everything = new RelevantFileFilter(Collections.singletonList("*"));
+
+        assertThat(everything.matchesEverything(), is(true));
+        assertThat(everything.isRelevant("docs/README.md"), is(true));
+        assertThat(filter.matchesEverything(), is(false));
+    }
+}
@@ -0,0 +1,105 @@
+package ut.com.degustudios.bitbucket.mergechecks.comment;
+
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestRef;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.degustudios.bitbucket.mergechecks.comment.PullRequestCommentIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PullRequestCommentIndexTest {
+    @Mock
+    private PluginSettingsFactory pluginSettingsFactory;
+    @Mock
+    private PluginSettings pluginSettings;
+
+    private final Map<String, Object> storedSettings = new HashMap<>();
+    private PullRequestCommentIndex index;
+
+    @Before
+    public void initialize() {
+        when(pluginSettingsFactory.createGlobalSettings()).thenReturn(pluginSettings);
+        when(pluginSettings.get(anyString())).then(invocation -> storedSettings.get((String) invocation.getArguments()[0]));
+        when(pluginSettings.put(anyString(), any())).then(invocation ->
+                storedSettings.put((String) invocation.getArguments()[0], invocation.getArguments()[1]));
+        when(pluginSettings.remove(anyString())).then(invocation -> storedSettings.remove((String) invocation.getArguments()[0]));
+        index = new PullRequestCommentIndex(pluginSettingsFactory);
+    }
+
+    @Test
+    public void returnsNullForUnknownPullRequest() {
+        assertThat(index.get(mockPullRequest(1, 1)), is(nullValue()));
+    }
+
+    @Test
+    public void returnsStoredComment() {
+        index.put(mockPullRequest(1, 2), new PullRequestCommentIndex.IndexedComment(123, 7, "abcdef", "0123456789"));
+
+        PullRequestCommentIndex.IndexedComment comment = index.get(mockPullRequest(1, 2));
+
+        assertThat(comment.getCommentId(), is(123L));
+        assertThat(comment.getVersion(), is(7));
+        assertThat(comment.getCommitId(), is("abcdef"));
+        assertThat(comment.getContentHash(), is("0123456789"));
+    }
+
+    @Test
+    public void readsEntriesWithoutContentHash() {
+        storedSettings.put("com.degustudios.dotnet-format.comment.1.2", "123:7:abcdef");
+
+        PullRequestCommentIndex.IndexedComment comment = index.get(mockPullRequest(1, 2));
+
+        assertThat(comment.getCommitId(), is("abcdef"));
+        assertThat(comment.getContentHash(), is(nullValue()));
+    }
+
+    @Test
+    public void keepsPullRequestsOfDifferentRepositoriesApart() {
+        index.put(mockPullRequest(1, 2), new PullRequestCommentIndex.IndexedComment(123, 7, "abcdef", "0123456789"));
+
+        assertThat(index.get(mockPullRequest(3, 2)), is(nullValue()));
+    }
+
+    @Test
+    public void forgetsRemovedComment() {
+        index.put(mockPullRequest(1, 2), new PullRequestCommentIndex.IndexedComment(123, 7, "abcdef", "0123456789"));
+
+        index.remove(mockPullRequest(1, 2));
+
+        assertThat(index.get(mockPullRequest(1, 2)), is(nullValue()));
+    }
+
+    @Test
+    public void ignoresMalformedEntries() {
+        storedSettings.put("com.degustudios.dotnet-format.comment.1.2", "not an entry");
+
+        assertThat(index.get(mockPullRequest(1, 2)), is(nullValue()));
+    }
+
+    private static PullRequest mockPullRequest(int repositoryId, long pullRequestId) {
+        PullRequest pullRequest = mock(PullRequest.class);
+        PullRequestRef toRef = mock(PullRequestRef.class);
+        Repository repository = mock(Repository.class);
+        when(pullRequest.getId()).thenReturn(pullRequestId);
+        when(pullRequest.getToRef()).thenReturn(toRef);
+        when(toRef.getRepository()).thenReturn(repository);
+        when(repository.getId()).thenReturn(repositoryId);
+        return pullRequest;
+    }
+}
@@ -1,5 +1,6 @@
 package ut.com.degustudios.bitbucket.mergechecks.comment;
 
+import com.atlassian.bitbucket.ServiceException;
 import com.atlassian.bitbucket.auth.AuthenticationContext;
 import com.atlassian.bitbucket.comment.*;
 import com.atlassian.bitbucket.pull.*;
@@ -7,6 +8,7 @@ import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.user.ApplicationUser;
 import com.atlassian.bitbucket.util.PageImpl;
 import com.atlassian.bitbucket.util.PageRequest;
+import com.degustudios.bitbucket.mergechecks.comment.PullRequestCommentIndex;
 import com.degustudios.bitbucket.mergechecks.comment.PullRequestCommenterImpl;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -17,10 +19,14 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -41,14 +47,17 @@ public class PullRequestCommenterImplTest {
     private PullRequest pullRequest;
     @Mock
     private ApplicationUser currentUser;
+    @Mock
+    private PullRequestCommentIndex commentIndex;
 
+    private String commitHashFromRef;
     private String latestHashCommentHeader;
     private ArgumentMatcher<PullRequestActivitySearchRequest> correctSearchRequest;
 
     @Before
     public void initialize()
     {
-        String commitHashFromRef = "11111111";
+        commitHashFromRef = "11111111";
         String commitHashToRef = "9999999";
         PullRequestRef toRef = mock(PullRequestRef.class);
         PullRequestRef fromRef = mock(PullRequestRef.class);
@@ -184,12 +193,139 @@ public class PullRequestCommenterImplTest {
         verifyThatCommentWithTextWasUpdated(getCommentWithLatestHeader(comment), commentIdToUpdate, commentVersion);
     }
 
+    @Test
+    public void updatesIndexedCommentWithoutSearchingActivities() {
+        String comment = "COMMENT!";
+        when(commentIndex.get(pullRequest)).thenReturn(new PullRequestCommentIndex.IndexedComment(123, 7, commitHashFromRef, null));
+        Comment updatedComment = mockComment(123, 8);
+        when(commentService.updateComment(any())).thenReturn(updatedComment);
+
+        addComment(comment);
+
+        verifyThatCommentWithTextWasUpdated(getCommentWithLatestHeader(comment), 123, 7);
+        verify(pullRequestService, never()).searchActivities(any(), any());
+        verify(commentIndex).put(eq(pullRequest), argThat(isIndexedComment(123, 8)));
+    }
+
+    @Test
+    public void addsCommentWithoutSearchingActivitiesWhenIndexedCommentIsForOlderCommit() {
+        when(commentIndex.get(pullRequest)).thenReturn(new PullRequestCommentIndex.IndexedComment(123, 7, "otherHashId", null));
+        Comment addedComment = mockComment(124, 0);
+        when(commentService.addComment(any())).thenReturn(addedComment);
+
+        addComment("");
+
+        verifyThatCommentWithTextWasAdded(latestHashCommentHeader);
+        verify(pullRequestService, never()).searchActivities(any(), any());
+        verify(commentIndex).put(eq(pullRequest), argThat(isIndexedComment(124, 0)));
+    }
+
+    @Test
+    public void retriesWithCurrentVersionWhenIndexedCommentWasEdited() {
+        String comment = "COMMENT!";
+        when(commentIndex.get(pullRequest)).thenReturn(new PullRequestCommentIndex.IndexedComment(123, 7, commitHashFromRef, null));
+        Comment currentComment = mockComment(123, 9);
+        when(commentService.updateComment(argThat(hasVersion(7)))).thenThrow(mock(ServiceException.class));
+        when(commentService.getComment(123)).thenReturn(Optional.of(currentComment));
+
+        addComment(comment);
+
+        verifyThatCommentWithTextWasUpdated(getCommentWithLatestHeader(comment), 123, 9);
+        verify(pullRequestService, never()).searchActivities(any(), any());
+    }
+
+    @Test
+    public void searchesActivitiesWhenIndexedCommentWasDeleted() {
+        String comment = "COMMENT!";
+        when(commentIndex.get(pullRequest)).thenReturn(new PullRequestCommentIndex.IndexedComment(123, 7, commitHashFromRef, null));
+        when(commentService.updateComment(argThat(hasVersion(7)))).thenThrow(mock(ServiceException.class));
+        when(commentService.getComment(123)).thenReturn(Optional.empty());
+        setupSearchToReturn(Lists.newArrayList());
+
+        addComment(comment);
+
+        verify(commentIndex).remove(pullRequest);
+        verifyThatCommentWithTextWasAdded(getCommentWithLatestHeader(comment));
+    }
+
+    @Test
+    public void doesNotWriteCommentWhenIndexedCommentHasSameText() throws NoSuchAlgorithmException {
+        String comment = "COMMENT!";
+        when(commentIndex.get(pullRequest)).thenReturn(new PullRequestCommentIndex.IndexedComment(
+                123, 7, commitHashFromRef, sha256(getCommentWithLatestHeader(comment))));
+
+        addComment(comment);
+
+        verify(commentService, never()).updateComment(any());
+        verify(commentService, never()).addComment(any());
+        verify(pullRequestService, never()).searchActivities(any(), any());
+    }
+
+    @Test
+    public void updatesIndexedCommentWhenTextHasChanged() throws NoSuchAlgorithmException {
+        String comment = "COMMENT!";
+        when(commentIndex.get(pullRequest)).thenReturn(new PullRequestCommentIndex.IndexedComment(
+                123, 7, commitHashFromRef, sha256(getCommentWithLatestHeader("OTHER COMMENT!"))));
+
+        addComment(comment);
+
+        verifyThatCommentWithTextWasUpdated(getCommentWithLatestHeader(comment), 123, 7);
+    }
+
+    @Test
+    public void indexesCommentFoundInActivities() {
+        setupSearchToReturn(Lists.newArrayList(getPullRequestCommentActivity(latestHashCommentHeader, 1L, 123, 7)));
+        Comment updatedComment = mockComment(123, 8);
+        when(commentService.updateComment(any())).thenReturn(updatedComment);
+
+        addComment("COMMENT!");
+
+        verify(commentIndex).put(eq(pullRequest), argThat(isIndexedComment(123, 8)));
+    }
+
+    private static String sha256(String text) throws NoSuchAlgorithmException {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private Comment mockComment(long commentId, int commentVersion) {
+        Comment comment = mock(Comment.class);
+        when(comment.getId()).thenReturn(commentId);
+        when(comment.getVersion()).thenReturn(commentVersion);
+        return comment;
+    }
+
+    private ArgumentMatcher<CommentUpdateRequest> hasVersion(int version) {
+        return new ArgumentMatcher<CommentUpdateRequest>() {
+            @Override
+            public boolean matches(Object o) {
+                return o != null && ((CommentUpdateRequest) o).getVersion() == version;
+            }
+        };
+    }
+
+    private ArgumentMatcher<PullRequestCommentIndex.IndexedComment> isIndexedComment(long commentId, int version) {
+        return new ArgumentMatcher<PullRequestCommentIndex.IndexedComment>() {
+            @Override
+            public boolean matches(Object o) {
+                PullRequestCommentIndex.IndexedComment comment = (PullRequestCommentIndex.IndexedComment) o;
+                return comment.getCommentId() == commentId
+                        && comment.getVersion() == version
+                        && comment.getCommitId().equals(commitHashFromRef)
+                        && comment.getContentHash() != null;
+            }
+        };
+    }
+
     private String getCommentWithLatestHeader(String comment) {
         return latestHashCommentHeader + "\n" + comment;
     }
 
     private void addComment(String s) {
-        new PullRequestCommenterImpl(pullRequestService, commentService, authenticationContext)
+        new PullRequestCommenterImpl(pullRequestService, commentService, authenticationContext, commentIndex)
                 .addComment(pullRequest, s);
     }
 
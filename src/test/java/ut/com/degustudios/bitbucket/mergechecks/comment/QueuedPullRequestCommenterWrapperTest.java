@@ -0,0 +1,152 @@
+package ut.com.degustudios.bitbucket.mergechecks.comment;
+
+import com.atlassian.bitbucket.auth.AuthenticationContext;
+import com.atlassian.bitbucket.pull.PullRequest;
+import com.atlassian.bitbucket.pull.PullRequestRef;
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.user.ApplicationUser;
+import com.atlassian.bitbucket.user.EscalatedSecurityContext;
+import com.atlassian.bitbucket.user.SecurityService;
+import com.atlassian.bitbucket.util.Operation;
+import com.degustudios.bitbucket.mergechecks.PullRequestCommenter;
+import com.degustudios.bitbucket.mergechecks.comment.QueuedPullRequestCommenterWrapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueuedPullRequestCommenterWrapperTest {
+    @Mock
+    private PullRequestCommenter commenter;
+    @Mock
+    private AuthenticationContext authenticationContext;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private EscalatedSecurityContext securityContext;
+    @Mock
+    private ExecutorService executor;
+    @Mock
+    private ApplicationUser currentUser;
+
+    private QueuedPullRequestCommenterWrapper wrapper;
+
+    @Before
+    public void initialize() throws Throwable {
+        when(authenticationContext.getCurrentUser()).thenReturn(currentUser);
+        when(securityService.impersonating(eq(currentUser), anyString())).thenReturn(securityContext);
+        when(securityContext.call(any())).then(invocation -> ((Operation<?, ?>) invocation.getArguments()[0]).perform());
+        wrapper = new QueuedPullRequestCommenterWrapper(commenter, authenticationContext, securityService, executor);
+    }
+
+    @Test
+    public void returnsBeforeCommentIsWritten() {
+        wrapper.addComment(mockPullRequest(1, 2), "COMMENT!");
+
+        verify(executor).execute(any());
+        verifyZeroInteractions(commenter);
+    }
+
+    @Test
+    public void writesCommentAsUserWhoseMergeCheckProducedIt() {
+        PullRequest pullRequest = mockPullRequest(1, 2);
+        wrapper.addComment(pullRequest, "COMMENT!");
+
+        runQueuedTasks(1);
+
+        verify(securityService).impersonating(eq(currentUser), anyString());
+        verify(commenter).addComment(pullRequest, "COMMENT!");
+    }
+
+    @Test
+    public void writesOnlyNewestQueuedCommentOfPullRequest() {
+        PullRequest pullRequest = mockPullRequest(1, 2);
+        wrapper.addComment(pullRequest, "OLD COMMENT!");
+        wrapper.addComment(pullRequest, "NEW COMMENT!");
+
+        runQueuedTasks(1);
+
+        verify(commenter).addComment(pullRequest, "NEW COMMENT!");
+        verify(commenter, never()).addComment(pullRequest, "OLD COMMENT!");
+    }
+
+    @Test
+    public void queuesCommentsOfPullRequestsInDifferentRepositoriesSeparately() {
+        PullRequest pullRequest = mockPullRequest(1, 2);
+        PullRequest otherPullRequest = mockPullRequest(3, 2);
+        wrapper.addComment(pullRequest, "COMMENT!");
+        wrapper.addComment(otherPullRequest, "OTHER COMMENT!");
+
+        runQueuedTasks(2);
+
+        verify(commenter).addComment(pullRequest, "COMMENT!");
+        verify(commenter).addComment(otherPullRequest, "OTHER COMMENT!");
+    }
+
+    @Test
+    public void queuesCommentAddedAfterPreviousOneWasWritten() {
+        PullRequest pullRequest = mockPullRequest(1, 2);
+        wrapper.addComment(pullRequest, "OLD COMMENT!");
+        runQueuedTasks(1);
+        reset(executor);
+
+        wrapper.addComment(pullRequest, "NEW COMMENT!");
+        runQueuedTasks(1);
+
+        verify(commenter).addComment(pullRequest, "OLD COMMENT!");
+        verify(commenter).addComment(pullRequest, "NEW COMMENT!");
+    }
+
+    @Test
+    public void keepsWritingCommentsAfterOneFails() {
+        PullRequest pullRequest = mockPullRequest(1, 2);
+        doThrow(new IllegalStateException()).when(commenter).addComment(pullRequest, "OLD COMMENT!");
+        wrapper.addComment(pullRequest, "OLD COMMENT!");
+        runQueuedTasks(1);
+        reset(executor);
+
+        wrapper.addComment(pullRequest, "NEW COMMENT!");
+        runQueuedTasks(1);
+
+        verify(commenter).addComment(pullRequest, "NEW COMMENT!");
+    }
+
+    @Test
+    public void queuesCommentAgainWhenPreviousOneWasRejected() {
+        PullRequest pullRequest = mockPullRequest(1, 2);
+        doThrow(new RejectedExecutionException()).when(executor).execute(any());
+        wrapper.addComment(pullRequest, "OLD COMMENT!");
+        reset(executor);
+
+        wrapper.addComment(pullRequest, "NEW COMMENT!");
+
+        verify(executor).execute(any());
+    }
+
+    private void runQueuedTasks(int count) {
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, times(count)).execute(tasks.capture());
+        tasks.getAllValues().forEach(Runnable::run);
+    }
+
+    private static PullRequest mockPullRequest(int repositoryId, long pullRequestId) {
+        PullRequest pullRequest = mock(PullRequest.class);
+        PullRequestRef toRef = mock(PullRequestRef.class);
+        Repository repository = mock(Repository.class);
+        when(pullRequest.getId()).thenReturn(pullRequestId);
+        when(pullRequest.getToRef()).thenReturn(toRef);
+        when(toRef.getRepository()).thenReturn(repository);
+        when(repository.getId()).thenReturn(repositoryId);
+        return pullRequest;
+    }
+}
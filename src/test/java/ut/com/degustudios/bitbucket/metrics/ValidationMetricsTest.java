@@ -0,0 +1,104 @@
+package ut.com.degustudios.bitbucket.metrics;
+
+import com.degustudios.bitbucket.metrics.MergeCheckOutcome;
+import com.degustudios.bitbucket.metrics.MergeCheckOutcomeCounter;
+import com.degustudios.bitbucket.metrics.ValidationMetrics;
+import com.degustudios.bitbucket.repository.validators.IdempotentlyCachedDotnetFormatRefValidatorWrapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ValidationMetricsTest {
+    @Mock
+    private IdempotentlyCachedDotnetFormatRefValidatorWrapper validator;
+
+    private MergeCheckOutcomeCounter outcomeCounter;
+    private ValidationMetrics metrics;
+    private MBeanServer server;
+    private ObjectName name;
+
+    @Before
+    public void initialize() throws JMException {
+        outcomeCounter = new MergeCheckOutcomeCounter();
+        metrics = new ValidationMetrics(validator, outcomeCounter);
+        server = ManagementFactory.getPlatformMBeanServer();
+        name = new ObjectName(ValidationMetrics.OBJECT_NAME);
+    }
+
+    @After
+    public void teardown() {
+        metrics.destroy();
+    }
+
+    @Test
+    public void exposesRunCountsOverJmx() throws JMException {
+        when(validator.getQueuedCount()).thenReturn(3);
+        when(validator.getRunningCount()).thenReturn(2);
+        when(validator.getCachedResultsCount()).thenReturn(7);
+
+        metrics.afterPropertiesSet();
+
+        assertThat(server.getAttribute(name, "QueuedRuns"), is(3));
+        assertThat(server.getAttribute(name, "RunningRuns"), is(2));
+        assertThat(server.getAttribute(name, "CachedResults"), is(7));
+    }
+
+    @Test
+    public void exposesRunCountsOfEachGroupOverJmx() throws JMException {
+        when(validator.getQueuedCountByGroup()).thenReturn(Collections.singletonMap("PROJ/repo", 4));
+        when(validator.getRunningCountByGroup()).thenReturn(Collections.singletonMap("PROJ/repo", 1));
+
+        metrics.afterPropertiesSet();
+
+        assertThat(server.getAttribute(name, "QueuedRunsByGroup"), is(Collections.singletonMap("PROJ/repo", 4)));
+        assertThat(server.getAttribute(name, "RunningRunsByGroup"), is(Collections.singletonMap("PROJ/repo", 1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void exposesMergeCheckOutcomesOverJmx() throws JMException {
+        outcomeCounter.record(MergeCheckOutcome.SKIPPED);
+        outcomeCounter.record(MergeCheckOutcome.SKIPPED);
+        outcomeCounter.record(MergeCheckOutcome.ACCEPTED);
+
+        metrics.afterPropertiesSet();
+
+        Map<String, Long> outcomes = (Map<String, Long>) server.getAttribute(name, "MergeCheckOutcomes");
+        assertThat(outcomes.get("skipped"), is(2L));
+        assertThat(outcomes.get("accepted"), is(1L));
+        assertThat(outcomes.get("rejected"), is(0L));
+    }
+
+    @Test
+    public void replacesPreviouslyRegisteredInstance() {
+        new ValidationMetrics(validator, outcomeCounter).afterPropertiesSet();
+
+        metrics.afterPropertiesSet();
+
+        assertThat(server.isRegistered(name), is(true));
+    }
+
+    @Test
+    public void unregistersOnDestroy() {
+        metrics.afterPropertiesSet();
+
+        metrics.destroy();
+
+        assertThat(server.isRegistered(name), is(false));
+    }
+}
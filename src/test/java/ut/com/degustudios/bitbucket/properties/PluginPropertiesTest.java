@@ -0,0 +1,70 @@
+package ut.com.degustudios.bitbucket.properties;
+
+import com.atlassian.bitbucket.server.ApplicationPropertiesService;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PluginPropertiesTest {
+    @Mock
+    private ApplicationPropertiesService applicationPropertiesService;
+
+    private PluginProperties pluginProperties;
+
+    @Before
+    public void initialize() {
+        pluginProperties = new PluginProperties(applicationPropertiesService);
+    }
+
+    @Test
+    public void returnsDefaultWhenPropertyIsNotSet() {
+        assertThat(pluginProperties.getCacheMaximumEntries(), is(1000));
+    }
+
+    @Test
+    public void returnsConfiguredValue() {
+        setProperty(PluginProperties.CACHE_MAX_ENTRIES, " 25 ");
+
+        assertThat(pluginProperties.getCacheMaximumEntries(), is(25));
+    }
+
+    @Test
+    public void returnsDefaultWhenPropertyIsNotANumber() {
+        setProperty(PluginProperties.CACHE_MAX_ENTRIES, "many");
+
+        assertThat(pluginProperties.getCacheMaximumEntries(), is(1000));
+    }
+
+    @Test
+    public void returnsDefaultWhenPropertyIsOutOfRange() {
+        setProperty(PluginProperties.CACHE_MAX_ENTRIES, "99999999999");
+
+        assertThat(pluginProperties.getCacheMaximumEntries(), is(1000));
+    }
+
+    @Test
+    public void raisesClusterClaimLeaseToMinimum() {
+        setProperty(PluginProperties.CLUSTER_CLAIM_LEASE_SECONDS, "0");
+
+        assertThat(pluginProperties.getClusterClaimLeaseInSeconds(), is(20L));
+    }
+
+    @Test
+    public void returnsConfiguredClusterClaimLeaseAboveMinimum() {
+        setProperty(PluginProperties.CLUSTER_CLAIM_LEASE_SECONDS, "30");
+
+        assertThat(pluginProperties.getClusterClaimLeaseInSeconds(), is(30L));
+    }
+
+    private void setProperty(String name, String value) {
+        when(applicationPropertiesService.getPluginProperty("plugin.dotnet-format." + name)).thenReturn(value);
+    }
+}
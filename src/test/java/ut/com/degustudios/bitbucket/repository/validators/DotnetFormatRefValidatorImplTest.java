@@ -2,7 +2,13 @@ package ut.com.degustudios.bitbucket.repository.validators;
 
 import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.repository.RepositoryRef;
+import com.atlassian.bitbucket.scm.ScmService;
+import com.atlassian.bitbucket.user.SecurityService;
 import com.degustudios.bitbucket.content.CodeService;
+import com.degustudios.bitbucket.content.SparseCheckoutPathCalculator;
+import com.degustudios.bitbucket.content.Workspace;
+import com.degustudios.bitbucket.content.WorkspaceManager;
+import com.degustudios.bitbucket.properties.PluginProperties;
 import com.degustudios.bitbucket.repository.validators.DotnetFormatRefValidatorImpl;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
 import com.degustudios.dotnetformat.DotnetFormatRunner;
@@ -14,6 +20,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
@@ -39,6 +46,18 @@ public class DotnetFormatRefValidatorImplTest
     private Repository repository;
     @Mock
     private RepositoryRef ref;
+    @Mock
+    private ScmService scmService;
+    @Mock
+    private SecurityService securityService;
+    @Mock
+    private PluginProperties pluginProperties;
+    @Mock
+    private SparseCheckoutPathCalculator sparseCheckoutPathCalculator;
+    @Mock
+    private WorkspaceManager workspaceManager;
+    @Mock
+    private Workspace workspace;
 
     private List<String> params = Arrays.asList(new String[]{"--check22"});
 
@@ -51,7 +70,10 @@ public class DotnetFormatRefValidatorImplTest
         when(ref.getRepository()).thenReturn(repository);
         when(repository.getId()).thenReturn(repositoryId);
 
-        validator = new DotnetFormatRefValidatorImpl(codeService, dotnetFormatRunner);
+        // Persistent workspaces are disabled by the mocked properties, so every validation uses a temporary checkout
+        validator = new DotnetFormatRefValidatorImpl(
+                new WorkspaceManager(codeService, sparseCheckoutPathCalculator, scmService, securityService, pluginProperties),
+                dotnetFormatRunner);
     }
 
     @Test
@@ -125,6 +147,37 @@ public class DotnetFormatRefValidatorImplTest
         assertThat(Files.exists(temporaryDirectoryCaptor.getValue()), is(false));
     }
 
+    @Test
+    public void keepsWorkspaceCleanWhenDotnetFormatOnlyChecksFiles() throws IOException {
+        List<String> checkParams = Arrays.asList("--check", "-v");
+        when(workspaceManager.acquire(eq(repository), eq(commitId), anyCollectionOf(String.class))).thenReturn(workspace);
+
+        new DotnetFormatRefValidatorImpl(workspaceManager, dotnetFormatRunner).validate(ref, checkParams);
+
+        verify(workspace, never()).markDirty();
+        verify(workspace).close();
+    }
+
+    @Test
+    public void marksWorkspaceDirtyWhenDotnetFormatMayChangeFiles() throws IOException {
+        when(workspaceManager.acquire(eq(repository), eq(commitId), anyCollectionOf(String.class))).thenReturn(workspace);
+
+        new DotnetFormatRefValidatorImpl(workspaceManager, dotnetFormatRunner).validate(ref, params);
+
+        verify(workspace).markDirty();
+        verify(workspace).close();
+    }
+
+    @Test
+    public void passesIncludedPathsToWorkspaceManager() throws IOException {
+        List<String> includeParams = Arrays.asList("--check", "--include", "src/A.cs", "src/B.cs");
+        when(workspaceManager.acquire(eq(repository), eq(commitId), anyCollectionOf(String.class))).thenReturn(workspace);
+
+        new DotnetFormatRefValidatorImpl(workspaceManager, dotnetFormatRunner).validate(ref, includeParams);
+
+        verify(workspaceManager).acquire(repository, commitId, Arrays.asList("src/A.cs", "src/B.cs"));
+    }
+
     private DotnetFormatCommandResult runValidator() {
         return validator.validate(ref, params);
     }
@@ -0,0 +1,155 @@
+package ut.com.degustudios.bitbucket.repository.validators;
+
+import com.atlassian.bitbucket.repository.Repository;
+import com.atlassian.bitbucket.repository.RepositoryRef;
+import com.degustudios.bitbucket.content.BlobIdLister;
+import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidator;
+import com.degustudios.bitbucket.properties.FileVerdictScope;
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.bitbucket.repository.validators.FileVerdictCachingDotnetFormatRefValidatorWrapper;
+import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.dotnetformat.DotnetFormatReport;
+import com.degustudios.dotnetformat.DotnetFormatRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileVerdictCachingDotnetFormatRefValidatorWrapperTest {
+    private static final String COMMIT_ID = "5f3a1c";
+    private static final List<String> PARAMS = Arrays.asList("whitespace", "--verify-no-changes");
+
+    @Mock
+    private DotnetFormatRefValidator validator;
+    @Mock
+    private BlobIdLister blobIdLister;
+    @Mock
+    private DotnetFormatRunner dotnetFormatRunner;
+    @Mock
+    private PluginProperties pluginProperties;
+    @Mock
+    private RepositoryRef ref;
+    @Mock
+    private Repository repository;
+
+    private Map<String, String> blobIds;
+    private FileVerdictCachingDotnetFormatRefValidatorWrapper wrapper;
+
+    @Before
+    public void initialize() {
+        when(ref.getRepository()).thenReturn(repository);
+        when(ref.getLatestCommit()).thenReturn(COMMIT_ID);
+        when(pluginProperties.getFileVerdictScope()).thenReturn(FileVerdictScope.WHITESPACE);
+        when(pluginProperties.getFileVerdictCacheMaximumEntries()).thenReturn(100);
+        when(dotnetFormatRunner.getToolchainVersion()).thenReturn("8.0.100 [/usr/share/dotnet/sdk]");
+        blobIds = new LinkedHashMap<>();
+        blobIds.put(".editorconfig", "e1");
+        blobIds.put("src/A.cs", "a1");
+        blobIds.put("src/B.cs", "b1");
+        blobIds.put("README.md", "r1");
+        when(blobIdLister.listBlobIds(repository, COMMIT_ID)).thenAnswer(invocation -> new LinkedHashMap<>(blobIds));
+        when(validator.validate(ref, PARAMS)).thenReturn(resultWithChangesIn("src/A.cs"));
+
+        wrapper = new FileVerdictCachingDotnetFormatRefValidatorWrapper(validator, blobIdLister, dotnetFormatRunner, pluginProperties);
+    }
+
+    @Test
+    public void reusesVerdictsWhenNoFileChanged() {
+        wrapper.validate(ref, PARAMS);
+
+        DotnetFormatCommandResult result = wrapper.validate(ref, PARAMS);
+
+        verify(validator, times(1)).validate(ref, PARAMS);
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getReport().getChangesByFile().keySet(), is(Collections.singleton("src/A.cs")));
+        assertThat(result.getReport().getChangeCount(), is(1));
+    }
+
+    @Test
+    public void checksOnlyFilesWithoutVerdict() {
+        List<String> changedFileParams = Arrays.asList("whitespace", "--verify-no-changes", "--include", "src/B.cs");
+        when(validator.validate(ref, changedFileParams)).thenReturn(resultWithChangesIn());
+        wrapper.validate(ref, PARAMS);
+        blobIds.put("src/B.cs", "b2");
+
+        DotnetFormatCommandResult result = wrapper.validate(ref, PARAMS);
+
+        verify(validator).validate(ref, changedFileParams);
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getReport().getChangesByFile().keySet(), is(Collections.singleton("src/A.cs")));
+    }
+
+    @Test
+    public void checksAllFilesAgainWhenConfigurationChanges() {
+        wrapper.validate(ref, PARAMS);
+        blobIds.put(".editorconfig", "e2");
+
+        wrapper.validate(ref, PARAMS);
+
+        verify(validator, times(2)).validate(ref, PARAMS);
+    }
+
+    @Test
+    public void checksAllFilesAgainWhenToolchainChanges() {
+        wrapper.validate(ref, PARAMS);
+        when(dotnetFormatRunner.getToolchainVersion()).thenReturn("9.0.100 [/usr/share/dotnet/sdk]");
+
+        wrapper.validate(ref, PARAMS);
+
+        verify(validator, times(2)).validate(ref, PARAMS);
+    }
+
+    @Test
+    public void doesNotRememberVerdictsOfFailedRuns() {
+        when(validator.validate(ref, PARAMS)).thenReturn(DotnetFormatCommandResult.executedCorrectly(1, "Unhandled exception"));
+
+        wrapper.validate(ref, PARAMS);
+        wrapper.validate(ref, PARAMS);
+
+        verify(validator, times(2)).validate(ref, PARAMS);
+    }
+
+    @Test
+    public void doesNotRememberVerdictsWhenFilesMayBeChanged() {
+        List<String> formattingParams = Collections.singletonList("whitespace");
+        when(validator.validate(ref, formattingParams)).thenReturn(resultWithChangesIn("src/A.cs"));
+
+        wrapper.validate(ref, formattingParams);
+        wrapper.validate(ref, formattingParams);
+
+        verify(validator, times(2)).validate(ref, formattingParams);
+        verifyZeroInteractions(blobIdLister);
+    }
+
+    @Test
+    public void doesNotRememberVerdictsOfAnalyzersByDefault() {
+        List<String> analyzerParams = Collections.singletonList("--verify-no-changes");
+        when(validator.validate(ref, analyzerParams)).thenReturn(resultWithChangesIn("src/A.cs"));
+
+        wrapper.validate(ref, analyzerParams);
+        wrapper.validate(ref, analyzerParams);
+
+        verify(validator, times(2)).validate(ref, analyzerParams);
+    }
+
+    private static DotnetFormatCommandResult resultWithChangesIn(String... paths) {
+        DotnetFormatReport.Builder builder = new DotnetFormatReport.Builder();
+        for (String path : paths) {
+            builder.file(path, Collections.singletonList(
+                    new DotnetFormatReport.Change(1, 5, "WHITESPACE", "Fix whitespace formatting.")));
+        }
+        return DotnetFormatCommandResult.executedCorrectlyWithReport(paths.length > 0 ? 2 : 0, builder.build());
+    }
+}
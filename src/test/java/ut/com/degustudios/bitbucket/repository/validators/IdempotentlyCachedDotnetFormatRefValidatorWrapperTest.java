@@ -1,13 +1,20 @@
 package ut.com.degustudios.bitbucket.repository.validators;
 
+import com.atlassian.bitbucket.project.Project;
 import com.atlassian.bitbucket.repository.Repository;
 import com.atlassian.bitbucket.repository.RepositoryRef;
+import com.degustudios.bitbucket.cluster.ReplicatedResultCacheFactory;
+import com.degustudios.bitbucket.content.TreeIdResolver;
 import com.degustudios.bitbucket.mergechecks.DotnetFormatRefValidator;
+import com.degustudios.bitbucket.properties.FairShareGroup;
+import com.degustudios.bitbucket.properties.PluginProperties;
 import com.degustudios.bitbucket.repository.validators.IdempotentlyCachedDotnetFormatRefValidatorWrapper;
+import com.degustudios.bitbucket.repository.validators.ValidationKey;
 import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.executors.ExecutionPriority;
 import com.degustudios.executors.IdempotentExecutor;
 import com.degustudios.executors.IdempotentExecutorBuilder;
-import org.apache.commons.lang3.StringUtils;
+import com.degustudios.executors.ReplicatedResultCache;
 import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.junit.Before;
 import org.junit.Test;
@@ -20,6 +27,7 @@ import org.mockito.runners.MockitoJUnitRunner;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -48,15 +56,29 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
     @Captor
     private ArgumentCaptor<BiFunction<RepositoryRef, List<String>, String>> keyMapFuncCaptor;
     @Captor
+    private ArgumentCaptor<BiFunction<RepositoryRef, List<String>, String>> groupMapFuncCaptor;
+    @Captor
     private ArgumentCaptor<Function<DotnetFormatCommandResult, Boolean>> shouldCacheFuncCaptor;
+    @Captor
+    private ArgumentCaptor<Function<DotnetFormatCommandResult, Integer>> weighFuncCaptor;
+    @Mock
+    private PluginProperties pluginProperties;
     @Mock
     private Repository repository;
+    @Mock
+    private Project project;
+    @Mock
+    private ReplicatedResultCacheFactory replicatedResultCacheFactory;
+    @Mock
+    private TreeIdResolver treeIdResolver;
+    @Mock
+    private ReplicatedResultCache<DotnetFormatCommandResult> replicatedResultCache;
 
     private List<String> params;
 
     @Before
     public void initialize(){
-        when(executorBuilder.<RepositoryRef, DotnetFormatCommandResult>build(any(), any(), any())).thenReturn(executor);
+        when(executorBuilder.<RepositoryRef, DotnetFormatCommandResult>build(any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(executor);
         params = Arrays.asList("--check", "-v");
     }
 
@@ -66,7 +88,7 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
 
         runValidatorWrapper();
 
-        verify(executorBuilder).build(scheduleFuncCaptor.capture(), any(), any());
+        verify(executorBuilder).build(scheduleFuncCaptor.capture(), any(), any(), any(), any(), any(), any(), any());
         verify(validator, times(0)).validate(any(), eq(params));
         scheduleFuncCaptor.getValue().apply(ref, params);
         verify(validator, times(1)).validate(ref, params);
@@ -83,10 +105,42 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
 
         runValidatorWrapper();
 
-        verify(executorBuilder).build(any(), keyMapFuncCaptor.capture(), any());
+        verify(executorBuilder).build(any(), keyMapFuncCaptor.capture(), any(), any(), any(), any(), any(), any());
+        assertThat(
+                keyMapFuncCaptor.getValue().apply(ref, params),
+                is(ValidationKey.of(repositoryId, commitId, params).toString()));
+    }
+
+    @Test
+    public void mapsRefToKeyByTreeWhenItIsResolved() throws ConcurrentException {
+        int repositoryId = 124;
+        when(ref.getLatestCommit()).thenReturn("19873");
+        when(ref.getRepository()).thenReturn(repository);
+        when(repository.getId()).thenReturn(repositoryId);
+        when(treeIdResolver.resolve(repository, "19873")).thenReturn("4b825dc");
+        when(executor.execute(ref, params)).thenReturn(CompletableFuture.completedFuture(null));
+
+        runValidatorWrapper();
+
+        verify(executorBuilder).build(any(), keyMapFuncCaptor.capture(), any(), any(), any(), any(), any(), any());
         assertThat(
                 keyMapFuncCaptor.getValue().apply(ref, params),
-                is(repositoryId + "/" + commitId + '/' + StringUtils.join(params, ' ')));
+                is(ValidationKey.of(repositoryId, "4b825dc", params).toString()));
+    }
+
+    @Test
+    public void groupsRunsByRepository() {
+        assertThat(mapToGroup(FairShareGroup.REPOSITORY), is("PROJ/repo"));
+    }
+
+    @Test
+    public void groupsRunsByProject() {
+        assertThat(mapToGroup(FairShareGroup.PROJECT), is("PROJ"));
+    }
+
+    @Test
+    public void putsAllRunsInOneGroupWhenFairShareIsDisabled() {
+        assertThat(mapToGroup(FairShareGroup.NONE), is(""));
     }
 
     @Test
@@ -96,10 +150,20 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
 
         runValidatorWrapper();
 
-        verify(executorBuilder).build(any(), any(), shouldCacheFuncCaptor.capture());
+        verify(executorBuilder).build(any(), any(), any(), shouldCacheFuncCaptor.capture(), any(), any(), any(), any());
         assertThat(shouldCacheFuncCaptor.getValue().apply(result), is(false));
     }
 
+    @Test
+    public void doesNotCacheTimedOutDotNetFormatExecutions() throws ConcurrentException {
+        when(executor.execute(ref, params)).thenReturn(CompletableFuture.completedFuture(null));
+
+        runValidatorWrapper();
+
+        verify(executorBuilder).build(any(), any(), any(), shouldCacheFuncCaptor.capture(), any(), any(), any(), any());
+        assertThat(shouldCacheFuncCaptor.getValue().apply(DotnetFormatCommandResult.timedOut("TIMED OUT")), is(false));
+    }
+
     @Test
     public void doesNotCacheExecutedCorrectlyNegativeExitCodeDotNetFormatExecutions() throws ConcurrentException {
         assertDoesNotCacheExecutedCorrectlyDotNetFormatExecutions(-1);
@@ -130,10 +194,23 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
         assertDoesCacheExecutedCorrectlyDotNetFormatExecutions(CheckFailedExitCode);
     }
 
+    @Test
+    public void weighsCachedResultsByOutputSize() throws ConcurrentException {
+        String output = "Formatted code file 'Program.cs'.";
+        when(executor.execute(ref, params)).thenReturn(CompletableFuture.completedFuture(null));
+
+        runValidatorWrapper();
+
+        verify(executorBuilder).build(any(), any(), any(), any(), weighFuncCaptor.capture(), any(), any(), any());
+        assertThat(
+                weighFuncCaptor.getValue().apply(DotnetFormatCommandResult.executedCorrectly(2, output)),
+                is(output.length()));
+    }
+
     @Test
     public void returnsDotnetFormatValidationFromExecutor() throws ConcurrentException {
         DotnetFormatCommandResult expectedResult = DotnetFormatCommandResult.executedCorrectly(0, "OK!");
-        when(executorBuilder.<RepositoryRef, DotnetFormatCommandResult>build(any(), any(), any())).thenReturn(executor);
+        when(executorBuilder.<RepositoryRef, DotnetFormatCommandResult>build(any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(executor);
         when(executor.execute(ref, params)).thenReturn(CompletableFuture.completedFuture(expectedResult));
 
         DotnetFormatCommandResult actualResult = runValidatorWrapper();
@@ -145,12 +222,12 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
     public void onlyBuildsOneExecutor() throws ConcurrentException {
         when(executor.execute(ref, params)).thenReturn(CompletableFuture.completedFuture(null));
 
-        IdempotentlyCachedDotnetFormatRefValidatorWrapper wrapper = new IdempotentlyCachedDotnetFormatRefValidatorWrapper(validator, executorBuilder);
+        IdempotentlyCachedDotnetFormatRefValidatorWrapper wrapper = new IdempotentlyCachedDotnetFormatRefValidatorWrapper(validator, executorBuilder, pluginProperties, replicatedResultCacheFactory, treeIdResolver);
         wrapper.validate(ref, params);
         wrapper.validate(ref, params);
         wrapper.validate(ref, params);
 
-        verify(executorBuilder, times(1)).build(any(), any(), any());
+        verify(executorBuilder, times(1)).build(any(), any(), any(), any(), any(), any(), any(), any());
     }
 
     @Test
@@ -192,6 +269,56 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
         assertThat(result.hasExecutedCorrectly(), is(false));
     }
 
+    @Test
+    public void rejectsValidationWhenQueueIsFull() throws ConcurrentException {
+        when(executor.execute(any(), eq(params))).thenThrow(new RejectedExecutionException());
+
+        DotnetFormatCommandResult result = runValidatorWrapper();
+
+        assertThat(result.getExitCode(), is(-1));
+        assertThat(result.getMessage(), is("Too many dotnet-format runs are waiting on this node. Please try again in a few minutes."));
+        assertThat(result.hasExecutedCorrectly(), is(false));
+    }
+
+    @Test
+    public void returnsTimedOutResultWhenValidationTakesLongerThanHookTimeout() throws ConcurrentException {
+        when(pluginProperties.getHookTimeoutInSeconds()).thenReturn(1L);
+        when(executor.execute(any(), eq(params))).thenReturn(new CompletableFuture<>());
+
+        DotnetFormatCommandResult result = runValidatorWrapper();
+
+        assertThat(result.hasTimedOut(), is(true));
+        assertThat(result.hasExecutedCorrectly(), is(false));
+        assertThat(result.getMessage(), is("dotnet-format did not finish within 1 seconds. It keeps running, please try again in a few minutes."));
+    }
+
+    @Test
+    public void prewarmsWithBackgroundPriority() throws ConcurrentException {
+        when(executor.execute(ref, params, ExecutionPriority.BACKGROUND)).thenReturn(new CompletableFuture<>());
+
+        new IdempotentlyCachedDotnetFormatRefValidatorWrapper(validator, executorBuilder, pluginProperties, replicatedResultCacheFactory, treeIdResolver)
+                .prewarm(ref, params);
+
+        verify(executor).execute(ref, params, ExecutionPriority.BACKGROUND);
+        verify(executor, never()).execute(ref, params);
+    }
+
+    @Test
+    public void sharesResultsThroughReplicatedCache() {
+        when(replicatedResultCacheFactory.<DotnetFormatCommandResult>create(eq("results"), any())).thenReturn(replicatedResultCache);
+
+        runValidatorWrapper();
+
+        verify(executorBuilder).build(any(), any(), any(), any(), any(), any(), eq(replicatedResultCache), any());
+    }
+
+    @Test
+    public void shutsDownExecutorOnDestroy() {
+        new IdempotentlyCachedDotnetFormatRefValidatorWrapper(validator, executorBuilder, pluginProperties, replicatedResultCacheFactory, treeIdResolver).destroy();
+
+        verify(executor).shutdown();
+    }
+
     private void assertDoesCacheExecutedCorrectlyDotNetFormatExecutions(int exitCode) throws ConcurrentException {
         assertCacheDotNetFormatExecutions(exitCode, "OK!", true);
     }
@@ -206,7 +333,7 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
 
         runValidatorWrapper();
 
-        verify(executorBuilder).build(any(), any(), shouldCacheFuncCaptor.capture());
+        verify(executorBuilder).build(any(), any(), any(), shouldCacheFuncCaptor.capture(), any(), any(), any(), any());
         assertThat(shouldCacheFuncCaptor.getValue().apply(result), is(shouldCache));
     }
 
@@ -214,7 +341,20 @@ public class IdempotentlyCachedDotnetFormatRefValidatorWrapperTest {
         throw new RuntimeException();
     }
 
+    private String mapToGroup(FairShareGroup fairShareGroup) {
+        when(pluginProperties.getFairShareGroup()).thenReturn(fairShareGroup);
+        when(ref.getRepository()).thenReturn(repository);
+        when(repository.getProject()).thenReturn(project);
+        when(repository.getSlug()).thenReturn("repo");
+        when(project.getKey()).thenReturn("PROJ");
+
+        runValidatorWrapper();
+
+        verify(executorBuilder).build(any(), any(), groupMapFuncCaptor.capture(), any(), any(), any(), any(), any());
+        return groupMapFuncCaptor.getValue().apply(ref, params);
+    }
+
     private DotnetFormatCommandResult runValidatorWrapper() {
-        return new IdempotentlyCachedDotnetFormatRefValidatorWrapper(validator, executorBuilder).validate(ref, params);
+        return new IdempotentlyCachedDotnetFormatRefValidatorWrapper(validator, executorBuilder, pluginProperties, replicatedResultCacheFactory, treeIdResolver).validate(ref, params);
     }
 }
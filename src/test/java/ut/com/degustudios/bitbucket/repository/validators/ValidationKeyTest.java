@@ -0,0 +1,74 @@
+package ut.com.degustudios.bitbucket.repository.validators;
+
+import com.degustudios.bitbucket.repository.validators.ValidationKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ValidationKeyTest {
+    private static final String TREE_ID = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    @Test
+    public void sortsAndDeduplicatesIncludedPaths() {
+        assertThat(
+                ValidationKey.normalize(Arrays.asList("--check", "--include", "b.cs", "a.cs", "b.cs", "--verbosity", "d")),
+                is(Arrays.asList("--check", "--include", "a.cs", "b.cs", "--verbosity", "d")));
+    }
+
+    @Test
+    public void keepsOrderOfOtherParameters() {
+        List<String> params = Arrays.asList("--verbosity", "d", "--check", "project.sln");
+
+        assertThat(ValidationKey.normalize(params), is(params));
+    }
+
+    @Test
+    public void pathsInAnotherOrderGiveTheSameKey() {
+        ValidationKey first = ValidationKey.of(1, TREE_ID, Arrays.asList("--check", "--include", "a.cs", "b.cs"));
+        ValidationKey second = ValidationKey.of(1, TREE_ID, Arrays.asList("--check", "--include", "b.cs", "a.cs"));
+
+        assertThat(first.toString(), is(second.toString()));
+    }
+
+    @Test
+    public void quotedAndUnquotedPathsGiveTheSameKey() {
+        ValidationKey first = ValidationKey.of(1, TREE_ID, Arrays.asList("--check", "--include", "\"src/My App/a.cs\"", "b.cs"));
+        ValidationKey second = ValidationKey.of(1, TREE_ID, Arrays.asList("--check", "--include", "b.cs", "src/My App/a.cs"));
+
+        assertThat(first.toString(), is(second.toString()));
+    }
+
+    @Test
+    public void parametersAreNotConfusedWhenJoined() {
+        ValidationKey first = ValidationKey.of(1, TREE_ID, Collections.singletonList("--check --verbosity"));
+        ValidationKey second = ValidationKey.of(1, TREE_ID, Arrays.asList("--check", "--verbosity"));
+
+        assertThat(first.toString(), is(not(second.toString())));
+    }
+
+    @Test
+    public void differentContentGivesDifferentKeys() {
+        List<String> params = Collections.singletonList("--check");
+
+        assertThat(ValidationKey.of(1, TREE_ID, params).toString(),
+                is(not(ValidationKey.of(1, "d670460b4b4aece5915caf5c68d12f560a9fe3e4", params).toString())));
+        assertThat(ValidationKey.of(1, TREE_ID, params).toString(), is(not(ValidationKey.of(2, TREE_ID, params).toString())));
+    }
+
+    @Test
+    public void keyLengthDoesNotDependOnNumberOfPaths() {
+        List<String> params = new ArrayList<>(Arrays.asList("--check", "--include"));
+        for (int i = 0; i < 5000; i++) {
+            params.add("src/Project/Folder/File" + i + ".cs");
+        }
+
+        assertThat(ValidationKey.of(1, TREE_ID, params).toString().length(), is(("1/" + TREE_ID + "/").length() + 64));
+    }
+}
@@ -0,0 +1,69 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.dotnetformat.BoundedOutputCapture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BoundedOutputCaptureTest {
+    private Path outputFilePath;
+
+    @Before
+    public void initialize() throws IOException {
+        outputFilePath = Files.createTempFile("output", ".log");
+    }
+
+    @Test
+    public void readsShortOutputAsIs() throws IOException {
+        write("first\r\nsecond\n");
+
+        assertThat(read(100), is("first\r\nsecond\n"));
+    }
+
+    @Test
+    public void readsEmptyOutput() throws IOException {
+        write("");
+
+        assertThat(read(100), is(""));
+    }
+
+    @Test
+    public void leavesOutMiddleLinesOfLongOutput() throws IOException {
+        write("aaaa\nbbbb\ncccc\ndddd\neeee\nffff\n");
+
+        assertThat(read(16), is("aaaa\n"
+                + "[... 20 bytes (4 lines) of 30 bytes of output omitted ...]" + System.lineSeparator()
+                + "ffff\n"));
+    }
+
+    @Test
+    public void cutsLinesLongerThanLimit() throws IOException {
+        write("0123456789abcdefghij");
+
+        assertThat(read(8), is("0123"
+                + "[... 12 bytes (0 lines) of 20 bytes of output omitted ...]" + System.lineSeparator()
+                + "ghij"));
+    }
+
+    @Test
+    public void keepsWholeOutputWhenLimitIsDisabled() throws IOException {
+        write("aaaa\nbbbb\ncccc\ndddd\neeee\nffff\n");
+
+        assertThat(read(0), is("aaaa\nbbbb\ncccc\ndddd\neeee\nffff\n"));
+    }
+
+    private void write(String output) throws IOException {
+        Files.write(outputFilePath, output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(int maximumSize) throws IOException {
+        return new BoundedOutputCapture(maximumSize, StandardCharsets.UTF_8).read(outputFilePath);
+    }
+}
@@ -0,0 +1,114 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.bitbucket.mergechecks.NativeCommandRunner;
+import com.degustudios.dotnetformat.BuildServerManager;
+import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BuildServerManagerTest {
+    private static final long IDLE_SHUTDOWN_IN_MS = 1000;
+
+    @Mock
+    private NativeCommandRunner commandRunner;
+
+    private final AtomicLong time = new AtomicLong(1000000);
+    private BuildServerManager buildServerManager;
+
+    @Before
+    public void initialize() {
+        when(commandRunner.runCommand(any(File.class), eq("dotnet"), eq("build-server"), eq("shutdown")))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(0, ""));
+        buildServerManager = new BuildServerManager(commandRunner, 1, IDLE_SHUTDOWN_IN_MS, time::get);
+    }
+
+    @After
+    public void cleanUp() {
+        buildServerManager.destroy();
+    }
+
+    @Test
+    public void limitsNumberOfWarmRuns() {
+        BuildServerManager.Lease first = buildServerManager.acquire();
+        BuildServerManager.Lease second = buildServerManager.acquire();
+        first.close();
+        BuildServerManager.Lease third = buildServerManager.acquire();
+
+        assertThat(first.isWarm(), is(true));
+        assertThat(second.isWarm(), is(false));
+        assertThat(third.isWarm(), is(true));
+    }
+
+    @Test
+    public void disablesNodeReuseAndSharedCompilationForColdRuns() {
+        BuildServerManager.Lease warm = buildServerManager.acquire();
+        BuildServerManager.Lease cold = buildServerManager.acquire();
+
+        assertThat(warm.getEnvironment().get("MSBUILDDISABLENODEREUSE"), is("0"));
+        assertThat(warm.getEnvironment().get("UseSharedCompilation"), is("true"));
+        assertThat(cold.getEnvironment().get("MSBUILDDISABLENODEREUSE"), is("1"));
+        assertThat(cold.getEnvironment().get("UseSharedCompilation"), is("false"));
+    }
+
+    @Test
+    public void shutsDownBuildServersOnceIdle() {
+        buildServerManager.acquire().close();
+
+        buildServerManager.shutDownIfIdle();
+        time.addAndGet(IDLE_SHUTDOWN_IN_MS);
+        buildServerManager.shutDownIfIdle();
+        buildServerManager.shutDownIfIdle();
+
+        verify(commandRunner, times(1)).runCommand(any(File.class), eq("dotnet"), eq("build-server"), eq("shutdown"));
+    }
+
+    @Test
+    public void doesNotShutDownBuildServersWhileRunIsActive() {
+        buildServerManager.acquire().close();
+        BuildServerManager.Lease lease = buildServerManager.acquire();
+        time.addAndGet(IDLE_SHUTDOWN_IN_MS);
+
+        buildServerManager.shutDownIfIdle();
+
+        verify(commandRunner, never()).runCommand(any(File.class), eq("dotnet"), eq("build-server"), eq("shutdown"));
+        lease.close();
+    }
+
+    @Test
+    public void doesNotShutDownWhenOnlyColdRunsHappened() {
+        buildServerManager.destroy();
+        buildServerManager = new BuildServerManager(commandRunner, 0, IDLE_SHUTDOWN_IN_MS, time::get);
+        buildServerManager.acquire().close();
+        time.addAndGet(IDLE_SHUTDOWN_IN_MS);
+
+        buildServerManager.shutDownIfIdle();
+
+        verify(commandRunner, never()).runCommand(any(File.class), eq("dotnet"), eq("build-server"), eq("shutdown"));
+    }
+
+    @Test
+    public void shutsDownBuildServersOnDestroy() {
+        buildServerManager.acquire().close();
+
+        buildServerManager.destroy();
+
+        verify(commandRunner, times(1)).runCommand(any(File.class), eq("dotnet"), eq("build-server"), eq("shutdown"));
+    }
+}
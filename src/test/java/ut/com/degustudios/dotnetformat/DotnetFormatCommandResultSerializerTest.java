@@ -0,0 +1,74 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.dotnetformat.DotnetFormatCommandResultSerializer;
+import com.degustudios.dotnetformat.DotnetFormatReport;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DotnetFormatCommandResultSerializerTest {
+    private final DotnetFormatCommandResultSerializer serializer = new DotnetFormatCommandResultSerializer();
+
+    @Test
+    public void roundTripsResult() throws IOException {
+        DotnetFormatCommandResult result = roundTrip(DotnetFormatCommandResult.executedCorrectly(2, "Formatted 'Program.cs' ąę"));
+
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getMessage(), is("Formatted 'Program.cs' ąę"));
+        assertThat(result.hasExecutedCorrectly(), is(true));
+    }
+
+    @Test
+    public void roundTripsNullMessage() throws IOException {
+        DotnetFormatCommandResult result = roundTrip(DotnetFormatCommandResult.executedCorrectly(0, null));
+
+        assertThat(result.getMessage(), is(nullValue()));
+    }
+
+    @Test
+    public void roundTripsReport() throws IOException {
+        DotnetFormatReport report = new DotnetFormatReport.Builder()
+                .file("src/Program.cs", Arrays.asList(
+                        new DotnetFormatReport.Change(3, 5, "WHITESPACE", "Fix whitespace formatting."),
+                        new DotnetFormatReport.Change(8, 1, "IDE0055", "Fix formatting")))
+                .build();
+
+        DotnetFormatCommandResult result = roundTrip(DotnetFormatCommandResult.executedCorrectlyWithReport(2, report));
+
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getReport().getFileCount(), is(1));
+        assertThat(result.getReport().getChangeCount(), is(2));
+        assertThat(result.getReport().getDiagnosticCounts().get("IDE0055"), is(1));
+        assertThat(result.getMessage(), is(report.toText()));
+    }
+
+    @Test
+    public void readsResultsStoredBeforeReports() throws IOException {
+        byte[] bytes = new byte[]{1, 0, 0, 0, 2, 0, 0, 0, 2, 'O', 'K'};
+
+        DotnetFormatCommandResult result = serializer.deserialize(bytes);
+
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getMessage(), is("OK"));
+    }
+
+    @Test(expected = IOException.class)
+    public void doesNotSerializeFailedResult() throws IOException {
+        serializer.serialize(DotnetFormatCommandResult.failed("ERROR"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownFormatVersion() throws IOException {
+        serializer.deserialize(new byte[]{42, 0, 0, 0, 0});
+    }
+
+    private DotnetFormatCommandResult roundTrip(DotnetFormatCommandResult result) throws IOException {
+        return serializer.deserialize(serializer.serialize(result));
+    }
+}
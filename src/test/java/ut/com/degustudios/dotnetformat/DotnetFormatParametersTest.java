@@ -0,0 +1,43 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.dotnetformat.DotnetFormatParameters;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DotnetFormatParametersTest {
+    private static final List<String> params = Arrays.asList("--check", "--include", "A.cs", "B.cs", "--verbosity", "diag");
+
+    @Test
+    public void readsPathsUpToNextOption() {
+        assertThat(DotnetFormatParameters.getIncludedPaths(params), is(Arrays.asList("A.cs", "B.cs")));
+    }
+
+    @Test
+    public void readsNoPathsWithoutInclude() {
+        assertThat(DotnetFormatParameters.getIncludedPaths(Collections.singletonList("--check")), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void removesIncludedPathsAndKeepsOtherParameters() {
+        assertThat(DotnetFormatParameters.withoutIncludedPaths(params), is(Arrays.asList("--check", "--verbosity", "diag")));
+    }
+
+    @Test
+    public void appendsIncludedPaths() {
+        assertThat(DotnetFormatParameters.withIncludedPaths(Collections.singletonList("--check"), Collections.singletonList("C.cs")),
+                is(Arrays.asList("--check", "--include", "C.cs")));
+    }
+
+    @Test
+    public void recognizesReadOnlyRuns() {
+        assertThat(DotnetFormatParameters.isReadOnly(params), is(true));
+        assertThat(DotnetFormatParameters.isReadOnly(Arrays.asList("whitespace", "--verify-no-changes")), is(true));
+        assertThat(DotnetFormatParameters.isReadOnly(Collections.singletonList("--include")), is(false));
+    }
+}
@@ -0,0 +1,94 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.dotnetformat.DotnetFormatReport;
+import com.degustudios.dotnetformat.DotnetFormatReportParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DotnetFormatReportParserTest {
+    private final DotnetFormatReportParser parser = new DotnetFormatReportParser();
+    private Path workingDirectory;
+    private Path reportFilePath;
+
+    @Before
+    public void initialize() throws IOException {
+        workingDirectory = Files.createTempDirectory("workspace");
+        reportFilePath = Files.createTempFile("format-report", ".json");
+    }
+
+    @Test
+    public void parsesChangesOfAllFiles() throws IOException {
+        write("[" + document("src/Program.cs", change(3, 5, "WHITESPACE", "Fix whitespace formatting."), change(7, 1, "IDE0055", "Fix formatting"))
+                + "," + document("src/Other.cs", change(1, 2, "WHITESPACE", "Fix whitespace formatting."))
+                + "]");
+
+        DotnetFormatReport report = parser.parse(reportFilePath, workingDirectory);
+
+        assertThat(report.getFileCount(), is(2));
+        assertThat(report.getChangeCount(), is(3));
+        assertThat(report.getDiagnosticCounts().get("WHITESPACE"), is(2));
+        assertThat(report.getDiagnosticCounts().get("IDE0055"), is(1));
+        List<DotnetFormatReport.Change> changes = report.getChangesByFile().get("src/Program.cs");
+        assertThat(changes.size(), is(2));
+        assertThat(changes.get(1).getLine(), is(7));
+        assertThat(changes.get(1).getColumn(), is(1));
+        assertThat(changes.get(1).getDiagnosticId(), is("IDE0055"));
+        assertThat(changes.get(1).getDescription(), is("Fix formatting"));
+    }
+
+    @Test
+    public void skipsUnknownPropertiesAndFilesWithoutChanges() throws IOException {
+        write("[{\"DocumentId\":{\"ProjectId\":{\"Id\":\"1\"},\"Id\":\"2\"},\"FileName\":\"A.cs\",\"FilePath\":\""
+                + workingDirectory.resolve("A.cs") + "\",\"FileChanges\":[]}]");
+
+        DotnetFormatReport report = parser.parse(reportFilePath, workingDirectory);
+
+        assertThat(report.getFileCount(), is(0));
+        assertThat(report.getChangesByFile().isEmpty(), is(true));
+        assertThat(report.toText(), is("0 changes in 0 files\n"));
+    }
+
+    @Test
+    public void keepsOnlyLimitedNumberOfChangesInDetail() throws IOException {
+        StringBuilder changes = new StringBuilder();
+        for (int i = 0; i < DotnetFormatReport.MAXIMUM_LISTED_CHANGES + 5; i++) {
+            changes.append(i == 0 ? "" : ",").append(change(i, 1, "WHITESPACE", "Fix whitespace formatting."));
+        }
+        write("[" + document("Big.cs", changes.toString()) + "]");
+
+        DotnetFormatReport report = parser.parse(reportFilePath, workingDirectory);
+
+        assertThat(report.getChangeCount(), is(DotnetFormatReport.MAXIMUM_LISTED_CHANGES + 5));
+        assertThat(report.getListedChangeCount(), is(DotnetFormatReport.MAXIMUM_LISTED_CHANGES));
+        assertThat(report.toText().endsWith("... and 5 more changes\n1005 changes in 1 files: WHITESPACE (1005)\n"), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherJson() throws IOException {
+        write("{\"not\":\"a report\"}");
+
+        parser.parse(reportFilePath, workingDirectory);
+    }
+
+    private String document(String relativePath, String... changes) {
+        return "{\"FilePath\":\"" + workingDirectory.resolve(relativePath) + "\",\"FileChanges\":[" + String.join(",", changes) + "]}";
+    }
+
+    private static String change(int line, int column, String diagnosticId, String description) {
+        return "{\"LineNumber\":" + line + ",\"CharNumber\":" + column
+                + ",\"DiagnosticId\":\"" + diagnosticId + "\",\"FormatDescription\":\"" + description + "\"}";
+    }
+
+    private void write(String json) throws IOException {
+        Files.write(reportFilePath, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,15 +1,38 @@
 package ut.com.degustudios.dotnetformat;
 
+import com.degustudios.dotnetformat.BuildServerManager;
+import com.degustudios.dotnetformat.DotnetFormatCommandResult;
 import com.degustudios.dotnetformat.DotnetFormatRunner;
+import com.degustudios.dotnetformat.NuGetRestoreCache;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
 import com.degustudios.bitbucket.mergechecks.NativeCommandRunner;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 
 public class DotnetFormatRunnerTest  {
     private static final String WINDOWS_10 = "WINDOWS 10";
@@ -18,11 +41,23 @@ public class DotnetFormatRunnerTest  {
     private DotnetFormatRunner dotnetFormatRunner;
     private Path tempDirectory;
     private NativeCommandRunner nativeCommandRunner;
+    private NuGetRestoreCache restoreCache;
+    private BuildServerManager buildServerManager;
+    private BuildServerManager.Lease buildServerLease;
+    private Map<String, String> environment;
 
     @Before
     public void initialize() throws IOException {
         nativeCommandRunner = Mockito.mock(NativeCommandRunner.class);
-        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner);
+        restoreCache = Mockito.mock(NuGetRestoreCache.class);
+        environment = Collections.singletonMap("NUGET_PACKAGES", "/packages");
+        Mockito.when(restoreCache.getEnvironment()).thenReturn(environment);
+        buildServerManager = Mockito.mock(BuildServerManager.class);
+        buildServerLease = Mockito.mock(BuildServerManager.Lease.class);
+        Mockito.when(buildServerManager.acquire()).thenReturn(buildServerLease);
+        Mockito.when(nativeCommandRunner.runCommand(any(File.class), anyEnvironment(), Matchers.<String>anyVararg()))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(0, "OK"));
+        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner, restoreCache, buildServerManager);
         tempDirectory = Files.createTempDirectory("tempDir1");
     }
 
@@ -32,8 +67,8 @@ public class DotnetFormatRunnerTest  {
 
         dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList(" --abc2"));
 
-        Mockito.verify(nativeCommandRunner).runCommand(tempDirectory.toFile(),
-                "cmd.exe", "/c", "dotnet format", " --abc2");
+        Mockito.verify(nativeCommandRunner).runCommand(eq(tempDirectory.toFile()), eq(environment),
+                eq("cmd.exe"), eq("/c"), eq("dotnet format"), eq(" --abc2"), eq("--report"), anyString());
     }
 
     @Test
@@ -42,7 +77,222 @@ public class DotnetFormatRunnerTest  {
 
         dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList(" --abc"));
 
-        Mockito.verify(nativeCommandRunner).runCommand(tempDirectory.toFile(),
-                "sh",  "-c", "dotnet format", " --abc");
+        Mockito.verify(nativeCommandRunner).runCommand(eq(tempDirectory.toFile()), eq(environment),
+                eq("sh"), eq("-c"), eq("dotnet format \"$@\""), eq("dotnet-format"), eq(" --abc"), eq("--report"), anyString());
+    }
+
+    @Test
+    public void doesNotRequestReportTwice() {
+        System.setProperty("os.name", LINUX);
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Arrays.asList("--report", "/tmp/report"));
+
+        Mockito.verify(nativeCommandRunner).runCommand(tempDirectory.toFile(), environment,
+                "sh", "-c", "dotnet format \"$@\"", "dotnet-format", "--report", "/tmp/report");
+    }
+
+    @Test
+    public void replacesConsoleOutputWithReport() {
+        System.setProperty("os.name", LINUX);
+        Mockito.when(nativeCommandRunner.runCommand(any(File.class), anyEnvironment(), Matchers.<String>anyVararg())).thenAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            Path reportDirectory = Paths.get((String) arguments[arguments.length - 1]);
+            Files.write(
+                    reportDirectory.resolve("format-report.json"),
+                    ("[{\"FilePath\":\"" + tempDirectory.resolve("Program.cs") + "\",\"FileChanges\":["
+                            + "{\"LineNumber\":3,\"CharNumber\":5,\"DiagnosticId\":\"WHITESPACE\",\"FormatDescription\":\"Fix whitespace formatting.\"}]}]")
+                            .getBytes(StandardCharsets.UTF_8));
+            return DotnetFormatCommandResult.executedCorrectly(2, "Console output");
+        });
+
+        DotnetFormatCommandResult result = dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList("--check"));
+
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getReport().getChangeCount(), is(1));
+        assertThat(result.getMessage(), is("Program.cs(3,5): WHITESPACE: Fix whitespace formatting.\n1 changes in 1 files: WHITESPACE (1)\n"));
+    }
+
+    @Test
+    public void keepsConsoleOutputWhenDotnetFormatFailed() {
+        System.setProperty("os.name", LINUX);
+        Mockito.when(nativeCommandRunner.runCommand(any(File.class), anyEnvironment(), Matchers.<String>anyVararg()))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(1, "Unhandled exception"));
+
+        DotnetFormatCommandResult result = dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList("--check"));
+
+        assertThat(result.getReport(), is(nullValue()));
+        assertThat(result.getMessage(), is("Unhandled exception"));
+    }
+
+    @Test
+    public void skipsRestoreWhenRestoreOutputsAreCached() {
+        System.setProperty("os.name", LINUX);
+        Mockito.when(restoreCache.tryRestore(eq(tempDirectory), anyListOf(String.class))).thenReturn(true);
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList("--check"));
+
+        Mockito.verify(nativeCommandRunner).runCommand(eq(tempDirectory.toFile()), eq(environment),
+                eq("sh"), eq("-c"), eq("dotnet format \"$@\""), eq("dotnet-format"), eq("--check"), eq("--no-restore"), eq("--report"), anyString());
+        Mockito.verify(restoreCache, Mockito.never()).save(any(Path.class), anyListOf(String.class));
+    }
+
+    @Test
+    public void neitherReusesNorSavesRestoreOutputsForWhitespaceRun() {
+        System.setProperty("os.name", LINUX);
+        Mockito.when(restoreCache.tryRestore(eq(tempDirectory), anyListOf(String.class))).thenReturn(true);
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Arrays.asList("whitespace", "--verify-no-changes"));
+
+        Mockito.verify(nativeCommandRunner).runCommand(eq(tempDirectory.toFile()), eq(environment),
+                eq("sh"), eq("-c"), eq("dotnet format \"$@\""), eq("dotnet-format"), eq("whitespace"), eq("--verify-no-changes"), eq("--report"), anyString());
+        Mockito.verify(restoreCache, Mockito.never()).tryRestore(any(Path.class), anyListOf(String.class));
+        Mockito.verify(restoreCache, Mockito.never()).save(any(Path.class), anyListOf(String.class));
+    }
+
+    @Test
+    public void savesRestoreOutputsAfterSuccessfulRestore() {
+        System.setProperty("os.name", LINUX);
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList("--check"));
+
+        Mockito.verify(restoreCache).save(tempDirectory, Collections.singletonList("--check"));
+    }
+
+    @Test
+    public void doesNotSaveRestoreOutputsWhenDotnetFormatFailed() {
+        System.setProperty("os.name", LINUX);
+        Mockito.when(nativeCommandRunner.runCommand(any(File.class), anyEnvironment(), Matchers.<String>anyVararg()))
+                .thenReturn(DotnetFormatCommandResult.executedCorrectly(1, "Restore failed"));
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList("--check"));
+
+        Mockito.verify(restoreCache, Mockito.never()).save(any(Path.class), anyListOf(String.class));
+    }
+
+    @Test
+    public void runsWithBuildServerEnvironmentAndReleasesLease() {
+        System.setProperty("os.name", LINUX);
+        Mockito.when(buildServerLease.getEnvironment()).thenReturn(Collections.singletonMap("MSBUILDDISABLENODEREUSE", "0"));
+        Map<String, String> expectedEnvironment = new HashMap<>(environment);
+        expectedEnvironment.put("MSBUILDDISABLENODEREUSE", "0");
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Collections.singletonList("--check"));
+
+        Mockito.verify(nativeCommandRunner).runCommand(eq(tempDirectory.toFile()), eq(expectedEnvironment),
+                eq("sh"), eq("-c"), eq("dotnet format \"$@\""), eq("dotnet-format"), eq("--check"), eq("--report"), anyString());
+        Mockito.verify(buildServerLease).close();
+    }
+
+    @Test
+    public void passesManyIncludedPathsInResponseFile() {
+        System.setProperty("os.name", LINUX);
+        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner, restoreCache, buildServerManager, 2, 0, 0);
+        List<String> responseFileLines = new ArrayList<>();
+        List<String> commands = recordCommands(arguments -> {
+            String responseFile = arguments.get(arguments.indexOf("--include") + 1);
+            responseFileLines.addAll(Files.readAllLines(Paths.get(responseFile.substring(1)), StandardCharsets.UTF_8));
+            return DotnetFormatCommandResult.executedCorrectly(0, "OK");
+        });
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Arrays.asList("--check", "--include", "src/A.cs", "src/My File.cs", "src/B.cs", "--verbosity", "q"));
+
+        assertThat(commands.size(), is(1));
+        assertThat(commands.get(0), startsWith("sh -c dotnet format \"$@\" dotnet-format --check --include @"));
+        assertThat(commands.get(0), containsString("include.rsp src/My File.cs --verbosity q --report "));
+        assertThat(responseFileLines, is(Arrays.asList("src/A.cs", "src/B.cs")));
+    }
+
+    @Test
+    public void keepsFewIncludedPathsOnCommandLine() {
+        System.setProperty("os.name", LINUX);
+        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner, restoreCache, buildServerManager, 3, 0, 0);
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Arrays.asList("--check", "--include", "src/A.cs", "src/B.cs"));
+
+        Mockito.verify(nativeCommandRunner).runCommand(eq(tempDirectory.toFile()), eq(environment),
+                eq("sh"), eq("-c"), eq("dotnet format \"$@\""), eq("dotnet-format"),
+                eq("--check"), eq("--include"), eq("src/A.cs"), eq("src/B.cs"), eq("--report"), anyString());
+    }
+
+    @Test
+    public void checksChunksOfIncludedPathsAndMergesTheirReports() throws IOException {
+        System.setProperty("os.name", LINUX);
+        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner, restoreCache, buildServerManager, 0, 2, 1);
+        List<String> commands = recordCommands(arguments -> {
+            writeReport(arguments, arguments.subList(arguments.indexOf("--include") + 1, arguments.indexOf("--report")));
+            return DotnetFormatCommandResult.executedCorrectly(2, "Console output");
+        });
+
+        DotnetFormatCommandResult result = dotnetFormatRunner.runDotnetFormat(
+                tempDirectory, Arrays.asList("--check", "--include", "A.cs", "B.cs", "C.cs", "D.cs", "E.cs"));
+
+        assertThat(commands.size(), is(3));
+        assertThat(commands.get(0), startsWith("sh -c dotnet format \"$@\" dotnet-format --check --include A.cs B.cs --report "));
+        assertThat(commands.get(1), containsString(" --check --no-restore --include "));
+        assertThat(result.getExitCode(), is(2));
+        assertThat(result.getReport().getFileCount(), is(5));
+        assertThat(result.getReport().getChangeCount(), is(5));
+        Mockito.verify(restoreCache).save(tempDirectory, Collections.singletonList("--check"));
+    }
+
+    @Test
+    public void keepsFilesOfOneProjectInOneChunk() throws IOException {
+        System.setProperty("os.name", LINUX);
+        Files.createDirectories(tempDirectory.resolve("Api"));
+        Files.createFile(tempDirectory.resolve("Api").resolve("Api.csproj"));
+        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner, restoreCache, buildServerManager, 0, 2, 0);
+        List<String> commands = recordCommands(arguments -> DotnetFormatCommandResult.executedCorrectly(0, "OK"));
+
+        dotnetFormatRunner.runDotnetFormat(tempDirectory, Arrays.asList("--check", "--include", "A.cs", "Api/A.cs", "Api/B.cs"));
+
+        assertThat(commands.size(), is(2));
+        assertThat(commands.get(0), containsString(" --include A.cs --report "));
+        assertThat(commands.get(1), containsString(" --include Api/A.cs Api/B.cs --report "));
+    }
+
+    @Test
+    public void returnsFailureOfFirstChunk() {
+        System.setProperty("os.name", LINUX);
+        dotnetFormatRunner = new DotnetFormatRunner(nativeCommandRunner, restoreCache, buildServerManager, 0, 1, 1);
+        List<String> commands = recordCommands(arguments -> DotnetFormatCommandResult.executedCorrectly(1, "Restore failed"));
+
+        DotnetFormatCommandResult result = dotnetFormatRunner.runDotnetFormat(tempDirectory, Arrays.asList("--check", "--include", "A.cs", "B.cs"));
+
+        assertThat(commands.size(), is(1));
+        assertThat(result.getExitCode(), is(1));
+        assertThat(result.getMessage(), is("Restore failed"));
+    }
+
+    private List<String> recordCommands(CommandAnswer answer) {
+        List<String> commands = new CopyOnWriteArrayList<>();
+        Mockito.when(nativeCommandRunner.runCommand(any(File.class), anyEnvironment(), Matchers.<String>anyVararg())).thenAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+            List<String> command = new ArrayList<>();
+            for (int i = 2; i < arguments.length; i++) {
+                command.add((String) arguments[i]);
+            }
+            commands.add(String.join(" ", command));
+            return answer.answer(command);
+        });
+        return commands;
+    }
+
+    private void writeReport(List<String> command, List<String> paths) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String path : paths) {
+            files.add("{\"FilePath\":\"" + tempDirectory.resolve(path) + "\",\"FileChanges\":["
+                    + "{\"LineNumber\":1,\"CharNumber\":1,\"DiagnosticId\":\"WHITESPACE\",\"FormatDescription\":\"Fix whitespace formatting.\"}]}");
+        }
+        Files.write(
+                Paths.get(command.get(command.size() - 1)).resolve("format-report.json"),
+                ("[" + String.join(",", files) + "]").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private interface CommandAnswer {
+        DotnetFormatCommandResult answer(List<String> command) throws IOException;
+    }
+
+    private static Map<String, String> anyEnvironment() {
+        return Matchers.anyMapOf(String.class, String.class);
     }
-}
\ No newline at end of file
+}
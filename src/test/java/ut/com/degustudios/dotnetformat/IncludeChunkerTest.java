@@ -0,0 +1,85 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.dotnetformat.IncludeChunker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IncludeChunkerTest {
+    private Path workingDirectory;
+
+    @Before
+    public void initialize() throws IOException {
+        workingDirectory = Files.createTempDirectory("include-chunker");
+        createProject("src/Api/Api.csproj");
+        createProject("src/Core/Core.vbproj");
+    }
+
+    @After
+    public void cleanUp() {
+        FileUtils.deleteQuietly(workingDirectory.toFile());
+    }
+
+    @Test
+    public void keepsPathsOfOneProjectTogether() {
+        List<List<String>> chunks = IncludeChunker.split(
+                workingDirectory,
+                Arrays.asList("src/Api/A.cs", "src/Core/A.vb", "src/Api/Controllers/B.cs", "src/Core/B.vb"),
+                2);
+
+        assertThat(chunks, is(Arrays.asList(
+                Arrays.asList("src/Api/A.cs", "src/Api/Controllers/B.cs"),
+                Arrays.asList("src/Core/A.vb", "src/Core/B.vb"))));
+    }
+
+    @Test
+    public void fillsChunksWithSmallProjects() {
+        List<List<String>> chunks = IncludeChunker.split(
+                workingDirectory,
+                Arrays.asList("src/Api/A.cs", "src/Core/A.vb", "Program.cs"),
+                3);
+
+        assertThat(chunks, is(Collections.singletonList(Arrays.asList("Program.cs", "src/Api/A.cs", "src/Core/A.vb"))));
+    }
+
+    @Test
+    public void splitsProjectsLargerThanChunk() {
+        List<List<String>> chunks = IncludeChunker.split(
+                workingDirectory,
+                Arrays.asList("src/Api/A.cs", "src/Api/B.cs", "src/Api/C.cs", "src/Core/A.vb"),
+                2);
+
+        assertThat(chunks, is(Arrays.asList(
+                Arrays.asList("src/Api/A.cs", "src/Api/B.cs"),
+                Arrays.asList("src/Api/C.cs", "src/Core/A.vb"))));
+    }
+
+    @Test
+    public void groupsIncludedDirectoriesWithTheirProject() {
+        List<List<String>> chunks = IncludeChunker.split(
+                workingDirectory,
+                Arrays.asList("src/Api", "Program.cs", "src/Api/A.cs"),
+                2);
+
+        assertThat(chunks, is(Arrays.asList(
+                Collections.singletonList("Program.cs"),
+                Arrays.asList("src/Api", "src/Api/A.cs"))));
+    }
+
+    private void createProject(String path) throws IOException {
+        Path project = workingDirectory.resolve(path);
+        Files.createDirectories(project.getParent());
+        Files.createFile(project);
+    }
+}
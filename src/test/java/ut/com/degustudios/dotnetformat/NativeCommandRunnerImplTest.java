@@ -0,0 +1,107 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.dotnetformat.DotnetFormatCommandResult;
+import com.degustudios.dotnetformat.NativeCommandRunnerImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class NativeCommandRunnerImplTest {
+    private NativeCommandRunnerImpl nativeCommandRunner;
+    private File workingDirectory;
+
+    @Before
+    public void initialize() throws IOException {
+        nativeCommandRunner = new NativeCommandRunnerImpl(5, TimeUnit.SECONDS, 1024);
+        workingDirectory = Files.createTempDirectory("runner").toFile();
+    }
+
+    @After
+    public void cleanUp() {
+        nativeCommandRunner.destroy();
+    }
+
+    @Test
+    public void returnsExitCodeAndOutputWithLineSeparators() {
+        DotnetFormatCommandResult result = nativeCommandRunner.runCommand(
+                workingDirectory, "sh", "-c", "echo first; echo second; exit 3");
+
+        assertThat(result.hasExecutedCorrectly(), is(true));
+        assertThat(result.getExitCode(), is(3));
+        assertThat(result.getMessage(), is("first\nsecond\n"));
+    }
+
+    @Test
+    public void capturesErrorOutputTogetherWithStandardOutput() {
+        DotnetFormatCommandResult result = nativeCommandRunner.runCommand(
+                workingDirectory, "sh", "-c", "echo out; echo err 1>&2");
+
+        assertThat(result.getMessage(), is("out\nerr\n"));
+    }
+
+    @Test
+    public void addsEnvironmentVariables() {
+        DotnetFormatCommandResult result = nativeCommandRunner.runCommand(
+                workingDirectory, Collections.singletonMap("GREETING", "hello"), "sh", "-c", "echo $GREETING");
+
+        assertThat(result.getMessage(), is("hello\n"));
+    }
+
+    @Test
+    public void keepsBeginningAndEndOfLongOutput() {
+        DotnetFormatCommandResult result = nativeCommandRunner.runCommand(
+                workingDirectory, "sh", "-c", "i=0; while [ $i -lt 1000 ]; do echo line$i; i=$((i+1)); done");
+
+        assertThat(result.getMessage(), startsWith("line0\nline1\n"));
+        assertThat(result.getMessage(), containsString("lines) of 7890 bytes of output omitted ...]"));
+        assertThat(result.getMessage().endsWith("line998\nline999\n"), is(true));
+        assertThat(result.getMessage().length() < 1200, is(true));
+    }
+
+    @Test
+    public void completesAsynchronously() throws Exception {
+        CompletableFuture<DotnetFormatCommandResult> result = nativeCommandRunner.runCommandAsync(
+                workingDirectory, "sh", "-c", "sleep 0.2; echo done");
+
+        assertThat(result.isDone(), is(false));
+        assertThat(result.get(5, TimeUnit.SECONDS).getMessage(), is("done\n"));
+    }
+
+    @Test
+    public void killsProcessTreeWhenTimeoutIsExceeded() throws Exception {
+        nativeCommandRunner.destroy();
+        nativeCommandRunner = new NativeCommandRunnerImpl(1, TimeUnit.SECONDS, 1024);
+        File marker = new File(workingDirectory, "marker");
+
+        DotnetFormatCommandResult result = nativeCommandRunner.runCommandAsync(
+                workingDirectory, "sh", "-c", "echo started; (sleep 3; touch marker) & wait").get(5, TimeUnit.SECONDS);
+        Thread.sleep(3000);
+
+        assertThat(result.hasTimedOut(), is(true));
+        assertThat(result.hasExecutedCorrectly(), is(false));
+        assertThat(result.getMessage(), is("dotnet-format did not finish within 1 seconds and was stopped." + System.lineSeparator() + "started\n"));
+        assertThat(marker.exists(), is(false));
+    }
+
+    @Test
+    public void returnsFailedResultWhenProcessCannotStart() throws Exception {
+        DotnetFormatCommandResult result = nativeCommandRunner.runCommandAsync(
+                workingDirectory, "this-command-does-not-exist").get(5, TimeUnit.SECONDS);
+
+        assertThat(result.hasExecutedCorrectly(), is(false));
+        assertThat(result.getException(), is(notNullValue()));
+    }
+}
@@ -0,0 +1,197 @@
+package ut.com.degustudios.dotnetformat;
+
+import com.degustudios.bitbucket.properties.PluginProperties;
+import com.degustudios.dotnetformat.NuGetRestoreCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NuGetRestoreCacheTest {
+    private static final String PROJECT = "<Project Sdk=\"Microsoft.NET.Sdk\"></Project>";
+    private static final List<String> PARAMS = Collections.singletonList("--verify-no-changes");
+
+    @Mock
+    private PluginProperties pluginProperties;
+
+    private NuGetRestoreCache restoreCache;
+    private Path nuGetDirectory;
+
+    @Before
+    public void initialize() throws IOException {
+        nuGetDirectory = Files.createTempDirectory("nuget");
+        when(pluginProperties.isNuGetCacheEnabled()).thenReturn(true);
+        when(pluginProperties.getNuGetDirectory()).thenReturn(nuGetDirectory.toFile());
+        when(pluginProperties.getNuGetRestoreCacheMaximumSize()).thenReturn(1024L * 1024);
+        restoreCache = new NuGetRestoreCache(pluginProperties);
+    }
+
+    @Test
+    public void pointsNuGetAtSharedPackagesFolder() {
+        assertThat(restoreCache.getEnvironment().get("NUGET_PACKAGES"), is(nuGetDirectory.resolve("packages").toString()));
+    }
+
+    @Test
+    public void doesNotRestoreUnknownProjects() throws IOException {
+        Path workspace = createWorkspace(PROJECT);
+
+        assertThat(restoreCache.tryRestore(workspace, PARAMS), is(false));
+    }
+
+    @Test
+    public void restoresSavedOutputsIntoAnotherCheckout() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{\"projectPath\": \"" + firstWorkspace.resolve("src/App/App.csproj") + "\"}");
+        write(firstWorkspace.resolve("src/App/obj/App.csproj.nuget.g.props"), "<Project />");
+        write(firstWorkspace.resolve("src/App/obj/Debug/App.dll"), "binary");
+        restoreCache.save(firstWorkspace, PARAMS);
+        Path secondWorkspace = createWorkspace(PROJECT);
+
+        boolean restored = restoreCache.tryRestore(secondWorkspace, PARAMS);
+
+        assertThat(restored, is(true));
+        assertThat(read(secondWorkspace.resolve("src/App/obj/project.assets.json")),
+                is("{\"projectPath\": \"" + secondWorkspace.resolve("src/App/App.csproj") + "\"}"));
+        assertThat(Files.exists(secondWorkspace.resolve("src/App/obj/App.csproj.nuget.g.props")), is(true));
+        assertThat(Files.exists(secondWorkspace.resolve("src/App/obj/Debug/App.dll")), is(false));
+    }
+
+    @Test
+    public void doesNotRestoreWhenProjectChanged() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{}");
+        restoreCache.save(firstWorkspace, PARAMS);
+
+        Path secondWorkspace = createWorkspace("<Project Sdk=\"Microsoft.NET.Sdk.Web\"></Project>");
+
+        assertThat(restoreCache.tryRestore(secondWorkspace, PARAMS), is(false));
+    }
+
+    @Test
+    public void doesNotRestoreWhenSharedBuildFileChanged() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{}");
+        restoreCache.save(firstWorkspace, PARAMS);
+
+        Path secondWorkspace = createWorkspace(PROJECT);
+        write(secondWorkspace.resolve("Directory.Packages.props"), "<Project />");
+
+        assertThat(restoreCache.tryRestore(secondWorkspace, PARAMS), is(false));
+    }
+
+    @Test
+    public void doesNotRestoreWhenReferencedProjectChanged() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("src/Lib/Lib.csproj"), PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{}");
+        restoreCache.save(firstWorkspace, PARAMS);
+
+        Path secondWorkspace = createWorkspace(PROJECT);
+        write(secondWorkspace.resolve("src/Lib/Lib.csproj"), "<Project Sdk=\"Microsoft.NET.Sdk.Web\"></Project>");
+
+        assertThat(restoreCache.tryRestore(secondWorkspace, PARAMS), is(false));
+    }
+
+    @Test
+    public void doesNotRestoreWhenImportedBuildFileChanged() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("build/Packages.targets"), "<Project />");
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{}");
+        restoreCache.save(firstWorkspace, PARAMS);
+
+        Path secondWorkspace = createWorkspace(PROJECT);
+        write(secondWorkspace.resolve("build/Packages.targets"), "<Project><ItemGroup /></Project>");
+
+        assertThat(restoreCache.tryRestore(secondWorkspace, PARAMS), is(false));
+    }
+
+    @Test
+    public void replacesOutputsWhenRestoredAgain() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{\"version\": 1}");
+        restoreCache.save(firstWorkspace, PARAMS);
+        Path secondWorkspace = createWorkspace(PROJECT);
+        write(secondWorkspace.resolve("src/App/obj/project.assets.json"), "{\"version\": 2}");
+        restoreCache.save(secondWorkspace, PARAMS);
+        Path thirdWorkspace = createWorkspace(PROJECT);
+
+        restoreCache.tryRestore(thirdWorkspace, PARAMS);
+
+        assertThat(read(thirdWorkspace.resolve("src/App/obj/project.assets.json")), is("{\"version\": 2}"));
+    }
+
+    @Test
+    public void doesNotRestoreWhenOtherProjectIsFormatted() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{}");
+        restoreCache.save(firstWorkspace, Arrays.asList("src/App/App.csproj", "--verify-no-changes"));
+        Path secondWorkspace = createWorkspace(PROJECT);
+
+        assertThat(restoreCache.tryRestore(secondWorkspace, Arrays.asList("tools/Tool/Tool.csproj", "--verify-no-changes")), is(false));
+    }
+
+    @Test
+    public void doesNotKeepAnythingWhenNoProjectWasRestored() throws IOException {
+        restoreCache.save(createWorkspace(PROJECT), PARAMS);
+
+        assertThat(restoreCache.tryRestore(createWorkspace(PROJECT), PARAMS), is(false));
+    }
+
+    @Test
+    public void restoresCheckoutWithProjectsWithoutRestoreOutputs() throws IOException {
+        Path firstWorkspace = createWorkspace(PROJECT);
+        write(firstWorkspace.resolve("tools/Tool/Tool.csproj"), PROJECT);
+        write(firstWorkspace.resolve("src/App/obj/project.assets.json"), "{}");
+        restoreCache.save(firstWorkspace, PARAMS);
+        Path secondWorkspace = createWorkspace(PROJECT);
+        write(secondWorkspace.resolve("tools/Tool/Tool.csproj"), PROJECT);
+
+        boolean restored = restoreCache.tryRestore(secondWorkspace, PARAMS);
+
+        assertThat(restored, is(true));
+        assertThat(Files.exists(secondWorkspace.resolve("src/App/obj/project.assets.json")), is(true));
+        assertThat(Files.exists(secondWorkspace.resolve("tools/Tool/obj")), is(false));
+    }
+
+    @Test
+    public void doesNothingWhenDisabled() throws IOException {
+        when(pluginProperties.isNuGetCacheEnabled()).thenReturn(false);
+        restoreCache = new NuGetRestoreCache(pluginProperties);
+        Path workspace = createWorkspace(PROJECT);
+        write(workspace.resolve("src/App/obj/project.assets.json"), "{}");
+
+        restoreCache.save(workspace, PARAMS);
+
+        assertThat(restoreCache.getEnvironment().isEmpty(), is(true));
+        assertThat(restoreCache.tryRestore(workspace, PARAMS), is(false));
+    }
+
+    private static Path createWorkspace(String project) throws IOException {
+        Path workspace = Files.createTempDirectory("workspace");
+        write(workspace.resolve("src/App/App.csproj"), project);
+        return workspace;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package ut.com.degustudios.executors;
+
+import com.degustudios.executors.AppendOnlyFileResultStore;
+import com.degustudios.executors.ResultSerializer;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AppendOnlyFileResultStoreTest {
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private Path temporaryDirectory;
+    private AppendOnlyFileResultStore<String> store;
+
+    @Before
+    public void initialize() throws IOException {
+        temporaryDirectory = Files.createTempDirectory("tests");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        if (store != null) {
+            store.close();
+        }
+        FileUtils.deleteDirectory(new File(temporaryDirectory.toString()));
+    }
+
+    @Test
+    public void returnsStoredResult() throws IOException {
+        store = openStore(NO_LIMIT);
+
+        store.put("KEY", "VALUE");
+
+        assertThat(store.get("KEY"), is("VALUE"));
+        assertThat(store.get("OTHER KEY"), is(nullValue()));
+    }
+
+    @Test
+    public void returnsNewestResultForOverwrittenKey() throws IOException {
+        store = openStore(NO_LIMIT);
+
+        store.put("KEY", "OLD");
+        store.put("KEY", "NEW");
+
+        assertThat(store.get("KEY"), is("NEW"));
+        assertThat(store.size(), is(1));
+    }
+
+    @Test
+    public void resultsSurviveReopening() throws IOException {
+        store = openStore(NO_LIMIT);
+        store.put("A", "1");
+        store.put("B", "2");
+        store.put("A", "3");
+        store.close();
+
+        store = openStore(NO_LIMIT);
+
+        assertThat(store.get("A"), is("3"));
+        assertThat(store.get("B"), is("2"));
+        assertThat(store.size(), is(2));
+    }
+
+    @Test
+    public void truncatesTornRecordWhenReopening() throws IOException {
+        store = openStore(NO_LIMIT);
+        store.put("A", "1");
+        store.put("B", "2");
+        long sizeBeforeTornRecord = store.getFileSize();
+        store.close();
+        try (RandomAccessFile file = new RandomAccessFile(getLogFile(), "rw")) {
+            file.setLength(sizeBeforeTornRecord - 3);
+        }
+
+        store = openStore(NO_LIMIT);
+        store.put("C", "3");
+
+        assertThat(store.get("A"), is("1"));
+        assertThat(store.get("B"), is(nullValue()));
+        assertThat(store.get("C"), is("3"));
+    }
+
+    @Test
+    public void ignoresCorruptedRecordWhenReopening() throws IOException {
+        store = openStore(NO_LIMIT);
+        store.put("A", "1");
+        long firstRecordSize = store.getFileSize();
+        store.put("B", "2");
+        store.close();
+        try (RandomAccessFile file = new RandomAccessFile(getLogFile(), "rw")) {
+            file.seek(firstRecordSize + 9);
+            file.write('X');
+        }
+
+        store = openStore(NO_LIMIT);
+
+        assertThat(store.get("A"), is("1"));
+        assertThat(store.get("B"), is(nullValue()));
+    }
+
+    @Test
+    public void dropsOldestResultsWhenSizeCapIsExceeded() throws IOException {
+        store = openStore(1000);
+
+        for (int i = 0; i < 100; i++) {
+            store.put("KEY" + i, "VALUE" + i);
+        }
+
+        assertTrue(store.getFileSize() <= 1000);
+        assertThat(store.get("KEY0"), is(nullValue()));
+        assertThat(store.get("KEY99"), is("VALUE99"));
+    }
+
+    @Test
+    public void compactedResultsSurviveReopening() throws IOException {
+        store = openStore(1000);
+        for (int i = 0; i < 100; i++) {
+            store.put("KEY" + i, "VALUE" + i);
+        }
+        int size = store.size();
+        store.close();
+
+        store = openStore(1000);
+
+        assertThat(store.size(), is(size));
+        assertThat(store.get("KEY99"), is("VALUE99"));
+    }
+
+    private File getLogFile() {
+        return temporaryDirectory.resolve("results.log").toFile();
+    }
+
+    private AppendOnlyFileResultStore<String> openStore(long maximumSize) throws IOException {
+        return new AppendOnlyFileResultStore<>(temporaryDirectory, new StringSerializer(), maximumSize);
+    }
+
+    private static class StringSerializer implements ResultSerializer<String> {
+        @Override
+        public byte[] serialize(String result) {
+            return result.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
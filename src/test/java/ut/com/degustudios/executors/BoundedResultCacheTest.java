@@ -0,0 +1,117 @@
+package ut.com.degustudios.executors;
+
+import com.degustudios.executors.BoundedResultCache;
+import com.degustudios.executors.IdempotentExecutorSettings;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BoundedResultCacheTest {
+    private final AtomicLong clock = new AtomicLong(0);
+
+    @Test
+    public void returnsCachedValue() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder().build());
+
+        cache.put("KEY", "VALUE");
+
+        assertThat(cache.get("KEY"), is("VALUE"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntryWhenEntryLimitIsExceeded() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder()
+                .maximumCachedResults(2)
+                .build());
+
+        cache.put("A", "1");
+        cache.put("B", "2");
+        cache.get("A");
+        cache.put("C", "3");
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("A"), is("1"));
+        assertThat(cache.get("B"), is(nullValue()));
+        assertThat(cache.get("C"), is("3"));
+    }
+
+    @Test
+    public void evictsEntriesWhenWeightLimitIsExceeded() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder()
+                .maximumCachedResultsWeight(10)
+                .build());
+
+        cache.put("A", "12345");
+        cache.put("B", "12345");
+        cache.put("C", "1");
+
+        assertThat(cache.get("A"), is(nullValue()));
+        assertThat(cache.get("B"), is("12345"));
+        assertThat(cache.get("C"), is("1"));
+        assertThat(cache.getTotalWeight(), is(6L));
+    }
+
+    @Test
+    public void doesNotCacheValueHeavierThanWeightLimit() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder()
+                .maximumCachedResultsWeight(3)
+                .build());
+
+        cache.put("A", "1");
+        cache.put("B", "12345");
+
+        assertThat(cache.get("A"), is("1"));
+        assertThat(cache.get("B"), is(nullValue()));
+    }
+
+    @Test
+    public void expiresEntriesAfterWrite() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder()
+                .expireAfterWrite(10, TimeUnit.MILLISECONDS)
+                .build());
+
+        cache.put("A", "1");
+        clock.set(5);
+        assertThat(cache.get("A"), is("1"));
+        clock.set(10);
+
+        assertThat(cache.get("A"), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void expiresEntriesAfterAccess() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder()
+                .expireAfterAccess(10, TimeUnit.MILLISECONDS)
+                .build());
+
+        cache.put("A", "1");
+        clock.set(9);
+        assertThat(cache.get("A"), is("1"));
+        clock.set(18);
+        assertThat(cache.get("A"), is("1"));
+        clock.set(28);
+
+        assertThat(cache.get("A"), is(nullValue()));
+    }
+
+    @Test
+    public void replacingEntryUpdatesWeight() {
+        BoundedResultCache<String, String> cache = createCache(new IdempotentExecutorSettings.Builder().build());
+
+        cache.put("A", "12345");
+        cache.put("A", "12");
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getTotalWeight(), is(2L));
+    }
+
+    private BoundedResultCache<String, String> createCache(IdempotentExecutorSettings settings) {
+        return new BoundedResultCache<>(settings, String::length, clock::get);
+    }
+}
@@ -1,6 +1,10 @@
 package ut.com.degustudios.executors;
 
+import com.degustudios.executors.ExecutionPriority;
 import com.degustudios.executors.IdempotentExecutor;
+import com.degustudios.executors.ReplicatedResultCache;
+import com.degustudios.executors.IdempotentExecutorSettings;
+import com.degustudios.executors.ResultStore;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.ConcurrentException;
 import org.junit.Test;
@@ -11,20 +15,25 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.awaitility.Awaitility.await;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 @RunWith(MockitoJUnitRunner.class)
 public class IdempotentExecutorTest {
@@ -61,8 +70,9 @@ public class IdempotentExecutorTest {
         AtomicInteger invocationCounter = new AtomicInteger(0);
         String expectedResult = "This should run asynchronously!";
         String[] parameters = expectedResult.split(" ");
-        IdempotentExecutor<String, String> executor =
-                getDefaultKeyCacheAllExecutor((x, params) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads));
+        IdempotentExecutor<String, String> executor = getExecutor(
+                (x, params) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads),
+                new IdempotentExecutorSettings.Builder().maximumConcurrentExecutions(parameters.length).build());
 
         List<Future<String>> futures = Arrays.stream(parameters)
                 .map(x -> tryExecute(executor, x))
@@ -109,6 +119,285 @@ public class IdempotentExecutorTest {
         assertThat(invocationCounter.get(), is(2));
     }
 
+    @Test
+    public void willExecuteTheSameParametersAgainIfResultWasEvicted() {
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        IdempotentExecutor<String, String> executor = getSingleResultCacheExecutor((x, y) -> countingPassthrough(invocationCounter, x));
+
+        unwrap(tryExecute(executor, "FIRST"));
+        unwrap(tryExecute(executor, "SECOND"));
+        unwrap(tryExecute(executor, "FIRST"));
+
+        assertThat(invocationCounter.get(), is(3));
+    }
+
+    @Test
+    public void willNotEvictExecutionsThatAreStillRunning() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        String[] parameters = new String[]{"FIRST", "SECOND", "THIRD", "FIRST", "SECOND", "THIRD"};
+        IdempotentExecutor<String, String> executor = getExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads),
+                new IdempotentExecutorSettings.Builder()
+                        .maximumCachedResults(1)
+                        .maximumConcurrentExecutions(3)
+                        .build());
+
+        List<Future<String>> futures = Arrays.stream(parameters)
+                .map(x -> tryExecute(executor, x))
+                .collect(Collectors.toList());
+
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(invocationCounter.get(), is(3)));
+
+        unlockThreads.set(true);
+        futures.forEach(IdempotentExecutorTest::unwrap);
+
+        assertThat(invocationCounter.get(), is(3));
+        assertThat(executor.getCachedResultsCount(), is(1));
+    }
+
+    @Test
+    public void rejectsExecutionsWhenQueueIsFull() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        IdempotentExecutor<String, String> executor = getExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads),
+                new IdempotentExecutorSettings.Builder()
+                        .maximumConcurrentExecutions(1)
+                        .maximumQueuedExecutions(1)
+                        .build());
+
+        Future<String> running = tryExecute(executor, "RUNNING");
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(executor.getRunningCount(), is(1)));
+        Future<String> queued = tryExecute(executor, "QUEUED");
+
+        assertThat(executor.getQueuedCount(), is(1));
+        try {
+            executor.execute("REJECTED", params);
+            fail("Expected execution to be rejected");
+        } catch (RejectedExecutionException | ConcurrentException e) {
+            assertThat(e instanceof RejectedExecutionException, is(true));
+        }
+
+        unlockThreads.set(true);
+        assertThat(unwrap(running), is("RUNNING"));
+        assertThat(unwrap(queued), is("QUEUED"));
+        assertThat(unwrap(tryExecute(executor, "REJECTED")), is("REJECTED"));
+    }
+
+    @Test
+    public void startsInteractiveExecutionsBeforeQueuedBackgroundOnes() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        IdempotentExecutor<String, String> executor = getExecutor(
+                (x, y) -> {
+                    executionOrder.add(x);
+                    return countingAndWaitingPassthrough(invocationCounter, x, unlockThreads);
+                },
+                new IdempotentExecutorSettings.Builder().maximumConcurrentExecutions(1).build());
+
+        Future<String> running = tryExecute(executor, "RUNNING");
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(invocationCounter.get(), is(1)));
+        Future<String> firstBackground = tryExecute(executor, "FIRST BACKGROUND", ExecutionPriority.BACKGROUND);
+        Future<String> secondBackground = tryExecute(executor, "SECOND BACKGROUND", ExecutionPriority.BACKGROUND);
+        Future<String> interactive = tryExecute(executor, "INTERACTIVE");
+        unlockThreads.set(true);
+
+        Arrays.asList(running, firstBackground, secondBackground, interactive).forEach(IdempotentExecutorTest::unwrap);
+        assertThat(executionOrder, is(Arrays.asList("RUNNING", "INTERACTIVE", "FIRST BACKGROUND", "SECOND BACKGROUND")));
+    }
+
+    @Test
+    public void promotesQueuedBackgroundExecutionWhenRequestedInteractively() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        IdempotentExecutor<String, String> executor = getExecutor(
+                (x, y) -> {
+                    executionOrder.add(x);
+                    return countingAndWaitingPassthrough(invocationCounter, x, unlockThreads);
+                },
+                new IdempotentExecutorSettings.Builder().maximumConcurrentExecutions(1).build());
+
+        Future<String> running = tryExecute(executor, "RUNNING");
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(invocationCounter.get(), is(1)));
+        Future<String> firstBackground = tryExecute(executor, "FIRST BACKGROUND", ExecutionPriority.BACKGROUND);
+        Future<String> secondBackground = tryExecute(executor, "SECOND BACKGROUND", ExecutionPriority.BACKGROUND);
+        Future<String> promoted = tryExecute(executor, "SECOND BACKGROUND");
+
+        assertThat(executor.getQueuedCount(), is(2));
+        unlockThreads.set(true);
+
+        Arrays.asList(running, firstBackground, secondBackground).forEach(IdempotentExecutorTest::unwrap);
+        assertThat(unwrap(promoted), is("SECOND BACKGROUND"));
+        assertThat(executionOrder, is(Arrays.asList("RUNNING", "SECOND BACKGROUND", "FIRST BACKGROUND")));
+    }
+
+    @Test
+    public void groupsTakeTurnsWhenExecutionsAreQueued() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        List<String> executionOrder = Collections.synchronizedList(new LinkedList<>());
+        IdempotentExecutor<String, String> executor = getGroupingExecutor(
+                (x, y) -> {
+                    executionOrder.add(x);
+                    return countingAndWaitingPassthrough(invocationCounter, x, unlockThreads);
+                },
+                new IdempotentExecutorSettings.Builder().maximumConcurrentExecutions(1).build());
+
+        List<Future<String>> futures = Arrays.asList("A RUNNING", "A 1", "A 2", "A 3", "B 1", "B 2").stream()
+                .map(x -> {
+                    Future<String> future = tryExecute(executor, x);
+                    await()
+                        .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+                        .untilAsserted(() -> assertThat(invocationCounter.get(), is(1)));
+                    return future;
+                })
+                .collect(Collectors.toList());
+
+        assertThat(executor.getQueuedCountByGroup().get("A"), is(3));
+        assertThat(executor.getQueuedCountByGroup().get("B"), is(2));
+        assertThat(executor.getRunningCountByGroup().get("A"), is(1));
+        unlockThreads.set(true);
+
+        futures.forEach(IdempotentExecutorTest::unwrap);
+        assertThat(executionOrder, is(Arrays.asList("A RUNNING", "A 1", "B 1", "A 2", "B 2", "A 3")));
+    }
+
+    @Test
+    public void groupExceedsItsLimitWhenNoOtherGroupIsWaiting() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        IdempotentExecutor<String, String> executor = getGroupingExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads),
+                new IdempotentExecutorSettings.Builder()
+                        .maximumConcurrentExecutions(2)
+                        .maximumConcurrentExecutionsPerGroup(1)
+                        .build());
+
+        Future<String> first = tryExecute(executor, "A 1");
+        Future<String> second = tryExecute(executor, "A 2");
+
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(invocationCounter.get(), is(2)));
+        unlockThreads.set(true);
+        assertThat(unwrap(first), is("A 1"));
+        assertThat(unwrap(second), is("A 2"));
+    }
+
+    @Test
+    public void servesResultsFromResultStoreWithoutExecuting() {
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        Map<String, String> storedResults = new HashMap<>();
+        storedResults.put(defaultKeyMapper("STORED", params), "FROM STORE");
+        IdempotentExecutor<String, String> executor = new IdempotentExecutor<>(
+                (x, y) -> countingPassthrough(invocationCounter, x),
+                IdempotentExecutorTest::defaultKeyMapper,
+                r -> true,
+                r -> 1,
+                new MapResultStore(storedResults),
+                IdempotentExecutorSettings.defaults());
+
+        assertThat(unwrap(tryExecute(executor, "STORED")), is("FROM STORE"));
+        assertThat(unwrap(tryExecute(executor, "COMPUTED")), is("COMPUTED"));
+
+        assertThat(invocationCounter.get(), is(1));
+        assertThat(storedResults.get(defaultKeyMapper("COMPUTED", params)), is("COMPUTED"));
+    }
+
+    @Test
+    public void nodesSharingReplicatedCacheExecuteTheSameParametersOnlyOnce() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        InMemoryReplicatedResultCache<String> firstNodeCache = new InMemoryReplicatedResultCache<>("node-1", 60000);
+        IdempotentExecutor<String, String> firstNode = getClusteredExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads), r -> true, firstNodeCache);
+        IdempotentExecutor<String, String> secondNode = getClusteredExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads), r -> true, firstNodeCache.forNode("node-2"));
+
+        Future<String> firstResult = tryExecute(firstNode, input);
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(invocationCounter.get(), is(1)));
+        Future<String> secondResult = tryExecute(secondNode, input);
+
+        assertThat(secondNode.getRunningCount(), is(0));
+        unlockThreads.set(true);
+
+        assertThat(unwrap(firstResult), is(input));
+        assertThat(unwrap(secondResult), is(input));
+        assertThat(invocationCounter.get(), is(1));
+        assertThat(secondNode.getCachedResultsCount(), is(1));
+    }
+
+    @Test
+    public void anotherNodeExecutesWhenOwnerDoesNotPublishResult() {
+        final AtomicBoolean unlockThreads = new AtomicBoolean(false);
+        AtomicInteger invocationCounter = new AtomicInteger(0);
+        InMemoryReplicatedResultCache<String> firstNodeCache = new InMemoryReplicatedResultCache<>("node-1", 60000);
+        IdempotentExecutor<String, String> firstNode = getClusteredExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads), r -> false, firstNodeCache);
+        IdempotentExecutor<String, String> secondNode = getClusteredExecutor(
+                (x, y) -> countingAndWaitingPassthrough(invocationCounter, x, unlockThreads), r -> false, firstNodeCache.forNode("node-2"));
+
+        Future<String> firstResult = tryExecute(firstNode, input);
+        await()
+            .atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)
+            .untilAsserted(() -> assertThat(invocationCounter.get(), is(1)));
+        Future<String> secondResult = tryExecute(secondNode, input);
+        unlockThreads.set(true);
+
+        assertThat(unwrap(firstResult), is(input));
+        assertThat(unwrap(secondResult), is(input));
+        assertThat(invocationCounter.get(), is(2));
+    }
+
+    private <T,R> IdempotentExecutor<T,R> getClusteredExecutor(
+            BiFunction<T, List<String>, R> executeFunc,
+            Function<R, Boolean> shouldCacheFunc,
+            InMemoryReplicatedResultCache<R> replicatedResultCache) {
+        return new IdempotentExecutor<>(
+                executeFunc,
+                IdempotentExecutorTest::defaultKeyMapper,
+                shouldCacheFunc,
+                r -> 1,
+                ResultStore.none(),
+                replicatedResultCache,
+                new IdempotentExecutorSettings.Builder()
+                        .replicatedResultPollInterval(10, TimeUnit.MILLISECONDS)
+                        .build());
+    }
+
+    private <R> IdempotentExecutor<String,R> getGroupingExecutor(BiFunction<String, List<String>, R> executeFunc, IdempotentExecutorSettings settings) {
+        return new IdempotentExecutor<>(
+                executeFunc,
+                IdempotentExecutorTest::defaultKeyMapper,
+                (x, y) -> x.split(" ")[0],
+                r -> true,
+                r -> 1,
+                ResultStore.none(),
+                ReplicatedResultCache.none(),
+                settings);
+    }
+
+    private <T,R> IdempotentExecutor<T,R> getSingleResultCacheExecutor(BiFunction<T, List<String>, R> executeFunc) {
+        return getExecutor(executeFunc, new IdempotentExecutorSettings.Builder().maximumCachedResults(1).build());
+    }
+
+    private <T,R> IdempotentExecutor<T,R> getExecutor(BiFunction<T, List<String>, R> executeFunc, IdempotentExecutorSettings settings) {
+        return new IdempotentExecutor<>(executeFunc, IdempotentExecutorTest::defaultKeyMapper, r -> true, r -> 1, ResultStore.none(), settings);
+    }
+
     private <T,R> IdempotentExecutor<T,R> getDefaultKeyCacheAllExecutor(
             BiFunction<T, List<String>, R> executeFunc,
             BiFunction<T, List<String>, String> mapKeyFunc) {
@@ -150,6 +439,15 @@ public class IdempotentExecutorTest {
         return null;
     }
 
+    private <T, R> Future<R> tryExecute(IdempotentExecutor<T, R> executor, T x, ExecutionPriority priority) {
+        try {
+            return executor.execute(x, params, priority);
+        } catch (ConcurrentException e) {
+            logger.error("Exception for concurrent exception for executor: {}", executor, e);
+        }
+        return null;
+    }
+
     private static <V> V unwrap(Future<V> x) {
         try {
             return x.get();
@@ -169,4 +467,27 @@ public class IdempotentExecutorTest {
         await().atMost(TIMEOUT_IN_MS, TimeUnit.MILLISECONDS).untilTrue(atomic);
         return x;
     }
+
+    private static class MapResultStore implements ResultStore<String> {
+        private final Map<String, String> storedResults;
+
+        private MapResultStore(Map<String, String> storedResults) {
+            this.storedResults = storedResults;
+        }
+
+        @Override
+        public String get(String key) {
+            return storedResults.get(key);
+        }
+
+        @Override
+        public void put(String key, String result) {
+            storedResults.put(key, result);
+        }
+
+        @Override
+        public void close() {
+            storedResults.clear();
+        }
+    }
 }
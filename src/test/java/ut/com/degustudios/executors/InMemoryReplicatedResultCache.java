@@ -0,0 +1,87 @@
+package ut.com.degustudios.executors;
+
+import com.degustudios.executors.ReplicatedResultCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Replicated cache whose "nodes" are views over the same maps inside a single JVM.
+ */
+public class InMemoryReplicatedResultCache<R> implements ReplicatedResultCache<R> {
+    private final ConcurrentHashMap<String, R> results;
+    private final ConcurrentHashMap<String, Claim> claims;
+    private final String nodeId;
+    private final long leaseInMillis;
+    private final LongSupplier clock;
+
+    public InMemoryReplicatedResultCache(String nodeId, long leaseInMillis) {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), nodeId, leaseInMillis, System::currentTimeMillis);
+    }
+
+    public InMemoryReplicatedResultCache(String nodeId, long leaseInMillis, LongSupplier clock) {
+        this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), nodeId, leaseInMillis, clock);
+    }
+
+    private InMemoryReplicatedResultCache(
+            ConcurrentHashMap<String, R> results,
+            ConcurrentHashMap<String, Claim> claims,
+            String nodeId,
+            long leaseInMillis,
+            LongSupplier clock) {
+        this.results = results;
+        this.claims = claims;
+        this.nodeId = nodeId;
+        this.leaseInMillis = leaseInMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a view of the same shared state as seen by another node
+     */
+    public InMemoryReplicatedResultCache<R> forNode(String otherNodeId) {
+        return new InMemoryReplicatedResultCache<>(results, claims, otherNodeId, leaseInMillis, clock);
+    }
+
+    @Override
+    public R get(String key) {
+        return results.get(key);
+    }
+
+    @Override
+    public void put(String key, R result) {
+        results.put(key, result);
+    }
+
+    @Override
+    public boolean tryClaim(String key) {
+        long now = clock.getAsLong();
+        Claim claim = new Claim(nodeId, now + leaseInMillis);
+        return claims.compute(key, (k, existing) -> existing == null || existing.isOwnedBy(nodeId) || existing.hasExpired(now)
+                ? claim
+                : existing) == claim;
+    }
+
+    @Override
+    public void release(String key) {
+        claims.computeIfPresent(key, (k, existing) -> existing.isOwnedBy(nodeId) ? null : existing);
+    }
+
+    private static class Claim {
+        private final String nodeId;
+        private final long expiresAt;
+
+        private Claim(String nodeId, long expiresAt) {
+            this.nodeId = nodeId;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isOwnedBy(String otherNodeId) {
+            return nodeId.equals(otherNodeId);
+        }
+
+        private boolean hasExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
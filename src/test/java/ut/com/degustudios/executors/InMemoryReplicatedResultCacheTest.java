@@ -0,0 +1,70 @@
+package ut.com.degustudios.executors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class InMemoryReplicatedResultCacheTest {
+    private static final long LEASE_IN_MS = 1000;
+    private static final String KEY = "KEY";
+
+    private final AtomicLong clock = new AtomicLong(0);
+    private InMemoryReplicatedResultCache<String> firstNode;
+    private InMemoryReplicatedResultCache<String> secondNode;
+
+    @Before
+    public void initialize() {
+        firstNode = new InMemoryReplicatedResultCache<>("node-1", LEASE_IN_MS, clock::get);
+        secondNode = firstNode.forNode("node-2");
+    }
+
+    @Test
+    public void sharesResultsBetweenNodes() {
+        firstNode.put(KEY, "RESULT");
+
+        assertThat(secondNode.get(KEY), is("RESULT"));
+        assertThat(secondNode.get("OTHER"), is(nullValue()));
+    }
+
+    @Test
+    public void onlyOneNodeCanClaimKey() {
+        assertThat(firstNode.tryClaim(KEY), is(true));
+        assertThat(secondNode.tryClaim(KEY), is(false));
+        assertThat(firstNode.tryClaim(KEY), is(true));
+    }
+
+    @Test
+    public void renewingClaimExtendsLease() {
+        firstNode.tryClaim(KEY);
+        clock.set(LEASE_IN_MS - 1);
+        firstNode.tryClaim(KEY);
+        clock.set(LEASE_IN_MS + 1);
+
+        assertThat(secondNode.tryClaim(KEY), is(false));
+    }
+
+    @Test
+    public void expiredClaimCanBeTakenOver() {
+        firstNode.tryClaim(KEY);
+        clock.set(LEASE_IN_MS);
+
+        assertThat(secondNode.tryClaim(KEY), is(true));
+        assertThat(firstNode.tryClaim(KEY), is(false));
+    }
+
+    @Test
+    public void onlyOwnerCanReleaseClaim() {
+        firstNode.tryClaim(KEY);
+
+        secondNode.release(KEY);
+        assertThat(secondNode.tryClaim(KEY), is(false));
+
+        firstNode.release(KEY);
+        assertThat(secondNode.tryClaim(KEY), is(true));
+    }
+}
@@ -0,0 +1,29 @@
+package ut.com.degustudios.util;
+
+import com.degustudios.util.Sha256;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class Sha256Test {
+    @Test
+    public void calculatesHexadecimalDigest() {
+        assertThat(Sha256.create().update("abc".getBytes(StandardCharsets.UTF_8)).digestToHex(),
+                is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test
+    public void keepsFieldsApart() {
+        assertThat(Sha256.create().updateField("ab").updateField("c").digestToHex(),
+                is(not(Sha256.create().updateField("a").updateField("bc").digestToHex())));
+    }
+
+    @Test
+    public void formatsBytesWithLeadingZeros() {
+        assertThat(Sha256.toHex(new byte[] {0x0f, (byte) 0xa0}), is("0fa0"));
+    }
+}